@@ -0,0 +1,3 @@
+#!/bin/bash
+
+target/gitminer-*-standalone/bin/columnar_export.sh $@
@@ -0,0 +1,3 @@
+#!/bin/bash
+
+target/gitminer-*-standalone/bin/dump_export.sh $@
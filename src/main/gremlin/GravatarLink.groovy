@@ -5,6 +5,7 @@
  * and link up users to gravatars and vice versa
  */
 
+import net.wagstrom.research.github.EdgeExistenceIndex
 import net.wagstrom.research.github.IndexNames
 import net.wagstrom.research.github.IdCols
 import net.wagstrom.research.github.EdgeType
@@ -28,18 +29,20 @@ def getOrCreateGravatar(Graph g, String gravatarhash) {
     return vtx
 }
 
+// edges must go through the edge index, or GitMiner creates them again
 def createEdgeIfNotExist(Graph g, Vertex source, Vertex target, String label) {
-    try {
-        return source.outE(label).inV.filter{it == target}.next();
-    } catch (NoSuchElementException e) {
-        def edge = g.addEdge(source, target, label);
+    def edge = edgeidx.get(source, target, label);
+    if (edge == null) {
+        edge = g.addEdge(source, target, label);
         edge.setProperty(PropertyName.SYS_CREATED_AT, new java.util.Date().getTime()/1000 as int);
-        return edge;
+        edgeidx.put(edge);
     }
+    return edge;
 }
 
 g = new Neo4jGraph("graph.20120210.db")
 g.setMaxBufferSize(10000)
+edgeidx = new EdgeExistenceIndex(g)
 // step 0: check for presence of index
 gravataridx = g.idx(IndexNames.GRAVATAR)
 if (gravataridx == null) {
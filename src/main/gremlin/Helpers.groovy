@@ -271,4 +271,23 @@ class Helpers {
     
         return allGitAccounts
     }
+
+    /**
+     * Number of edges of a label, read from the sys_degree_ properties when
+     * the miner has counted the label on the vertex so supernodes aren't
+     * walked
+     *
+     * Every edge is counted, so two edges to the same vertex count twice.
+     * Use dedup() on the adjacent vertices where that matters.
+     *
+     * @param direction "out" or "in"
+     */
+    static long degree(Vertex v, String direction, String label) {
+        def counted = v.getProperty(PropertyName.SYS_DEGREES_COUNTED)
+        if (counted instanceof String[] && Arrays.asList(counted).contains(label)) {
+            def degree = v.getProperty("sys_degree_" + direction + "_" + label)
+            return degree == null ? 0 : degree
+        }
+        return direction == "out" ? v.outE(label).count() : v.inE(label).count()
+    }
 }
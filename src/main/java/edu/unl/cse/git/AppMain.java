@@ -1,16 +1,43 @@
 package edu.unl.cse.git;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import net.wagstrom.research.github.GithubProperties;
 
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tinkerpop.blueprints.Vertex;
+
 public class AppMain {
     private static final Logger log = LoggerFactory.getLogger(AppMain.class); // NOPMD
+    /** by default commits are diffed on every core */
+    public static final int DEFAULT_DIFF_THREADS = Runtime.getRuntime().availableProcessors();
+    /** repositories fetched at the same time while others are loaded */
+    public static final int DEFAULT_FETCH_THREADS = 4;
+    /** files above this size get no line counts */
+    public static final int DEFAULT_MAX_FILE_SIZE = 512 * 1024;
+
+    private int diffThreads = DEFAULT_DIFF_THREADS;
+    private boolean incremental = true;
+    private int maxFileSize = DEFAULT_MAX_FILE_SIZE;
+    private DiffMode diffMode = DiffMode.ANY;
+    private File pathDictionaries = null;
+    private Map<String, String> forkSources = new HashMap<String, String>();
 
     public AppMain() {
     }
@@ -36,6 +63,8 @@ public class AppMain {
     private CommitBlueprintsDriver connectToGraph( Properties p ) {
         String dbengine = getProperty( p, "edu.unl.cse.git.dbengine");
         String dburl = getProperty( p, "edu.unl.cse.git.dburl");
+        dbengine = CommitBlueprintsDriver.selectEngine( dbengine, dburl,
+                getProperty( p, "edu.unl.cse.git.initialLoad", "false" ).equals( "true" ) );
 
         // pass through all the db.XYZ properties to the database
         HashMap<String, String> dbprops = new HashMap<String, String>();
@@ -46,55 +75,230 @@ public class AppMain {
             }
         }
 
-        return new CommitBlueprintsDriver(dbengine, dburl, dbprops);
+        CommitBlueprintsDriver driver = new CommitBlueprintsDriver(dbengine, dburl, dbprops);
+        driver.setCommitSize( Integer.parseInt( getProperty( p, "edu.unl.cse.git.commitSize",
+                String.valueOf( CommitBlueprintsDriver.DEFAULT_COMMIT_SIZE ) ) ) );
+        driver.setIdentityCacheSize( Integer.parseInt( getProperty( p, "edu.unl.cse.git.identityCacheSize",
+                String.valueOf( CommitBlueprintsDriver.DEFAULT_IDENTITY_CACHE_SIZE ) ) ) );
+        driver.setInitialLoadEdges( Long.parseLong( getProperty( p, "edu.unl.cse.git.initialLoadEdges",
+                String.valueOf( CommitBlueprintsDriver.DEFAULT_INITIAL_LOAD_EDGES ) ) ) );
+        return driver;
     }
     
     public void loadRepository(CommitBlueprintsDriver bp, String reponame) {
         log.info( "Loading Repository: " + reponame );
         bp.saveRepository( reponame );
-        // commits
-        Iterable<RevCommit> cmts = RepositoryLoader.getCommits( reponame );
+        // the repository is opened once and its readers reused for every commit
+        RepositorySession session = RepositorySession.open( reponame );
+        File dictionaryFile = new File( pathDictionaries, reponame + ".paths" );
+        PathDictionary paths = null;
+        if (session != null) {
+            session.setLineStats( maxFileSize );
+            session.setDiffMode( diffMode );
+            paths = PathDictionary.load( dictionaryFile, reponame );
+            try {
+                loadCommits( bp, session, paths );
+            } finally {
+                session.close();
+            }
+        }
+        bp.flush();
+        // only saved once the vertices it points to are committed
+        if (paths != null) {
+            try {
+                paths.save( dictionaryFile );
+            } catch (IOException e) {
+                log.error("Unable to save the path dictionary of " + reponame, e);
+            }
+        }
+    }
+
+    private void loadCommits(CommitBlueprintsDriver bp, RepositorySession session, PathDictionary paths) {
+        String reponame = session.getReponame();
+        Map<String, String> tips;
+        try {
+            tips = session.getTips();
+        } catch (IOException e) {
+            log.error("Exception encountered reading branches of " + reponame, e);
+            return;
+        }
+        if (incremental) {
+            // only walk the commits that can't be reached from the last run
+            Map<String, String> loaded = bp.getLoadedTips( reponame );
+            if (loaded.equals( tips )) {
+                log.info( "No new commits in " + reponame );
+                return;
+            }
+            session.setLoaded( loaded.values() );
+        }
+        // commits already saved for the source of a fork are only linked to the fork,
+        // also when the fork itself is walked in full
+        String source = forkSources.get( reponame );
+        if (source != null) {
+            session.setShared( bp.getLoadedTips( source ).values() );
+        }
+        Iterable<RevCommit> cmts = session.getCommits();
         if (cmts != null) {
-            for ( RevCommit cmt : cmts ) {
-                try {
-                    bp.saveCommit( cmt );
-                    bp.saveCommitAuthor( cmt, cmt.getAuthorIdent() );
-                    bp.saveCommitCommitter( cmt, cmt.getCommitterIdent() );
-                    bp.saveCommitParents( cmt, cmt.getParents() );
-                    Iterable<String> commitFiles = RepositoryLoader.filesChanged( reponame, cmt );
-                    for ( String fileName : commitFiles ) {
-                        bp.saveFile( fileName );
-                    }
-                    bp.saveCommitFiles( cmt, commitFiles );
-		} catch (java.nio.charset.UnsupportedCharsetException uce) {
-                    // FIXME: there should be a more descriptive error message
-                    log.error("FIXME: Unsupported character set parsing commit", uce);
-                } catch (java.nio.charset.IllegalCharsetNameException ice) {
-                    // FIXME: there should be a more descriptive error message
-                    log.error("Illegal charset name exception", ice);
+            Vertex repoNode = bp.getOrCreateRepository( reponame );
+            // commits are diffed ahead on other threads and saved here in order
+            ParallelDiffer differ = new ParallelDiffer( session, diffThreads );
+            // a rollback also throws away the commits batched with the failed one
+            long rollbacks = bp.getRollbackCount();
+            int saved;
+            try {
+                saved = saveCommits( bp, repoNode, paths, differ.diff( cmts ) );
+            } finally {
+                differ.close();
+            }
+            // only the commits of the fork source are walked again, to link them
+            int linked = 0;
+            cmts = session.getSharedCommits();
+            if (cmts != null) {
+                for ( RevCommit cmt : cmts ) {
+                    bp.saveRepositoryCommit( repoNode, cmt );
+                    linked++;
                 }
             }
-            // refresh the iterator otherwise it will be empty
-            cmts = RepositoryLoader.getCommits( reponame );
-            bp.saveRepositoryCommits( reponame, cmts );
+            if (bp.getRollbackCount() == rollbacks) {
+                bp.saveLoadedTips( reponame, tips );
+            } else {
+                log.warn( "Commits of " + reponame + " were rolled back, they are walked again on the next run" );
+            }
+            log.info( "Loaded " + saved + " commits of " + reponame + ", linked " + linked + " shared commits" );
         }
     }
+
+    private int saveCommits(CommitBlueprintsDriver bp, Vertex repoNode, PathDictionary paths,
+            Iterable<ParallelDiffer.Diff> diffs) {
+        int saved = 0;
+        for ( ParallelDiffer.Diff diff : diffs ) {
+            RevCommit cmt = diff.getCommit();
+            // each commit is saved as a single batch so a failure never leaves half a commit
+            bp.beginBatch();
+            try {
+                bp.saveCommit( cmt );
+                bp.saveRepositoryCommit( repoNode, cmt );
+                bp.saveCommitAuthor( cmt, readIdent( cmt, true ) );
+                bp.saveCommitCommitter( cmt, readIdent( cmt, false ) );
+                bp.saveCommitParents( cmt, cmt.getParents() );
+                Iterable<String> commitFiles = diff.getFiles();
+                if ( commitFiles != null ) {
+                    bp.saveCommitFiles( cmt, paths, commitFiles, diff.getStats() );
+                }
+            } catch (RuntimeException e) {
+                bp.rollbackBatch();
+                throw e;
+            }
+            bp.commitBatch();
+            saved++;
+        }
+        return saved;
+    }
+
+    /**
+     * Reads the author or committer of a commit
+     *
+     * @return the identity, or null if it is in a charset Java can't decode
+     */
+    private static PersonIdent readIdent(RevCommit cmt, boolean author) {
+        String role = author ? "author" : "committer";
+        try {
+            return author ? cmt.getAuthorIdent() : cmt.getCommitterIdent();
+        } catch (UnsupportedCharsetException uce) {
+            log.warn("Unsupported charset in " + role + " of commit " + cmt.getName() + ", saving it without " + role, uce);
+        } catch (IllegalCharsetNameException ice) {
+            log.warn("Illegal charset name in " + role + " of commit " + cmt.getName() + ", saving it without " + role, ice);
+        }
+        return null;
+    }
     
+    /**
+     * Moves the source of each fork in front of the fork, so the source is
+     * fetched and loaded first
+     */
+    private static List<String> sourcesFirst(List<String> repositories, Map<String, String> sources) {
+        Set<String> ordered = new LinkedHashSet<String>();
+        for ( String reponame : repositories ) {
+            String source = sources.get( reponame );
+            if (source != null && repositories.contains( source )) {
+                ordered.add( source );
+            }
+            ordered.add( reponame );
+        }
+        return new ArrayList<String>( ordered );
+    }
+
     public void main() {
         Properties p = GithubProperties.props();
 
         CommitBlueprintsDriver bp = connectToGraph(p);
+        diffThreads = Integer.parseInt( getProperty( p, "edu.unl.cse.git.diffThreads",
+                String.valueOf( DEFAULT_DIFF_THREADS ) ) );
+        incremental = getProperty( p, "edu.unl.cse.git.incremental", "true" ).equals( "true" );
+        String mode = getProperty( p, "edu.unl.cse.git.diffMode", DiffMode.ANY.name() );
+        try {
+            diffMode = DiffMode.valueOf( mode.toUpperCase( Locale.ENGLISH ) );
+        } catch (IllegalArgumentException e) {
+            log.error("unknown diff mode " + mode + ", expected one of " + Arrays.toString( DiffMode.values() ));
+            System.exit(1);
+        }
+        maxFileSize = Integer.parseInt( getProperty( p, "edu.unl.cse.git.lineStats.maxFileSize",
+                String.valueOf( DEFAULT_MAX_FILE_SIZE ) ) );
+        if (!getProperty( p, "edu.unl.cse.git.lineStats", "true" ).equals( "true" )) {
+            maxFileSize = 0;
+        } else if (getProperty( p, "edu.unl.cse.git.blobless", "false" ).equals( "true" )) {
+            log.info("Blobless clones have no file contents, line statistics are turned off");
+            maxFileSize = 0;
+        }
 
-        String[] repositories = getProperty(p, "edu.unl.cse.git.repositories" ).split(",");
+        pathDictionaries = new File( getProperty( p, "edu.unl.cse.git.pathDictionaries",
+                getProperty( p, "edu.unl.cse.git.dburl" ) + ".paths" ) );
+        int fetchThreads = Integer.parseInt( getProperty( p, "edu.unl.cse.git.fetchThreads",
+                String.valueOf( DEFAULT_FETCH_THREADS ) ) );
+
+        boolean removeAfterLoad = getProperty(p,"edu.unl.cse.git.repositories.removeAfterLoad", "false").equals("true");
+
+        List<String> repositories = Arrays.asList( getProperty(p, "edu.unl.cse.git.repositories" ).split(",") );
+        if (getProperty( p, "edu.unl.cse.git.shareForks", "true" ).equals( "true" )) {
+            for ( String reponame : repositories ) {
+                String source = bp.getForkSource( reponame );
+                if (source != null) {
+                    forkSources.put( reponame, source );
+                }
+            }
+            repositories = sourcesFirst( repositories, forkSources );
+        }
+        // later repositories are fetched while the earlier ones are loaded
+        RepositoryFetcher fetcher = null;
+        if (fetchThreads > 0) {
+            fetcher = new RepositoryFetcher( fetchThreads );
+            fetcher.fetch( repositories, forkSources );
+        }
+        // forks may borrow the objects of their source, so sources are removed last
+        Set<String> removeLast = new LinkedHashSet<String>( forkSources.values() );
+        removeLast.retainAll( repositories );
         for ( String reponame : repositories ) {
-       	    loadRepository(bp, reponame);
+            if (fetcher != null && !fetcher.await( reponame )) {
+                log.warn("Unable to fetch " + reponame + ", loading the local copy if there is one");
+            }
+            loadRepository(bp, reponame);
             // remove if configured to
-            if (getProperty(p,"edu.unl.cse.git.repositories.removeAfterLoad", "false").equals("true")) {
-            	log.info("Removing Local Repository: " + reponame);
-            	RepositoryLoader.removeRepository(reponame);
+            if (removeAfterLoad && !removeLast.contains( reponame )) {
+                log.info("Removing Local Repository: " + reponame);
+                RepositoryLoader.removeRepository(reponame);
+            }
+        }
+        if (removeAfterLoad) {
+            for ( String reponame : removeLast ) {
+                log.info("Removing Local Repository: " + reponame);
+                RepositoryLoader.removeRepository(reponame);
             }
         }
 
+        if (fetcher != null) {
+            fetcher.close();
+        }
+
         log.info("Shutting down graph");
         bp.shutdown();
     }
@@ -1,9 +1,12 @@
 package edu.unl.cse.git;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import net.wagstrom.research.github.BlueprintsDriver;
+import net.wagstrom.research.github.EdgePartitions;
 import net.wagstrom.research.github.EdgeType;
 import net.wagstrom.research.github.IdCols;
 import net.wagstrom.research.github.PropertyName;
@@ -16,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ibm.research.govsci.graph.Shutdownable;
+import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 
@@ -39,14 +43,16 @@ public class CommitBlueprintsDriver extends BlueprintsDriver implements Shutdown
     public Vertex saveCommit( final RevCommit cmt ) {
         log.info( "Save Commit: {}", gitHash( cmt) );
         Vertex node = getOrCreateCommit( gitHash( cmt ) );
-        setProperty( node, PropertyName.DATE, cmt.getCommitTime());
+        setPropertyIfChanged( node, PropertyName.DATE, cmt.getCommitTime());
+        // a message in a charset Java can't decode is left out, the rest of the commit is saved
         try {
-            setProperty( node, PropertyName.MESSAGE, cmt.getFullMessage() );
+            setPropertyIfChanged( node, PropertyName.MESSAGE, cmt.getFullMessage() );
         } catch (java.nio.charset.IllegalCharsetNameException ice) {
-            // FIXME: should check to see if we can brute force the character set here
-            log.error("Illegal charset saving message for commit {}:", gitHash(cmt), ice);
+            log.warn("Illegal charset name in message of commit {}, saving it without message", gitHash(cmt), ice);
+        } catch (java.nio.charset.UnsupportedCharsetException uce) {
+            log.warn("Unsupported charset in message of commit {}, saving it without message", gitHash(cmt), uce);
         }
-        setProperty( node, PropertyName.IS_MERGE, cmt.getParentCount() > 1 );
+        setPropertyIfChanged( node, PropertyName.IS_MERGE, cmt.getParentCount() > 1 );
         return node;
     }
 
@@ -80,16 +86,94 @@ public class CommitBlueprintsDriver extends BlueprintsDriver implements Shutdown
         Vertex vEmail = getOrCreateEmail( sEmail );
         createEdgeIfNotExist( gitUser, vName, EdgeType.NAME );
         createEdgeIfNotExist( gitUser, vEmail, EdgeType.EMAIL );
-        setProperty(gitUser, PropertyName.TIMEZONE_OFFSET, person.getTimeZoneOffset());
-        setProperty(gitUser, PropertyName.TIMEZONE, person.getTimeZone().toString());
-        setProperty(gitUser, PropertyName.DATE, person.getWhen());
+        setPropertyIfChanged(gitUser, PropertyName.TIMEZONE_OFFSET, person.getTimeZoneOffset());
+        setPropertyIfChanged(gitUser, PropertyName.TIMEZONE, person.getTimeZone().toString());
+        setPropertyIfChanged(gitUser, PropertyName.DATE, person.getWhen());
         return gitUser;
     }
 
+    /**
+     * Gets the commits the history of a repository was loaded up to
+     *
+     * @param reponame the name of the repository
+     * @return the commit id loaded for each ref, empty if the history was never loaded
+     */
+    public Map<String, String> getLoadedTips( final String reponame ) {
+        Map<String, String> tips = new LinkedHashMap<String, String>();
+        Vertex node = getOrCreateRepository( reponame );
+        Object refs = node.getProperty( PropertyName.SYS_GIT_REFS );
+        Object commits = node.getProperty( PropertyName.SYS_GIT_TIPS );
+        if ( refs instanceof String[] && commits instanceof String[]
+                && ((String[]) refs).length == ((String[]) commits).length ) {
+            for ( int i = 0; i < ((String[]) refs).length; i++ ) {
+                tips.put( ((String[]) refs)[i], ((String[]) commits)[i] );
+            }
+        }
+        return tips;
+    }
+
+    /**
+     * Records the commits the history of a repository was loaded up to
+     *
+     * This should only be called once everything up to these commits is
+     * saved, the next run only loads the commits after them.
+     *
+     * @param reponame the name of the repository
+     * @param tips the commit id loaded for each ref
+     */
+    public void saveLoadedTips( final String reponame, final Map<String, String> tips ) {
+        Vertex node = getOrCreateRepository( reponame );
+        setPropertyIfChanged( node, PropertyName.SYS_GIT_REFS, tips.keySet().toArray( new String[tips.size()] ) );
+        setPropertyIfChanged( node, PropertyName.SYS_GIT_TIPS, tips.values().toArray( new String[tips.size()] ) );
+    }
+
+    /**
+     * Gets the repository a fork was made from
+     *
+     * This relies on the REPO_SOURCE and REPO_PARENT edges the GitHub crawler
+     * saves, so it only finds forks of repositories the crawler has visited.
+     *
+     * @param reponame the name of the repository
+     * @return the name of the root of the fork network, or of the direct
+     *      parent if the root is unknown, null if the repository is not a fork
+     */
+    public String getForkSource( final String reponame ) {
+        Vertex node = getOrCreateRepository( reponame );
+        for ( String label : new String[] { EdgeType.REPOSOURCE, EdgeType.REPOPARENT } ) {
+            for ( Vertex source : node.getVertices( Direction.OUT, label ) ) {
+                Object name = source.getProperty( IdCols.REPOSITORY );
+                if ( name != null && !name.equals( reponame ) ) {
+                    return name.toString();
+                }
+            }
+        }
+        return null;
+    }
+
     /*
      * Edges
      */
 
+    /**
+     * Links a commit to the repository it was loaded from
+     *
+     * @param repo_node the vertex of the repository
+     * @param cmt the commit
+     * @return the REPOSITORY edge
+     */
+    public Edge saveRepositoryCommit( final Vertex repo_node, final RevCommit cmt ) {
+        Vertex cmt_node = getOrCreateCommit( gitHash( cmt ) );
+        return createEdgeIfNotExist( cmt_node, repo_node, EdgeType.REPOSITORY );
+    }
+
+    /**
+     * Links every commit of a history to a repository
+     *
+     * @deprecated this keeps a map of the whole history, the loader links
+     *      each commit with {@link #saveRepositoryCommit(Vertex, RevCommit)}
+     *      as it saves it
+     */
+    @Deprecated
     public Map<RevCommit, Vertex> saveRepositoryCommits( final String reponame, final Iterable<RevCommit> cmts ) {
         HashMap<RevCommit, Vertex> mapper = new HashMap<RevCommit, Vertex>();
         Vertex repo_node = getOrCreateRepository( reponame );
@@ -123,20 +207,83 @@ public class CommitBlueprintsDriver extends BlueprintsDriver implements Shutdown
         return mapper;
     }
 
+    /**
+     * Saves the files a commit changed, with the line statistics of each file
+     * on its CHANGED edge
+     *
+     * @param paths the dictionary of the repository, the files are resolved through it
+     * @param filePaths the paths of the files
+     * @param stats how each file changed, by path, may be null
+     */
+    public void saveCommitFiles( final RevCommit cmt, final PathDictionary paths,
+            final Iterable<String> filePaths, final Map<String, FileStats> stats ) {
+        Vertex cmtNode = getOrCreateCommit( gitHash( cmt ) );
+        for ( String path : filePaths ) {
+            Vertex fileNode = getOrCreateFile( paths, path );
+            Edge edge = createEdgeIfNotExist( cmtNode, fileNode, EdgeType.CHANGED );
+            FileStats fileStats = stats == null ? null : stats.get( path );
+            if ( edge != null && fileStats != null ) {
+                setPropertyIfChanged( edge, PropertyName.CHANGE_TYPE, fileStats.getChangeType() );
+                if ( fileStats.getRenamedFrom() != null ) {
+                    setPropertyIfChanged( edge, PropertyName.RENAMED_FROM, paths.tokenOf( fileStats.getRenamedFrom() ) );
+                    setPropertyIfChanged( edge, PropertyName.SCORE, fileStats.getScore() );
+                }
+                if ( fileStats.hasLines() ) {
+                    setPropertyIfChanged( edge, PropertyName.ADDITIONS, fileStats.getAdditions() );
+                    setPropertyIfChanged( edge, PropertyName.DELETIONS, fileStats.getDeletions() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the CHANGED edges of all the files in a directory
+     *
+     * @param paths the dictionary of the repository
+     * @param directory a path without a trailing slash, the empty string for
+     *      the whole repository
+     * @return the number of times a file in the directory or one of its
+     *      subdirectories was changed by a commit
+     */
+    public long countDirectoryChanges( final PathDictionary paths, final String directory ) {
+        long changes = 0;
+        for ( Map.Entry<String, Object> file : paths.filesUnder( directory ).entrySet() ) {
+            Vertex fileNode = graph.getVertex( file.getValue() );
+            if ( fileNode == null ) {
+                continue;
+            }
+            // use the degree stored on the vertex when there is one
+            long degree = EdgePartitions.getDegree( fileNode, Direction.IN, EdgeType.CHANGED );
+            if ( degree < 0 ) {
+                degree = 0;
+                for ( Iterator<Edge> edges = fileNode.getEdges( Direction.IN, EdgeType.CHANGED ).iterator(); edges.hasNext(); edges.next() ) {
+                    degree++;
+                }
+            }
+            changes += degree;
+        }
+        return changes;
+    }
+
     public Vertex saveCommitAuthor( final RevCommit cmt, final PersonIdent author ) {
         if ( author == null ) { return null; }
         Vertex cmt_node = getOrCreateCommit( gitHash( cmt ) );
         Vertex author_node = saveGitUser( author );
         Edge edge = createEdgeIfNotExist( cmt_node, author_node, EdgeType.COMMITAUTHOR );
-        setProperty( edge, PropertyName.WHEN, author.getWhen() );
+        if ( edge != null ) {
+            setPropertyIfChanged( edge, PropertyName.WHEN, author.getWhen() );
+        }
         return author_node;
     }
 
     public Vertex saveCommitCommitter( final RevCommit cmt, final PersonIdent committer ) {
+        if ( committer == null ) { return null; }
         Vertex cmt_node = getOrCreateCommit( gitHash( cmt ) );
         Vertex committer_node = saveGitUser( committer );
         Edge edge = createEdgeIfNotExist( cmt_node, committer_node, EdgeType.COMMITTER );
-        setProperty( edge, PropertyName.WHEN, committer.getWhen() );
+        if ( edge != null ) {
+            setPropertyIfChanged( edge, PropertyName.WHEN, committer.getWhen() );
+        }
         return committer_node;
     }
 
@@ -148,6 +295,23 @@ public class CommitBlueprintsDriver extends BlueprintsDriver implements Shutdown
         return getOrCreateVertexHelper(IdCols.FILE, token, VertexType.FILE, fileidx);
     }
 
+    /**
+     * Gets or creates the vertex of a file through the dictionary of its
+     * repository, the file index is only used for paths it doesn't know
+     */
+    public Vertex getOrCreateFile( PathDictionary paths, String path ) {
+        Object id = paths.getId( path );
+        if ( id != null ) {
+            Vertex node = graph.getVertex( id );
+            if ( node != null && paths.isTokenOf( node.getProperty( IdCols.FILE ), path ) ) {
+                return node;
+            }
+        }
+        Vertex node = getOrCreateFile( paths.tokenOf( path ) );
+        paths.put( path, node.getId() );
+        return node;
+    }
+
     /*
      * git helpers
      */
@@ -0,0 +1,17 @@
+package edu.unl.cse.git;
+
+/**
+ * Which parents a merge commit is diffed against to find the files it
+ * changed. Commits with a single parent are diffed the same way in every
+ * mode.
+ */
+public enum DiffMode {
+    /** files that differ from any parent, every parent tree is read */
+    ANY,
+    /** files that differ from the first parent, the other parents are never read */
+    FIRST_PARENT,
+    /** files that differ from every parent, the files the merge itself changed */
+    COMBINED,
+    /** merges change no files and are not diffed at all */
+    SKIP_MERGES
+}
@@ -0,0 +1,58 @@
+package edu.unl.cse.git;
+
+/**
+ * How a commit changed a single file.
+ *
+ * The line counts are only known for text files below the size cutoff of
+ * the loader, for all other files they are -1.
+ */
+public class FileStats {
+    private final String changeType;
+    private final String renamedFrom;
+    private final int score;
+    private final int additions;
+    private final int deletions;
+
+    /**
+     * @param changeType ADD, MODIFY, DELETE, RENAME or COPY
+     * @param renamedFrom the path of the file a rename or copy started from, or null
+     * @param score the similarity of a rename or copy in percent
+     * @param additions the number of lines added, -1 if unknown
+     * @param deletions the number of lines removed, -1 if unknown
+     */
+    FileStats(final String changeType, final String renamedFrom, final int score,
+            final int additions, final int deletions) {
+        this.changeType = changeType;
+        this.renamedFrom = renamedFrom;
+        this.score = score;
+        this.additions = additions;
+        this.deletions = deletions;
+    }
+
+    public String getChangeType() {
+        return changeType;
+    }
+
+    public String getRenamedFrom() {
+        return renamedFrom;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getAdditions() {
+        return additions;
+    }
+
+    public int getDeletions() {
+        return deletions;
+    }
+
+    /**
+     * @return true if the line counts are known
+     */
+    public boolean hasLines() {
+        return additions >= 0;
+    }
+}
@@ -0,0 +1,63 @@
+package edu.unl.cse.git;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the git command line client for the transfers JGit can't do, such
+ * as partial clones, which JGit 1.1 (jgit.version in pom.xml) does not
+ * support.
+ */
+class NativeGit {
+    private final static Logger log = LoggerFactory.getLogger(NativeGit.class); // NOPMD
+    private final static String GIT = "git";
+
+    private NativeGit() {
+    }
+
+    /**
+     * Runs git and waits for it to finish. The output of git is logged.
+     *
+     * @param args the arguments of the git command
+     * @return true if git exited successfully, false if it failed or could
+     *      not be started
+     */
+    static boolean run(final String... args) {
+        final List<String> command = new ArrayList<String>();
+        command.add( GIT );
+        command.addAll( Arrays.asList( args ) );
+        Process process = null;
+        try {
+            process = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+            process.getOutputStream().close();
+            final BufferedReader output = new BufferedReader( new InputStreamReader( process.getInputStream() ) );
+            try {
+                String line;
+                while ( (line = output.readLine()) != null ) {
+                    log.debug( line );
+                }
+            } finally {
+                output.close();
+            }
+            final int status = process.waitFor();
+            if ( status != 0 ) {
+                log.warn("{} exited with status {}", command, status);
+            }
+            return status == 0;
+        } catch (IOException e) {
+            log.warn("Unable to run " + command + ":", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            log.warn("Interrupted while running {}", command);
+        }
+        return false;
+    }
+}
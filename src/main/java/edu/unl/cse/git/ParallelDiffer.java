@@ -0,0 +1,221 @@
+package edu.unl.cse.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Diffs the commits of a history walk on several threads.
+ *
+ * The thread iterating walks the history and hands each commit to a pool
+ * of workers, every one of them with its own ObjectReader and TreeWalk.
+ * The diffs come back in the order of the walk, so a single writer can save
+ * them one after the other while the workers diff the commits ahead of it.
+ * At most a few commits per worker are diffed ahead, which keeps the memory
+ * used independent of the length of the history.
+ *
+ * With one thread the commits are diffed by the session itself, the same
+ * way as without a ParallelDiffer.
+ */
+public class ParallelDiffer {
+    private final static Logger log = LoggerFactory.getLogger(ParallelDiffer.class); // NOPMD
+    /** commits diffed ahead of the writer for each thread */
+    private final static int AHEAD_PER_THREAD = 4;
+    /** how long close waits for the workers to stop */
+    private final static long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final RepositorySession session;
+    private final int threads;
+    private final ExecutorService pool;
+    private final List<TreeDiffer> differs = new ArrayList<TreeDiffer>();
+    private final ThreadLocal<TreeDiffer> localDiffer = new ThreadLocal<TreeDiffer>() {
+        @Override
+        protected TreeDiffer initialValue() {
+            final TreeDiffer differ = session.newDiffer();
+            synchronized (differs) {
+                differs.add( differ );
+            }
+            return differ;
+        }
+    };
+
+    /**
+     * A commit together with the files it changed
+     */
+    public static class Diff {
+        private final RevCommit commit;
+        private final List<String> files;
+        private final Map<String, FileStats> stats;
+
+        Diff(final RevCommit commit, final List<String> files, final Map<String, FileStats> stats) {
+            this.commit = commit;
+            this.files = files;
+            this.stats = stats;
+        }
+
+        public RevCommit getCommit() {
+            return commit;
+        }
+
+        /**
+         * @return the paths of the changed files, null if they could not be read
+         */
+        public List<String> getFiles() {
+            return files;
+        }
+
+        /**
+         * @return how each file changed, by path, empty without line statistics
+         */
+        public Map<String, FileStats> getStats() {
+            return stats;
+        }
+    }
+
+    /**
+     * @param session the session the commits come from
+     * @param threads the number of threads diffing commits
+     */
+    public ParallelDiffer(final RepositorySession session, final int threads) {
+        this.session = session;
+        this.threads = threads < 1 ? 1 : threads;
+        pool = this.threads > 1 ? Executors.newFixedThreadPool( this.threads ) : null;
+    }
+
+    /**
+     * @param commits the commits of the session, in the order to save them
+     * @return the diffs of the commits, in the same order
+     */
+    public Iterable<Diff> diff(final Iterable<RevCommit> commits) {
+        return new Iterable<Diff>() {
+            public Iterator<Diff> iterator() {
+                return new DiffIterator( commits.iterator() );
+            }
+        };
+    }
+
+    /**
+     * Stops the workers and releases their readers
+     *
+     * A worker may still be reading when it is interrupted, so the readers
+     * are only released once every worker has stopped. If they don't stop
+     * in time the readers are left to the garbage collector.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+            boolean stopped = false;
+            try {
+                stopped = pool.awaitTermination( CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS );
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!stopped) {
+                log.warn("Diff workers of " + session.getReponame() + " did not stop, not releasing their readers");
+                return;
+            }
+        }
+        synchronized (differs) {
+            for (TreeDiffer differ : differs) {
+                differ.release();
+            }
+            differs.clear();
+        }
+    }
+
+    private class DiffIterator implements Iterator<Diff> {
+        private final Iterator<RevCommit> commits;
+        private final LinkedList<Future<Diff>> pending = new LinkedList<Future<Diff>>();
+
+        DiffIterator(final Iterator<RevCommit> commits) {
+            this.commits = commits;
+        }
+
+        public boolean hasNext() {
+            if (pool == null) {
+                return commits.hasNext();
+            }
+            fill();
+            return !pending.isEmpty();
+        }
+
+        public Diff next() {
+            if (pool == null) {
+                final RevCommit cmt = commits.next();
+                final Map<String, FileStats> stats = new HashMap<String, FileStats>();
+                return new Diff( cmt, session.filesChanged( cmt, stats ), stats );
+            }
+            fill();
+            if (pending.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while diffing commits", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Unable to diff commit", e.getCause());
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Reads commits ahead and hands them to the workers
+         *
+         * The trees are looked up here, because the RevWalk that parsed the
+         * commits may only be used by this thread.
+         */
+        private void fill() {
+            while (pending.size() < threads * AHEAD_PER_THREAD && commits.hasNext()) {
+                final RevCommit cmt = commits.next();
+                final boolean diffed = session.isDiffed( cmt );
+                ObjectId[] trees = null;
+                try {
+                    if (diffed) {
+                        trees = session.treesOf( cmt );
+                    }
+                } catch (IOException e) {
+                    log.error("Exception encountered reading parents of {}:", cmt.getName(), e);
+                }
+                final ObjectId[] commitTrees = trees;
+                pending.add( pool.submit( new Callable<Diff>() {
+                    public Diff call() {
+                        final Map<String, FileStats> stats = new HashMap<String, FileStats>();
+                        if (!diffed) {
+                            return new Diff( cmt, new ArrayList<String>(), stats );
+                        }
+                        if (commitTrees == null) {
+                            return new Diff( cmt, null, stats );
+                        }
+                        try {
+                            return new Diff( cmt, localDiffer.get().filesChanged( commitTrees, stats ), stats );
+                        } catch (IOException e) {
+                            log.error("Exception encountered getting changed files:", e);
+                        }
+                        return new Diff( cmt, null, stats );
+                    }
+                } ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package edu.unl.cse.git;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The FILE vertices of one repository, by path.
+ *
+ * Resolving a changed file used to build its "repo--path" token and look
+ * it up in the file index for every commit that touched it. The dictionary
+ * maps each path to the id of its vertex, so after the first commit a file
+ * is a single map lookup and the token is only built when the vertex is
+ * created. The paths are sorted, which makes every directory a contiguous
+ * range of the dictionary.
+ *
+ * The dictionary is kept in a file next to the database between runs. The
+ * ids are checked against the vertex they point to before use, so a file
+ * left over from another database only costs the index lookups it would
+ * have saved.
+ */
+public class PathDictionary {
+    private final static Logger log = LoggerFactory.getLogger(PathDictionary.class); // NOPMD
+    private final static int VERSION = 1;
+    /** longest path writeUTF can store */
+    private final static int MAX_PATH = 65535 / 3;
+
+    private final String reponame;
+    private final String prefix;
+    private final SortedMap<String, Object> ids = new TreeMap<String, Object>();
+    private boolean changed = false;
+
+    public PathDictionary(final String reponame) {
+        this.reponame = reponame;
+        prefix = RepositoryLoader.fileToken( reponame, "" );
+    }
+
+    public String getReponame() {
+        return reponame;
+    }
+
+    /**
+     * @return the token of the FILE vertex of a path
+     */
+    public String tokenOf(final String path) {
+        return prefix + path;
+    }
+
+    /**
+     * @return true if a token is the token of a path, without building the token
+     */
+    public boolean isTokenOf(final Object token, final String path) {
+        return token instanceof String && ((String) token).length() == prefix.length() + path.length()
+                && ((String) token).startsWith( prefix ) && ((String) token).endsWith( path );
+    }
+
+    /**
+     * @return the id of the vertex of a path, or null if it is not known
+     */
+    public Object getId(final String path) {
+        return ids.get( path );
+    }
+
+    public void put(final String path, final Object id) {
+        if ( !id.equals( ids.put( path, id ) ) ) {
+            changed = true;
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Gets the files in a directory and all its subdirectories
+     *
+     * @param directory a path without a trailing slash, the empty string for
+     *      the whole repository
+     * @return the vertex id of each file, by path
+     */
+    public SortedMap<String, Object> filesUnder(final String directory) {
+        if ( directory.length() == 0 ) {
+            return Collections.unmodifiableSortedMap( ids );
+        }
+        // '0' is the character after '/', so this is every path starting with directory/
+        return Collections.unmodifiableSortedMap( ids.subMap( directory + "/", directory + "0" ) );
+    }
+
+    /**
+     * Reads the dictionary of a repository
+     *
+     * @return the dictionary, empty if the file is missing or unreadable
+     */
+    public static PathDictionary load(final File file, final String reponame) {
+        final PathDictionary dictionary = new PathDictionary( reponame );
+        if ( !file.exists() ) {
+            return dictionary;
+        }
+        try {
+            final DataInputStream in = new DataInputStream( new BufferedInputStream(
+                    new GZIPInputStream( new FileInputStream( file ) ) ) );
+            try {
+                if ( in.readInt() != VERSION ) {
+                    log.warn("Ignoring path dictionary {} of an unknown version", file);
+                    return dictionary;
+                }
+                final int size = in.readInt();
+                for ( int i = 0; i < size; i++ ) {
+                    final String path = in.readUTF();
+                    final String id = in.readUTF();
+                    dictionary.ids.put( path, parseId( id ) );
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read path dictionary " + file + ", starting an empty one:", e);
+            dictionary.ids.clear();
+        }
+        log.debug("Read {} paths of {}", dictionary.size(), reponame);
+        return dictionary;
+    }
+
+    /**
+     * Writes the dictionary if it changed since it was read
+     */
+    public void save(final File file) throws IOException {
+        if ( !changed ) {
+            return;
+        }
+        final File directory = file.getParentFile();
+        if ( directory != null && !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException( "Unable to create directory " + directory );
+        }
+        // written next to the old file and moved over it, so a crash never leaves half a dictionary
+        final File partial = new File( file.getPath() + ".tmp" );
+        final DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                new GZIPOutputStream( new FileOutputStream( partial ) ) ) );
+        try {
+            int size = 0;
+            for ( String path : ids.keySet() ) {
+                if ( path.length() <= MAX_PATH ) {
+                    size++;
+                }
+            }
+            out.writeInt( VERSION );
+            out.writeInt( size );
+            for ( Map.Entry<String, Object> entry : ids.entrySet() ) {
+                if ( entry.getKey().length() <= MAX_PATH ) {
+                    out.writeUTF( entry.getKey() );
+                    out.writeUTF( entry.getValue().toString() );
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if ( file.exists() && !file.delete() || !partial.renameTo( file ) ) {
+            throw new IOException( "Unable to replace " + file );
+        }
+        changed = false;
+    }
+
+    /**
+     * Neo4j ids are numbers, other graphs may use strings
+     */
+    private static Object parseId(final String id) {
+        try {
+            return Long.valueOf( id );
+        } catch (NumberFormatException e) {
+            return id;
+        }
+    }
+}
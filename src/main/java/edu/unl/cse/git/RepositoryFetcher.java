@@ -0,0 +1,102 @@
+package edu.unl.cse.git;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches or clones repositories on a bounded pool of threads.
+ *
+ * Every repository is handed to the pool up front, at most as many of them
+ * are on the network at once as there are threads. The loader waits for each
+ * repository in turn, so it loads one repository while the following ones
+ * are still being fetched.
+ */
+public class RepositoryFetcher {
+    private final static Logger log = LoggerFactory.getLogger(RepositoryFetcher.class); // NOPMD
+
+    private final ExecutorService pool;
+    private final Map<String, Future<Boolean>> fetches = new LinkedHashMap<String, Future<Boolean>>();
+
+    /**
+     * @param threads the number of repositories fetched at the same time
+     */
+    public RepositoryFetcher(final int threads) {
+        pool = Executors.newFixedThreadPool( threads < 1 ? 1 : threads );
+    }
+
+    /**
+     * Starts fetching the repositories, in the order given
+     */
+    public void fetch(final List<String> reponames) {
+        fetch( reponames, Collections.<String, String>emptyMap() );
+    }
+
+    /**
+     * Starts fetching the repositories, in the order given
+     *
+     * A fork waits for its source if that is fetched too, so the fork can
+     * share the objects of the source. Sources must come before their forks.
+     *
+     * @param sources the source of each fork
+     */
+    public void fetch(final List<String> reponames, final Map<String, String> sources) {
+        for ( final String reponame : reponames ) {
+            if ( fetches.containsKey( reponame ) ) {
+                continue;
+            }
+            final String source = sources.get( reponame );
+            final Future<Boolean> sourceFetch = source == null ? null : fetches.get( source );
+            fetches.put( reponame, pool.submit( new Callable<Boolean>() {
+                public Boolean call() throws InterruptedException, ExecutionException {
+                    // the source was submitted first, so it is never queued behind this
+                    if ( sourceFetch != null ) {
+                        sourceFetch.get();
+                    }
+                    final long start = System.currentTimeMillis();
+                    final boolean fetched = RepositoryLoader.fetchRepository( reponame, source );
+                    log.info("Fetched {} in {} ms", reponame, System.currentTimeMillis() - start);
+                    return fetched;
+                }
+            } ) );
+        }
+    }
+
+    /**
+     * Waits until a repository is fetched
+     *
+     * @return true if the repository is up to date, false if fetching it
+     *      failed or it was never handed to {@link #fetch(List)}
+     */
+    public boolean await(final String reponame) {
+        final Future<Boolean> fetch = fetches.remove( reponame );
+        if ( fetch == null ) {
+            return false;
+        }
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while fetching {}", reponame);
+        } catch (ExecutionException e) {
+            log.error("Exception encountered fetching " + reponame + ":", e.getCause());
+        }
+        return false;
+    }
+
+    /**
+     * Stops the fetches that have not started yet
+     */
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -1,19 +1,26 @@
 package edu.unl.cse.git;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import net.wagstrom.research.github.GithubProperties;
 
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.InvalidRemoteException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.api.errors.NoHeadException;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.slf4j.Logger;
@@ -22,7 +29,12 @@ import org.slf4j.LoggerFactory;
 public class RepositoryLoader {
     private final static String METHOD = "https://";
     private final static String BASE = "github.com/";
+    private final static String REMOTE = "origin";
+    /** clones are bare, so every branch is mirrored straight into the local branches */
+    private final static RefSpec BRANCHES = new RefSpec( "+refs/heads/*:refs/heads/*" );
     private final static File LOCAL_STORE = new File(GithubProperties.props().getProperty("edu.unl.cse.git.localStore", "/tmp/repo_loader" ));
+    /** the loader only reads commits and trees, so blobs can be left on the server */
+    private final static boolean BLOBLESS = GithubProperties.props().getProperty("edu.unl.cse.git.blobless", "false").trim().equals("true");
     private final static Logger log = LoggerFactory.getLogger(RepositoryLoader.class); // NOPMD
 
     static public Git getRepository(final String username, final String repoName) {
@@ -52,16 +64,132 @@ public class RepositoryLoader {
 
     static private Git updateRepository(final String name) {
         try {
-            Git repo = Git.open( new File( LOCAL_STORE, name ) );
-            //TODO i'm unsure about this...
-            //repo.fetch();
-            return repo;
+            // fetching is done ahead of time by fetchRepository
+            return Git.open( new File( LOCAL_STORE, name ) );
         } catch (IOException e) {
             log.error("Exception encountered opening repository:", e);
         }
         return null;
     }
     
+    /**
+     * Brings the local copy of a repository up to date
+     *
+     * Missing repositories are cloned, existing ones are fetched. All the
+     * branches of the remote are copied to the local branches, which the
+     * loader walks.
+     *
+     * @return true if the repository is up to date
+     */
+    static public boolean fetchRepository(final String name) {
+        return fetchRepository( name, null );
+    }
+
+    /**
+     * Brings the local copy of a fork up to date
+     *
+     * If the fork is not cloned yet but its source is, the clone borrows the
+     * objects of the source through alternates and only the objects unique
+     * to the fork are downloaded and stored. The source must then be kept
+     * as long as the fork is.
+     *
+     * @param source the repository the fork was made from, or null
+     * @return true if the repository is up to date
+     */
+    static public boolean fetchRepository(final String name, final String source) {
+        final File shared = source == null || !repositoryIsCloned( source ) ? null
+                : new File( new File( LOCAL_STORE, source ), "objects" );
+        if ( BLOBLESS && fetchBlobless( name, shared ) ) {
+            return true;
+        }
+        try {
+            final Git git;
+            if ( repositoryIsCloned( name ) ) {
+                git = Git.open( new File( LOCAL_STORE, name ) );
+            } else if ( shared != null ) {
+                git = initFork( name, shared );
+            } else {
+                git = cloneRepository( name );
+            }
+            try {
+                git.fetch()
+                    .setRemote( REMOTE )
+                    .setRefSpecs( BRANCHES )
+                    .call();
+            } finally {
+                git.getRepository().close();
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Exception encountered opening repository " + name + ":", e);
+        } catch (InvalidRemoteException e) {
+            log.error("Exception encountered fetching repository " + name + ":", e);
+        } catch (JGitInternalException e) {
+            log.error("Exception encountered fetching repository " + name + ":", e);
+        }
+        return false;
+    }
+
+    /**
+     * Creates an empty bare repository for a fork that reads the objects of
+     * its source through alternates
+     *
+     * JGit offers the branches of the alternate repository to the server when
+     * fetching, so the first fetch only transfers what the fork added.
+     */
+    static private Git initFork(final String name, final File shared) throws IOException {
+        final File dir = new File( LOCAL_STORE, name );
+        final Git git = Git.init().setBare( true ).setDirectory( dir ).call();
+        final File alternates = new File( new File( new File( dir, "objects" ), "info" ), "alternates" );
+        if ( !alternates.getParentFile().isDirectory() && !alternates.getParentFile().mkdirs() ) {
+            throw new IOException( "Unable to create " + alternates.getParent() );
+        }
+        final Writer out = new OutputStreamWriter( new FileOutputStream( alternates ), "UTF-8" );
+        try {
+            out.write( shared.getAbsolutePath() );
+            out.write( '\n' );
+        } finally {
+            out.close();
+        }
+        final StoredConfig config = git.getRepository().getConfig();
+        config.setString( "remote", REMOTE, "url", METHOD + BASE + name + ".git" );
+        config.save();
+        log.info("Cloning {} using the objects of {}", name, shared.getParent());
+        // reopen so the object directory picks up the alternates
+        git.getRepository().close();
+        return Git.open( dir );
+    }
+
+    /**
+     * Clones or fetches a repository without its blobs using the git client
+     *
+     * JGit can't make partial clones, so this runs git itself. Later fetches
+     * reuse the blob filter the clone recorded for the remote.
+     *
+     * @param shared the object directory of the source of a fork, or null
+     * @return false if git failed, the repository is then fetched with JGit
+     */
+    static private boolean fetchBlobless(final String name, final File shared) {
+        final File dir = new File( LOCAL_STORE, name );
+        if ( repositoryIsCloned( name ) ) {
+            return NativeGit.run( "--git-dir=" + dir.getPath(), "fetch", REMOTE, BRANCHES.toString() );
+        }
+        final List<String> clone = new ArrayList<String>( Arrays.asList( "clone", "--bare", "--filter=blob:none" ) );
+        if ( shared != null ) {
+            clone.add( "--reference=" + shared.getParentFile().getAbsolutePath() );
+        }
+        clone.add( METHOD + BASE + name + ".git" );
+        clone.add( dir.getPath() );
+        if ( !NativeGit.run( clone.toArray( new String[clone.size()] ) )
+                // JGit only opens format 0 repositories, the promisor remote is plain configuration
+                || !NativeGit.run( "--git-dir=" + dir.getPath(), "config", "core.repositoryformatversion", "0" ) ) {
+            log.warn("Unable to make a blobless clone of {}, cloning it with JGit", name);
+            deleteFile( dir );
+            return false;
+        }
+        return true;
+    }
+
     static private boolean deleteFile(final File f) {
     	if (f.isDirectory()) {
     		for (File child : f.listFiles()) {
@@ -95,6 +223,11 @@ public class RepositoryLoader {
         return reponame.split( "/" )[1] + "--" + fileName;
     }
 
+    /**
+     * @deprecated opens the repository for every commit, use
+     *      {@link RepositorySession#filesChanged(RevCommit)} for whole histories
+     */
+    @Deprecated
     static public List<String> filesChanged(final String reponame, final RevCommit cmt) {
         try {
             List<String> changed = new ArrayList<String>();
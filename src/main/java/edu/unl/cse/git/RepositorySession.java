@@ -0,0 +1,315 @@
+package edu.unl.cse.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFlagFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A repository opened once for a whole walk of its history.
+ *
+ * The session holds a single ObjectReader, which keeps the pack windows and
+ * inflaters it has opened, and a RevWalk and TreeWalk on top of that reader
+ * that are reset instead of created again for each commit. Commits parsed
+ * by the RevWalk stay cached, so walking the history a second time does not
+ * read them again.
+ *
+ * A session is not thread safe. Threads that diff commits for the session
+ * each get a {@link TreeDiffer} with a reader of their own.
+ */
+public class RepositorySession {
+    private final static Logger log = LoggerFactory.getLogger(RepositorySession.class); // NOPMD
+
+    private final String reponame;
+    private final Repository repository;
+    private final RevWalk revWalk;
+    /** marks the commits returned by the last call of {@link #getCommits()} */
+    private final RevFlag walked;
+    private final ObjectReader reader;
+    private TreeDiffer differ;
+    private int maxFileSize = 0;
+    private DiffMode diffMode = DiffMode.ANY;
+    private final List<ObjectId> loaded = new ArrayList<ObjectId>();
+    private final List<ObjectId> shared = new ArrayList<ObjectId>();
+
+    RepositorySession(final String reponame, final Repository repository) {
+        this.reponame = reponame;
+        this.repository = repository;
+        reader = repository.newObjectReader();
+        revWalk = new RevWalk( reader );
+        walked = revWalk.newFlag( "walked" );
+    }
+
+    /**
+     * Clones or opens a repository
+     *
+     * @return the session, or null if the repository could not be opened
+     */
+    static public RepositorySession open(final String reponame) {
+        final Git git = RepositoryLoader.getRepository( reponame );
+        if ( git == null ) {
+            return null;
+        }
+        return new RepositorySession( reponame, git.getRepository() );
+    }
+
+    public String getReponame() {
+        return reponame;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Gets the commit each branch points to
+     *
+     * A repository without branches, such as one with a detached HEAD,
+     * returns HEAD instead.
+     *
+     * @return the commit id for each ref name
+     */
+    public Map<String, String> getTips() throws IOException {
+        final Map<String, String> tips = new LinkedHashMap<String, String>();
+        for ( Ref ref : repository.getRefDatabase().getRefs( Constants.R_HEADS ).values() ) {
+            if ( ref.getObjectId() != null ) {
+                tips.put( ref.getName(), ref.getObjectId().getName() );
+            }
+        }
+        if ( tips.isEmpty() ) {
+            final ObjectId head = repository.resolve( Constants.HEAD );
+            if ( head != null ) {
+                tips.put( Constants.HEAD, head.getName() );
+            }
+        }
+        return tips;
+    }
+
+    /**
+     * Leaves out the history that was loaded before
+     *
+     * Every later walk stops at these commits. Commits that are no longer in
+     * the repository, for example after a branch was rewritten and garbage
+     * collected, are ignored.
+     *
+     * @param commits the ids of the commits loaded on an earlier run
+     */
+    public void setLoaded(final Collection<String> commits) {
+        loaded.clear();
+        for ( String commit : commits ) {
+            loaded.add( ObjectId.fromString( commit ) );
+        }
+    }
+
+    /**
+     * Leaves out the history saved for another repository, such as the
+     * source of a fork
+     *
+     * These commits are left out of {@link #getCommits()} and returned by
+     * {@link #getSharedCommits()} instead. Commits that are not in this
+     * repository are ignored.
+     *
+     * @param commits the ids of the commits loaded for the other repository
+     */
+    public void setShared(final Collection<String> commits) {
+        shared.clear();
+        for ( String commit : commits ) {
+            shared.add( ObjectId.fromString( commit ) );
+        }
+    }
+
+    /**
+     * Walks the history from the tip of every branch, newest commit first
+     *
+     * Every call starts a new walk with the same RevWalk, so the commits of
+     * an earlier walk must not be iterated any more.
+     *
+     * @return the commits not reachable from the loaded or shared commits,
+     *      or null if the branches could not be read
+     */
+    public Iterable<RevCommit> getCommits() {
+        revWalk.reset();
+        revWalk.setRevFilter( new RevFilter() {
+            @Override
+            public boolean include(final RevWalk walker, final RevCommit cmt) {
+                cmt.add( walked );
+                return true;
+            }
+
+            @Override
+            public RevFilter clone() {
+                return this;
+            }
+        } );
+        return walk( true );
+    }
+
+    /**
+     * Walks the commits shared with another repository that the last call
+     * of {@link #getCommits()} left out
+     *
+     * The commits are only flagged by the earlier walk, so no list of the
+     * history is kept in between.
+     *
+     * @return the commits not reachable from the loaded commits that
+     *      {@link #getCommits()} did not return, or null if the branches
+     *      could not be read
+     */
+    public Iterable<RevCommit> getSharedCommits() {
+        if ( shared.isEmpty() ) {
+            return Collections.<RevCommit>emptyList();
+        }
+        revWalk.resetRetain( walked );
+        revWalk.setRevFilter( RevFlagFilter.has( walked ).negate() );
+        return walk( false );
+    }
+
+    private Iterable<RevCommit> walk(final boolean skipShared) {
+        try {
+            final Map<String, String> tips = getTips();
+            if ( tips.isEmpty() ) {
+                log.error("No branches found for repository {}", reponame);
+                return null;
+            }
+            for ( String tip : tips.values() ) {
+                revWalk.markStart( revWalk.parseCommit( ObjectId.fromString( tip ) ) );
+            }
+            for ( ObjectId commit : loaded ) {
+                try {
+                    revWalk.markUninteresting( revWalk.parseCommit( commit ) );
+                } catch (MissingObjectException e) {
+                    log.warn("Loaded commit {} is no longer in {}", commit.getName(), reponame);
+                }
+            }
+            if ( skipShared ) {
+                for ( ObjectId commit : shared ) {
+                    try {
+                        revWalk.markUninteresting( revWalk.parseCommit( commit ) );
+                    } catch (MissingObjectException e) {
+                        log.debug("Shared commit {} is not in {}", commit.getName(), reponame);
+                    }
+                }
+            }
+            return revWalk;
+        } catch (IOException e) {
+            log.error("Exception encountered walking commits:", e);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the trees to diff for a commit, parsing its parents if the walk
+     * has not reached them yet
+     *
+     * @return the tree of the commit followed by the trees of the parents
+     *      the diff mode compares it to
+     */
+    public ObjectId[] treesOf(final RevCommit cmt) throws IOException {
+        // only the first parent is parsed when the others are never diffed
+        final int parents = diffMode == DiffMode.FIRST_PARENT ? Math.min( 1, cmt.getParentCount() )
+                : cmt.getParentCount();
+        final ObjectId[] trees = new ObjectId[parents + 1];
+        trees[0] = cmt.getTree();
+        for ( int i = 0; i < parents; i++ ) {
+            final RevCommit parent = cmt.getParent( i );
+            if ( parent.getTree() == null ) {
+                revWalk.parseHeaders( parent );
+            }
+            trees[i + 1] = parent.getTree();
+        }
+        return trees;
+    }
+
+    /**
+     * Sets how merges are diffed
+     *
+     * This must be called before the first commit is diffed.
+     */
+    public void setDiffMode(final DiffMode diffMode) {
+        this.diffMode = diffMode;
+    }
+
+    /**
+     * @return false for the merges the diff mode skips, they change no files
+     */
+    public boolean isDiffed(final RevCommit cmt) {
+        return diffMode != DiffMode.SKIP_MERGES || cmt.getParentCount() < 2;
+    }
+
+    /**
+     * Turns on counting the lines each commit adds and removes
+     *
+     * This must be called before the first commit is diffed.
+     *
+     * @param maxFileSize files larger than this many bytes get no line
+     *      counts, 0 turns the line statistics off
+     */
+    public void setLineStats(final int maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * @return the paths of the files a commit changed compared to its parents,
+     *      or null if the trees could not be read
+     */
+    public List<String> filesChanged(final RevCommit cmt) {
+        return filesChanged( cmt, null );
+    }
+
+    /**
+     * @param stats receives how each file changed, by path, if line statistics are on, may be null
+     * @return the paths of the files a commit changed compared to its parents,
+     *      or null if the trees could not be read
+     */
+    public List<String> filesChanged(final RevCommit cmt, final Map<String, FileStats> stats) {
+        if ( !isDiffed( cmt ) ) {
+            return new ArrayList<String>();
+        }
+        if ( differ == null ) {
+            differ = new TreeDiffer( reader, repository, maxFileSize, diffMode );
+        }
+        try {
+            return differ.filesChanged( treesOf( cmt ), stats );
+        } catch (IOException e) {
+            log.error("Exception encountered getting changed files:", e);
+        }
+        return null;
+    }
+
+    /**
+     * @return a differ with a new reader on the repository, for use by another thread
+     */
+    TreeDiffer newDiffer() {
+        return new TreeDiffer( repository.newObjectReader(), repository, maxFileSize, diffMode );
+    }
+
+    /**
+     * Releases the walks, the reader and the repository
+     */
+    public void close() {
+        if ( differ != null ) {
+            differ.release();
+        }
+        revWalk.release();
+        reader.release();
+        repository.close();
+    }
+}
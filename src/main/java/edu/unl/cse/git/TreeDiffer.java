@@ -0,0 +1,228 @@
+package edu.unl.cse.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the files that differ between a tree and the trees of its parents.
+ *
+ * The differ keeps one TreeWalk on its own ObjectReader and resets it for
+ * every commit. It is not thread safe, every thread diffing commits needs
+ * a differ of its own.
+ *
+ * With line statistics on, commits diffed against at most one parent are
+ * also run through rename detection and the lines of every text file are counted.
+ * The texts are kept in a cache bounded by size, because the new version of
+ * a file in one commit is usually the old version in the next one.
+ *
+ * Merges are diffed against all the trees they are given. What counts as a
+ * change then depends on the {@link DiffMode}.
+ */
+class TreeDiffer {
+    private final static Logger log = LoggerFactory.getLogger(TreeDiffer.class); // NOPMD
+    /** bytes of file contents each differ keeps */
+    private final static int CACHE_SIZE = 16 << 20;
+    /** bytes counted for a file that is cached as binary */
+    private final static int BINARY_SIZE = 64;
+    /** paths that differ from every parent, a subtree equal to one parent holds no such path */
+    private final static TreeFilter DIFFERS_FROM_ALL = new TreeFilter() {
+        @Override
+        public boolean include(final TreeWalk walker) {
+            for ( int i = 1; i < walker.getTreeCount(); i++ ) {
+                if ( walker.idEqual( 0, i ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    };
+
+    private final ObjectReader reader;
+    private final TreeWalk treeWalk;
+    private final RenameDetector renames;
+    private final DiffAlgorithm algorithm = DiffAlgorithm.getAlgorithm( DiffAlgorithm.SupportedAlgorithm.HISTOGRAM );
+    private final int maxFileSize;
+    private final TreeFilter mergeFilter;
+    /** the text of each cached blob, null for binary blobs, least recently used first */
+    private final Map<ObjectId, RawText> texts = new LinkedHashMap<ObjectId, RawText>( 16, 0.75f, true );
+    private final Map<ObjectId, Integer> sizes = new LinkedHashMap<ObjectId, Integer>();
+    private long cached = 0;
+
+    TreeDiffer(final ObjectReader reader) {
+        this( reader, null, 0, DiffMode.ANY );
+    }
+
+    /**
+     * @param repository the repository, for the rename detection settings
+     * @param maxFileSize files larger than this many bytes get no line
+     *      counts, 0 turns the line statistics off
+     * @param mode how merges given with all their parents are diffed
+     */
+    TreeDiffer(final ObjectReader reader, final Repository repository, final int maxFileSize,
+            final DiffMode mode) {
+        this.reader = reader;
+        this.maxFileSize = maxFileSize;
+        mergeFilter = mode == DiffMode.COMBINED ? DIFFERS_FROM_ALL : TreeFilter.ANY_DIFF;
+        renames = repository == null || maxFileSize <= 0 ? null : new RenameDetector( repository );
+        treeWalk = new TreeWalk( reader );
+        treeWalk.setFilter( TreeFilter.ANY_DIFF );
+        treeWalk.setRecursive( true );
+    }
+
+    /**
+     * @param trees the tree of a commit followed by the trees of its parents
+     * @return the paths of the changed files
+     */
+    List<String> filesChanged(final ObjectId[] trees) throws IOException {
+        return filesChanged( trees, null );
+    }
+
+    /**
+     * @param trees the tree of a commit followed by the trees of its parents
+     * @param stats receives how each file changed, by path, if line statistics are on
+     *      and at most one parent tree is given, may be null
+     * @return the paths of the changed files
+     */
+    List<String> filesChanged(final ObjectId[] trees,
+            final Map<String, FileStats> stats) throws IOException {
+        if ( renames == null || stats == null || trees.length > 2 ) {
+            final List<String> changed = new ArrayList<String>();
+            treeWalk.setFilter( trees.length > 2 ? mergeFilter : TreeFilter.ANY_DIFF );
+            treeWalk.reset( trees );
+            while ( treeWalk.next() ) {
+                changed.add( treeWalk.getPathString() );
+            }
+            return changed;
+        }
+        // the parent, or nothing for a root commit, is the old side
+        treeWalk.setFilter( TreeFilter.ANY_DIFF );
+        treeWalk.reset();
+        if ( trees.length > 1 ) {
+            treeWalk.addTree( trees[1] );
+        } else {
+            treeWalk.addTree( new EmptyTreeIterator() );
+        }
+        treeWalk.addTree( trees[0] );
+        List<DiffEntry> entries = DiffEntry.scan( treeWalk );
+        // a file that changed its type shows up as a delete and an add of the same path
+        final Set<String> changed = new LinkedHashSet<String>();
+        for ( DiffEntry entry : entries ) {
+            changed.add( pathOf( entry ) );
+        }
+        renames.reset();
+        renames.addAll( entries );
+        try {
+            entries = renames.compute( reader, NullProgressMonitor.INSTANCE );
+        } catch (IOException e) {
+            log.debug("Unable to detect renames, keeping adds and deletes:", e);
+        }
+        for ( DiffEntry entry : entries ) {
+            final DiffEntry.ChangeType type = entry.getChangeType();
+            final String from = type == DiffEntry.ChangeType.RENAME || type == DiffEntry.ChangeType.COPY
+                    ? entry.getOldPath() : null;
+            int additions = -1;
+            int deletions = -1;
+            final RawText a = type == DiffEntry.ChangeType.ADD ? RawText.EMPTY_TEXT
+                    : text( entry.getOldId(), entry.getOldMode() );
+            final RawText b = type == DiffEntry.ChangeType.DELETE ? RawText.EMPTY_TEXT
+                    : text( entry.getNewId(), entry.getNewMode() );
+            if ( a != null && b != null ) {
+                additions = 0;
+                deletions = 0;
+                for ( Edit edit : algorithm.diff( RawTextComparator.DEFAULT, a, b ) ) {
+                    additions += edit.getLengthB();
+                    deletions += edit.getLengthA();
+                }
+            }
+            stats.put( pathOf( entry ), new FileStats( type.name(), from, entry.getScore(), additions, deletions ) );
+        }
+        return new ArrayList<String>( changed );
+    }
+
+    private static String pathOf(final DiffEntry entry) {
+        return entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+    }
+
+    /**
+     * Reads the text of a file through the cache
+     *
+     * @return the text, or null for submodules, binary files, files above
+     *      the size cutoff and files that are not in the repository
+     */
+    private RawText text(final AbbreviatedObjectId abbreviated, final FileMode mode) {
+        if ( mode.getObjectType() != Constants.OBJ_BLOB || !abbreviated.isComplete() ) {
+            return null;
+        }
+        final ObjectId id = abbreviated.toObjectId();
+        if ( texts.containsKey( id ) ) {
+            return texts.get( id );
+        }
+        try {
+            if ( reader.getObjectSize( id, Constants.OBJ_BLOB ) > maxFileSize ) {
+                return null;
+            }
+            final byte[] content = reader.open( id, Constants.OBJ_BLOB ).getCachedBytes( maxFileSize );
+            final RawText text = RawText.isBinary( content ) ? null : new RawText( content );
+            cache( id, text, text == null ? BINARY_SIZE : content.length );
+            return text;
+        } catch (IOException e) {
+            // blobless clones don't have the contents
+            log.debug("Unable to read blob {}:", id.getName(), e);
+        }
+        return null;
+    }
+
+    private void cache(final ObjectId id, final RawText text, final int size) {
+        texts.put( id, text );
+        sizes.put( id, size );
+        cached += size;
+        final Iterator<ObjectId> eldest = texts.keySet().iterator();
+        while ( cached > CACHE_SIZE && eldest.hasNext() ) {
+            final ObjectId evicted = eldest.next();
+            eldest.remove();
+            cached -= sizes.remove( evicted );
+        }
+    }
+
+    void release() {
+        texts.clear();
+        sizes.clear();
+        treeWalk.release();
+        reader.release();
+    }
+}
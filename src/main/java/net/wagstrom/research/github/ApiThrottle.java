@@ -44,6 +44,7 @@ public class ApiThrottle {
     private final SimpleDateFormat dateFormatter = new SimpleDateFormat(DATE_FORMAT, Locale.US);
     private long internalMaxRate = -1;
     private String idstr = "";
+    private long callCount = 0;
 
     public ApiThrottle() {
         limit = -1;
@@ -87,6 +88,7 @@ public class ApiThrottle {
             }
         }
         lastCall = Calendar.getInstance();
+        callCount++;
     }
 
     public void setRateLimit(final int limit) {
@@ -116,6 +118,13 @@ public class ApiThrottle {
     }
 
 
+    /**
+     * @return the number of calls that have passed through this throttle
+     */
+    public long getCallCount() {
+        return callCount;
+    }
+
     public String getId() {
         return idstr;
     }
@@ -0,0 +1,733 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.eclipse.egit.github.core.Comment;
+import org.eclipse.egit.github.core.Contributor;
+import org.eclipse.egit.github.core.Gist;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.Issue;
+import org.eclipse.egit.github.core.IssueEvent;
+import org.eclipse.egit.github.core.PullRequest;
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.User;
+import org.eclipse.egit.github.core.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.TransactionalGraph.Conclusion;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A BlueprintsDriver that writes behind the miner.
+ *
+ * The save methods used by the miner only queue the work and return right
+ * away, so the miner only waits on the database when the queue is full. A
+ * single writer thread owns the graph: Neo4j transactions are bound to a
+ * thread, so every graph access, including the lookups the miner needs
+ * before deciding what to fetch, is handed to the writer. Lookups are queued
+ * behind everything saved before them, so they always see those writes.
+ *
+ * Writes to the same repository or user that are still waiting in the queue
+ * are coalesced: the newer one replaces the older one and moves to the tail
+ * of the queue. The writer waits for a short linger window before draining
+ * the queue to give that a chance to happen, and commits each drained group
+ * as one transaction.
+ *
+ * When a write fails, the writes queued after it for the same repository or
+ * user are dropped, so a later write that marks the entity as fully mined is
+ * never committed without the data before it. The failure is thrown to the
+ * caller of the next save, lookup or {@link #flush()}.
+ *
+ * The writer is started by the first queued operation, so the driver must
+ * be configured before anything is saved or looked up.
+ *
+ * Because the work happens later, queued save methods return null or an
+ * empty map. The objects handed to them must not be changed afterwards.
+ * {@link #shutdown()} drains the queue before closing the database, which
+ * makes the GraphShutdownHandler hook a flush guarantee as well.
+ */
+public class AsyncBlueprintsDriver extends BlueprintsDriver {
+    private static final Logger log = LoggerFactory.getLogger(AsyncBlueprintsDriver.class); // NOPMD
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final long DEFAULT_LINGER_MILLIS = 50;
+    /** the maximum number of operations in one drained group */
+    private static final int DRAIN_SIZE = 1000;
+
+    private final Object lock = new Object();
+    private final WriteQueue queue = new WriteQueue();
+    private final int queueSize;
+    private final long lingerMillis;
+    private volatile Thread writer = null;
+    private boolean busy = false;
+    private boolean stopping = false;
+    private boolean stopped = false;
+    /** the first failed write not yet reported to a caller */
+    private RuntimeException failure = null;
+
+    private long queued = 0;
+    private long coalesced = 0;
+    private long blocked = 0;
+    private long failed = 0;
+    private long dropped = 0;
+
+    /**
+     * @param dbengine The name of the engine to use, e.g. neo4j, orientdb, etc
+     * @param dburl The url of the database to use
+     * @param config additional configuration parameters to be passed to the database
+     * @param queueSize the maximum number of queued operations before callers block
+     * @param lingerMillis how long the writer waits for more work before draining
+     */
+    public AsyncBlueprintsDriver(final String dbengine, final String dburl, final Map<String, String> config,
+            final int queueSize, final long lingerMillis) {
+        super(dbengine, dburl, config);
+        this.queueSize = queueSize < 1 ? 1 : queueSize;
+        this.lingerMillis = lingerMillis < 0 ? 0 : lingerMillis;
+        commitConfiguration();
+    }
+
+    /**
+     * Creating indices may have left a transaction open on the configuring thread
+     */
+    private void commitConfiguration() {
+        if (graph instanceof TransactionalGraph) {
+            ((TransactionalGraph) graph).stopTransaction(Conclusion.SUCCESS);
+        }
+    }
+
+    /**
+     * Creates the partition index on the configuring thread, so this must
+     * be called before anything is queued
+     */
+    @Override
+    public void setEdgePartitions(final Collection<String> partitioned, final Collection<String> bucketed,
+            final long degreeCap) {
+        synchronized (lock) {
+            if (writer != null) {
+                throw new IllegalStateException("Edge partitions must be set before the graph writer starts");
+            }
+            super.setEdgePartitions(partitioned, bucketed, degreeCap);
+            commitConfiguration();
+        }
+    }
+
+    /**
+     * Starts the writer, called with the lock held
+     */
+    private void startWriter() {
+        writer = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "graph-writer");
+        // the shutdown hook drains the queue, so the writer must not keep the vm alive
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private boolean isWriterThread() {
+        return Thread.currentThread() == writer;
+    }
+
+    private static String repositoryEntity(final IRepositoryIdProvider repo) {
+        return "repository:" + repo.generateId();
+    }
+
+    private static String userEntity(final String login) {
+        return "user:" + login;
+    }
+
+    /**
+     * Throws the first failed write not yet reported, called with the lock held
+     */
+    private void reportFailure() {
+        if (failure != null) {
+            final RuntimeException e = failure;
+            failure = null;
+            throw new IllegalStateException("A queued graph write failed", e);
+        }
+    }
+
+    /**
+     * Queues an operation for the writer thread
+     *
+     * @param key operations with the same key replace each other while they
+     *   are queued, null if the operation must always run
+     * @param entity the repository or user written, null for lookups
+     * @param op the operation
+     */
+    private void enqueue(final String key, final String entity, final Runnable op) {
+        synchronized (lock) {
+            if (stopped) {
+                throw new IllegalStateException("Graph writer has been shut down");
+            }
+            reportFailure();
+            if (writer == null) {
+                startWriter();
+            }
+            if (queue.contains(key)) {
+                queue.add(key, entity, op);
+                coalesced++;
+                lock.notifyAll();
+                return;
+            }
+            if (queue.size() >= queueSize) {
+                blocked++;
+                while (queue.size() >= queueSize && !stopped) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            queue.add(key, entity, op);
+            queued++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Runs a lookup on the writer thread after everything queued before it
+     */
+    private <T> T call(final Callable<T> callable) {
+        if (isWriterThread()) {
+            try {
+                return callable.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        final FutureTask<T> task = new FutureTask<T>(callable);
+        enqueue(null, null, task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for graph writer", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            final List<WriteQueue.Operation> group;
+            synchronized (lock) {
+                while (queue.isEmpty() && !stopping) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        log.warn("Graph writer interrupted, continuing");
+                    }
+                }
+                if (queue.isEmpty()) {
+                    break;
+                }
+                if (lingerMillis > 0 && !stopping && queue.size() < DRAIN_SIZE) {
+                    try {
+                        lock.wait(lingerMillis);
+                    } catch (InterruptedException e) {
+                        log.warn("Graph writer interrupted, continuing");
+                    }
+                }
+                group = queue.drain(DRAIN_SIZE);
+                busy = true;
+                lock.notifyAll();
+            }
+            writeGroup(group);
+            synchronized (lock) {
+                busy = false;
+                lock.notifyAll();
+            }
+        }
+        AsyncBlueprintsDriver.super.shutdown();
+        log.info("Graph writer: queued: {} coalesced: {} blocked: {} failed: {} dropped: {}",
+                new Object[]{queued, coalesced, blocked, failed, dropped});
+    }
+
+    /**
+     * Writes a drained group as a single transaction
+     *
+     * A failing operation rolls back the transaction, so the operations of
+     * the group that ran before it and were not committed yet are replayed.
+     * Failed operations are dropped together with the operations after them
+     * that write to the same entity, which ends the replays after at most one
+     * per operation.
+     */
+    private void writeGroup(final List<WriteQueue.Operation> group) {
+        final boolean[] skipped = new boolean[group.size()];
+        // the position of the first failure of each entity in this group
+        final Map<String, Integer> failedAt = new HashMap<String, Integer>();
+        // the first operation whose writes have not been committed
+        int uncommitted = 0;
+        int i = 0;
+        while (i < group.size()) {
+            final String entity = group.get(i).getEntity();
+            if (!skipped[i] && entity != null && failedAt.containsKey(entity) && failedAt.get(entity) < i) {
+                skipped[i] = true;
+                dropped++;
+            }
+            if (skipped[i]) {
+                i++;
+                continue;
+            }
+            final long commitsBefore = getCommitCount();
+            final RuntimeException e = runOperation(group.get(i).getRunnable());
+            if (e == null) {
+                i++;
+                if (getCommitCount() != commitsBefore) {
+                    uncommitted = i;
+                }
+                continue;
+            }
+            failed++;
+            skipped[i] = true;
+            if (entity != null && !failedAt.containsKey(entity)) {
+                failedAt.put(entity, i);
+            }
+            synchronized (lock) {
+                if (failure == null) {
+                    failure = e;
+                }
+                if (entity != null) {
+                    dropped += queue.removeEntity(entity);
+                }
+                lock.notifyAll();
+            }
+            i = uncommitted;
+        }
+        AsyncBlueprintsDriver.super.flush();
+    }
+
+    /**
+     * @return the exception the operation failed with, null if it succeeded
+     */
+    private RuntimeException runOperation(final Runnable op) {
+        beginBatch();
+        RuntimeException error = null;
+        try {
+            op.run();
+        } catch (RuntimeException e) {
+            log.error("Queued graph write failed", e);
+            error = e;
+        } finally {
+            endBatch(error == null);
+        }
+        return error;
+    }
+
+    /**
+     * Blocks until everything queued so far has been written and committed
+     *
+     * @throws IllegalStateException if a queued write failed since the last
+     *   failure was reported
+     */
+    @Override
+    public void flush() {
+        if (isWriterThread()) {
+            super.flush();
+            return;
+        }
+        synchronized (lock) {
+            while ((!queue.isEmpty() || busy) && !stopped) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            reportFailure();
+        }
+    }
+
+    /**
+     * Drains the queue, stops the writer and closes the database
+     *
+     * Safe to call more than once, the shutdown hook calls it again after
+     * the miner has already shut down.
+     */
+    @Override
+    public void shutdown() {
+        if (isWriterThread()) {
+            log.error("Shutdown called from the graph writer, ignoring");
+            return;
+        }
+        synchronized (lock) {
+            if (stopping) {
+                return;
+            }
+            stopping = true;
+            log.info("Flushing {} queued graph writes", queue.size());
+            if (writer == null) {
+                // nothing was ever queued, the writer still closes the database
+                startWriter();
+            }
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted waiting for graph writer to finish");
+        }
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+    }
+
+    public int getQueueLength() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    @Override
+    public Vertex saveRepository(final Repository repo) {
+        if (isWriterThread()) {
+            return super.saveRepository(repo);
+        }
+        final String entity = repositoryEntity(repo);
+        enqueue(entity, entity, new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveRepository(repo);
+            }
+        });
+        return null;
+    }
+
+    @Override
+    public Map<User, Vertex> saveRepositoryCollaborators(final Repository repo, final List<User> collaborators) {
+        if (isWriterThread()) {
+            return super.saveRepositoryCollaborators(repo, collaborators);
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveRepositoryCollaborators(repo, collaborators);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Contributor, Vertex> saveRepositoryContributors(final Repository repo, final List<Contributor> contributors) {
+        if (isWriterThread()) {
+            return super.saveRepositoryContributors(repo, contributors);
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveRepositoryContributors(repo, contributors);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<User, Vertex> saveRepositoryWatchers(final Repository repo, final List<User> watchers) {
+        if (isWriterThread()) {
+            return super.saveRepositoryWatchers(repo, watchers);
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveRepositoryWatchers(repo, watchers);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Repository, Vertex> saveRepositoryForks(final Repository repo, final List<Repository> forks) {
+        if (isWriterThread()) {
+            return super.saveRepositoryForks(repo, forks);
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveRepositoryForks(repo, forks);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, Vertex> saveRepositoryIssues(final Repository repo, final Collection<Issue> issues) {
+        if (isWriterThread()) {
+            return super.saveRepositoryIssues(repo, issues);
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveRepositoryIssues(repo, issues);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void saveIssueComments(final Repository repo, final Issue issue, final Collection<Comment> issueComments) {
+        if (isWriterThread()) {
+            super.saveIssueComments(repo, issue, issueComments);
+            return;
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveIssueComments(repo, issue, issueComments);
+            }
+        });
+    }
+
+    @Override
+    public void saveIssueEvents(final Repository repo, final Issue issue, final Collection<IssueEvent> issueEvents) {
+        if (isWriterThread()) {
+            super.saveIssueEvents(repo, issue, issueEvents);
+            return;
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveIssueEvents(repo, issue, issueEvents);
+            }
+        });
+    }
+
+    @Override
+    public void savePullRequests(final Repository repo, final Collection<PullRequest> requests3) {
+        if (isWriterThread()) {
+            super.savePullRequests(repo, requests3);
+            return;
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.savePullRequests(repo, requests3);
+            }
+        });
+    }
+
+    @Override
+    public Vertex savePullRequest(final Repository repo, final Vertex repoVertex,
+            final PullRequest request, final boolean full) {
+        if (isWriterThread()) {
+            return super.savePullRequest(repo, repoVertex, request, full);
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.savePullRequest(repo, repoVertex, request, full);
+            }
+        });
+        return null;
+    }
+
+    @Override
+    public void savePullRequestComments(final Repository repo, final PullRequest pullRequest,
+            final List<Comment> comments) {
+        if (isWriterThread()) {
+            super.savePullRequestComments(repo, pullRequest, comments);
+            return;
+        }
+        enqueue(null, repositoryEntity(repo), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.savePullRequestComments(repo, pullRequest, comments);
+            }
+        });
+    }
+
+    @Override
+    public Vertex saveUser(final User user, final boolean overwrite) {
+        if (isWriterThread()) {
+            return super.saveUser(user, overwrite);
+        }
+        final String entity = userEntity(user.getLogin());
+        enqueue(entity + ":" + overwrite, entity, new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveUser(user, overwrite);
+            }
+        });
+        return null;
+    }
+
+    @Override
+    public Vertex saveUser(final User user) {
+        return saveUser(user, false);
+    }
+
+    @Override
+    public void saveOrganizationPublicMembers(final User organization, final Collection<User> members) {
+        if (isWriterThread()) {
+            super.saveOrganizationPublicMembers(organization, members);
+            return;
+        }
+        enqueue(null, userEntity(organization.getLogin()), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveOrganizationPublicMembers(organization, members);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Vertex> saveOrganizationPublicRepositories(final String organization,
+            final List<Repository> repositories) {
+        if (isWriterThread()) {
+            return super.saveOrganizationPublicRepositories(organization, repositories);
+        }
+        enqueue(null, userEntity(organization), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveOrganizationPublicRepositories(organization, repositories);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<User, Vertex> saveUserFollowers(final String user, final List<User> followers) {
+        if (isWriterThread()) {
+            return super.saveUserFollowers(user, followers);
+        }
+        enqueue(null, userEntity(user), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveUserFollowers(user, followers);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<User, Vertex> saveUserFollowing(final String sourceuser, final List<User> users) {
+        if (isWriterThread()) {
+            return super.saveUserFollowing(sourceuser, users);
+        }
+        enqueue(null, userEntity(sourceuser), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveUserFollowing(sourceuser, users);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Gist, Vertex> saveUserGists(final String user, final List<Gist> gists) {
+        if (isWriterThread()) {
+            return super.saveUserGists(user, gists);
+        }
+        enqueue(null, userEntity(user), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveUserGists(user, gists);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Repository, Vertex> saveUserRepositories(final String user, final List<Repository> repos) {
+        if (isWriterThread()) {
+            return super.saveUserRepositories(user, repos);
+        }
+        enqueue(null, userEntity(user), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveUserRepositories(user, repos);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Repository, Vertex> saveUserWatchedRepositories(final String user,
+            final List<Repository> watchedRepos) {
+        if (isWriterThread()) {
+            return super.saveUserWatchedRepositories(user, watchedRepos);
+        }
+        enqueue(null, userEntity(user), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveUserWatchedRepositories(user, watchedRepos);
+            }
+        });
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void saveUserEvents(final String username, final List<Event> events) {
+        if (isWriterThread()) {
+            super.saveUserEvents(username, events);
+            return;
+        }
+        enqueue(null, userEntity(username), new Runnable() {
+            public void run() {
+                AsyncBlueprintsDriver.super.saveUserEvents(username, events);
+            }
+        });
+    }
+
+    @Override
+    public Map<Integer, Date> getIssueCommentsAddedAt(final String reponame) {
+        return call(new Callable<Map<Integer, Date>>() {
+            public Map<Integer, Date> call() {
+                return AsyncBlueprintsDriver.super.getIssueCommentsAddedAt(reponame);
+            }
+        });
+    }
+
+    @Override
+    public Map<Integer, Date> getIssueEventsAddedAt(final IRepositoryIdProvider repo) {
+        return call(new Callable<Map<Integer, Date>>() {
+            public Map<Integer, Date> call() {
+                return AsyncBlueprintsDriver.super.getIssueEventsAddedAt(repo);
+            }
+        });
+    }
+
+    @Override
+    public Map<Integer, Date> getPullRequestDiscussionsAddedAt(final String reponame) {
+        return call(new Callable<Map<Integer, Date>>() {
+            public Map<Integer, Date> call() {
+                return AsyncBlueprintsDriver.super.getPullRequestDiscussionsAddedAt(reponame);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Date> getProjectUsersLastUpdateHelper(final String reponame,
+            final String keyProperty, final String valueProperty) {
+        return call(new Callable<Map<String, Date>>() {
+            public Map<String, Date> call() {
+                return AsyncBlueprintsDriver.super.getProjectUsersLastUpdateHelper(reponame, keyProperty, valueProperty);
+            }
+        });
+    }
+
+    @Override
+    public Date getRepositoryLastUpdated(final String reponame) {
+        return call(new Callable<Date>() {
+            public Date call() {
+                return AsyncBlueprintsDriver.super.getRepositoryLastUpdated(reponame);
+            }
+        });
+    }
+}
@@ -16,15 +16,23 @@
 
 package net.wagstrom.research.github;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+import net.wagstrom.research.github.algorithms.SupernodeAdjacency;
 import net.wagstrom.research.github.algorithms.Traversals;
 
 import org.eclipse.egit.github.core.Comment;
@@ -71,10 +79,14 @@ import org.slf4j.LoggerFactory;
 
 import com.ibm.research.govsci.graph.BlueprintsBase;
 import com.ibm.research.govsci.graph.Shutdownable;
+import com.tinkerpop.blueprints.CloseableIterable;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Index;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.TransactionalGraph.Conclusion;
 import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4jbatch.Neo4jBatchGraph;
 import com.tinkerpop.gremlin.java.GremlinPipeline;
 
 /**
@@ -111,6 +123,92 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
     protected final Index <Vertex> gollumidx;
     protected final Index <Vertex> downloadidx;
     protected final Traversals traversals;
+    protected final EdgeExistenceIndex edgeIndex;
+    private EdgePartitions edgePartitions = null;
+    private SupernodeAdjacency adjacency;
+
+    /** default number of write operations per transaction */
+    public static final int DEFAULT_COMMIT_SIZE = 1000;
+    private int commitSize = DEFAULT_COMMIT_SIZE;
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong rollbacks = new AtomicLong();
+
+    /**
+     * The state of the transaction of one thread
+     *
+     * Neo4j binds a transaction to the thread that started it, so batches,
+     * pending operations and everything loaded for the transaction are
+     * kept per thread as well.
+     */
+    private static final class TransactionState {
+        private int batchDepth = 0;
+        private boolean rollbackOnly = false;
+        private long pendingOperations = 0;
+        private final List<ReentrantLock> locks = new ArrayList<ReentrantLock>();
+        private final Map<String, SyncState> syncStates = new HashMap<String, SyncState>();
+        private final Map<Object, RepositoryMembers> repositoryMembers = new HashMap<Object, RepositoryMembers>();
+        private Object scannedRepository = null;
+        private long scannedVersion = 0;
+        private int scannedModifications = 0;
+        private List<Vertex> scannedUsers = null;
+        private final EdgePartitions.Changes edgeChanges = new EdgePartitions.Changes();
+    }
+
+    private final ThreadLocal<TransactionState> transactions = new ThreadLocal<TransactionState>() {
+        @Override
+        protected TransactionState initialValue() {
+            return new TransactionState();
+        }
+    };
+    /** number of locks guarding repository state and degrees */
+    public static final int LOCK_STRIPES = 4096;
+    /** how long to wait for a key locked by another transaction */
+    public static final long LOCK_TIMEOUT_SECONDS = 60;
+    /**
+     * number of locks guarding vertex and edge keys, a transaction holds
+     * one for every key it creates so these are spread more thinly
+     */
+    public static final int IDENTITY_LOCK_STRIPES = 65536;
+    private static final String SYNC_LOCK = "sync";
+    private final StripedLock locks = new StripedLock(LOCK_STRIPES);
+    /**
+     * Vertices and edges have separate locks so a vertex key never waits
+     * for an edge key that shares its stripe.
+     */
+    private final StripedLock vertexLocks = new StripedLock(IDENTITY_LOCK_STRIPES);
+    private final StripedLock edgeLocks = new StripedLock(IDENTITY_LOCK_STRIPES);
+    private static final String DEGREE_LOCK = "degree";
+    /**
+     * Degrees are only locked while committing. They get their own locks
+     * so a commit never waits for a key held by another transaction.
+     */
+    private final StripedLock degreeLocks = new StripedLock(LOCK_STRIPES);
+    private Thread initialLoadThread = null;
+
+    /** engine name for the normal transactional neo4j store */
+    public static final String NEO4J_ENGINE = "neo4j";
+    /** engine name for the non-transactional neo4j batch inserter */
+    public static final String INITIAL_LOAD_ENGINE = "neo4jbatch";
+    private InitialLoadCache initialLoad = null;
+    /** default number of edges an initial load is sized for */
+    public static final long DEFAULT_INITIAL_LOAD_EDGES = 16000000;
+    /** default number of identity keys cached for each index */
+    public static final int DEFAULT_IDENTITY_CACHE_SIZE = 100000;
+    private IdentityCache identityCache = new IdentityCache(DEFAULT_IDENTITY_CACHE_SIZE);
+    private final Map<String, long[]> propertyWrites = new TreeMap<String, long[]>();
+    /** default length from which texts are moved to the text store */
+    public static final int DEFAULT_TEXT_STORE_MIN_LENGTH = 256;
+    private static final Map<String, String> TEXT_HASH_PROPERTIES = new HashMap<String, String>();
+    static {
+        TEXT_HASH_PROPERTIES.put(PropertyName.BODY, PropertyName.BODY_HASH);
+        TEXT_HASH_PROPERTIES.put(PropertyName.BODY_HTML, PropertyName.BODY_HTML_HASH);
+        TEXT_HASH_PROPERTIES.put(PropertyName.BODY_TEXT, PropertyName.BODY_TEXT_HASH);
+    }
+    private TextStore textStore = null;
+    private int textStoreMinLength = DEFAULT_TEXT_STORE_MIN_LENGTH;
+    private Set<String> textProperties = new HashSet<String>(TEXT_HASH_PROPERTIES.keySet());
+    private static final String[] ISSUE_SYNC_FIELDS = {PropertyName.SYS_COMMENTS_ADDED, PropertyName.SYS_EVENTS_ADDED};
+    private static final String[] PULLREQUEST_SYNC_FIELDS = {PropertyName.SYS_DISCUSSIONS_ADDED};
     /**
      * Base constructor for BlueprintsDriver
      * 
@@ -147,6 +245,729 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         gollumidx = getOrCreateIndex(IndexNames.GOLLUM);
         downloadidx = getOrCreateIndex(IndexNames.DOWNLOAD);
         traversals = new Traversals(this);
+
+        if (graph instanceof Neo4jBatchGraph) {
+            try {
+                initialLoad = new InitialLoadCache((Neo4jBatchGraph) graph, DEFAULT_INITIAL_LOAD_EDGES);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to create edge file for initial load", e);
+            }
+            log.info("Initial load mode: writing through the neo4j batch inserter");
+            edgeIndex = null;
+        } else {
+            edgeIndex = new EdgeExistenceIndex(graph);
+        }
+        adjacency = new SupernodeAdjacency(edgePartitions, SupernodeAdjacency.DEFAULT_DEGREE_CAP);
+    }
+
+    /**
+     * Sets which edges are partitioned for supernodes
+     *
+     * Nothing is partitioned unless this is called. Degrees are only
+     * counted for the labels given here. The edges of partitioned labels
+     * are indexed by vertex and label, and those of bucketed labels also by
+     * month. Traversals only read them through the index once a vertex has
+     * at least degreeCap edges of a label. Partitions are not kept during
+     * an initial load.
+     *
+     * @param partitioned labels to partition by vertex and label
+     * @param bucketed labels to partition by month as well
+     * @param degreeCap the degree from which a vertex is read through the index
+     */
+    public void setEdgePartitions(final Collection<String> partitioned, final Collection<String> bucketed,
+            final long degreeCap) {
+        if (initialLoad == null) {
+            edgePartitions = partitioned.isEmpty() && bucketed.isEmpty()
+                    ? null : new EdgePartitions(graph, partitioned, bucketed);
+        }
+        adjacency = new SupernodeAdjacency(edgePartitions, degreeCap);
+    }
+
+    /**
+     * @return the edge partitions, null if none are configured or during an initial load
+     */
+    public EdgePartitions getEdgePartitions() {
+        return edgePartitions;
+    }
+
+    public SupernodeAdjacency getAdjacency() {
+        return adjacency;
+    }
+
+    /**
+     * Sets the number of write operations to group into a single transaction
+     *
+     * Transactions are only ever committed between batches, so a single
+     * entity is never split across transactions. A value of 1 commits after
+     * every entity.
+     *
+     * @param commitSize the number of vertex and edge operations per transaction
+     */
+    public void setCommitSize(final int commitSize) {
+        this.commitSize = commitSize < 1 ? 1 : commitSize;
+    }
+
+    public int getCommitSize() {
+        return commitSize;
+    }
+
+    /**
+     * Starts a batch of writes that must be committed or rolled back together
+     *
+     * Batches may be nested, only the outermost batch decides when the
+     * transaction is committed. Every call to beginBatch must be matched
+     * by a call to {@link #commitBatch()}, {@link #rollbackBatch()} or
+     * {@link #endBatch(boolean)}.
+     */
+    public void beginBatch() {
+        transactions.get().batchDepth++;
+    }
+
+    /**
+     * Ends the current batch
+     *
+     * When the outermost batch ends the transaction is committed once at
+     * least commitSize operations are pending. If a nested batch was
+     * rolled back the outermost batch is rolled back instead.
+     */
+    public void commitBatch() {
+        final TransactionState tx = transactions.get();
+        if (tx.batchDepth == 0) {
+            log.warn("commitBatch called without a matching beginBatch");
+            return;
+        }
+        if (--tx.batchDepth == 0) {
+            if (tx.rollbackOnly) {
+                rollback();
+            } else if (tx.pendingOperations >= commitSize) {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Ends the current batch and throws away everything since the last commit
+     *
+     * Because batches are grouped into transactions this also discards
+     * earlier batches that have not been committed yet. The miners write
+     * their SYS_* timestamps in the same transactions, so they mine the
+     * discarded data again on the next run. Other callers, such as the
+     * crawlers, don't and must {@link #flush()} before a batch whose
+     * failure should not take earlier work with it.
+     */
+    public void rollbackBatch() {
+        final TransactionState tx = transactions.get();
+        if (tx.batchDepth == 0) {
+            log.warn("rollbackBatch called without a matching beginBatch");
+            return;
+        }
+        if (--tx.batchDepth == 0) {
+            rollback();
+        } else {
+            tx.rollbackOnly = true;
+        }
+    }
+
+    /**
+     * Ends the current batch, committing it on success and rolling it back otherwise
+     *
+     * This is intended to be called from a finally block.
+     *
+     * @param success whether or not the work in the batch completed
+     */
+    public void endBatch(final boolean success) {
+        if (success) {
+            commitBatch();
+        } else {
+            rollbackBatch();
+        }
+    }
+
+    /**
+     * Commits any pending operations of the current thread that are not
+     * part of an open batch
+     */
+    public void flush() {
+        final TransactionState tx = transactions.get();
+        if (tx.batchDepth > 0) {
+            log.warn("Unable to flush inside of a batch, depth: {}", tx.batchDepth);
+            return;
+        }
+        if (tx.pendingOperations > 0 || hasDirtyRepositoryState(tx)) {
+            commit();
+        }
+    }
+
+    /**
+     * Counts a write operation and commits if it is not part of a batch
+     * and the transaction has grown large enough.
+     */
+    protected void countOperation() {
+        final TransactionState tx = transactions.get();
+        tx.pendingOperations++;
+        if (tx.batchDepth == 0 && tx.pendingOperations >= commitSize) {
+            commit();
+        }
+    }
+
+    /**
+     * Commits the transaction of the current thread
+     *
+     * If anything fails the transaction is rolled back instead, so its
+     * locks are always released.
+     */
+    private void commit() {
+        final TransactionState tx = transactions.get();
+        boolean committed = false;
+        try {
+            storeRepositoryStates(tx);
+            finishTransaction(tx);
+            committed = true;
+        } finally {
+            if (!committed) {
+                rollback();
+            }
+        }
+        if (identityCache != null) {
+            identityCache.commit();
+        }
+        log.trace("Committed transaction with {} operations", tx.pendingOperations);
+        tx.pendingOperations = 0;
+        releaseLocks(tx);
+        commits.incrementAndGet();
+    }
+
+    /**
+     * Writes the degrees changed by the transaction and commits it
+     */
+    private void finishTransaction(final TransactionState tx) {
+        final List<ReentrantLock> degreesLocked = lockDegrees(tx);
+        try {
+            if (edgePartitions != null && !tx.edgeChanges.isEmpty()) {
+                edgePartitions.apply(tx.edgeChanges, graph);
+            }
+            if (graph instanceof TransactionalGraph) {
+                ((TransactionalGraph) graph).stopTransaction(Conclusion.SUCCESS);
+            }
+        } finally {
+            for (ReentrantLock lock : degreesLocked) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void rollback() {
+        final TransactionState tx = transactions.get();
+        log.warn("Rolling back transaction with {} operations", tx.pendingOperations);
+        try {
+            if (graph instanceof TransactionalGraph) {
+                ((TransactionalGraph) graph).stopTransaction(Conclusion.FAILURE);
+            }
+        } finally {
+            if (identityCache != null) {
+                identityCache.rollback();
+            }
+            tx.pendingOperations = 0;
+            tx.rollbackOnly = false;
+            tx.syncStates.clear();
+            tx.repositoryMembers.clear();
+            tx.scannedUsers = null;
+            tx.edgeChanges.clear();
+            releaseLocks(tx);
+            rollbacks.incrementAndGet();
+        }
+        onRollback();
+    }
+
+    /**
+     * Locks the state of a repository for the rest of the current transaction
+     *
+     * The sync state and members of a repository are read once, changed in
+     * memory and written back when the transaction commits. The lock keeps
+     * other transactions from changing them in between.
+     *
+     * @return true if the lock was taken by this call, false if the
+     *      transaction already held it
+     * @see #lockKey(StripedLock, String, Object)
+     */
+    protected boolean lockKey(final String index, final Object key) {
+        return lockKey(locks, index, key);
+    }
+
+    /**
+     * Locks a key for the rest of the current transaction
+     *
+     * A vertex or edge created by a transaction can't be seen by other
+     * threads until it commits. Whoever looks up a key therefore holds its
+     * lock from the lookup until the transaction ends if it creates the
+     * key, and anyone else looking for the key waits and then finds the
+     * committed vertex or edge instead of creating a duplicate.
+     *
+     * Keys are taken in the order they are used, so two transactions may
+     * wait on each other. Waiting gives up after {@link #LOCK_TIMEOUT_SECONDS}
+     * with an exception that rolls back the batch, which releases every lock
+     * the transaction holds and lets the other one go on.
+     *
+     * @return true if the lock was taken by this call, false if the
+     *      transaction already held it
+     */
+    private boolean lockKey(final StripedLock stripes, final String index, final Object key) {
+        final ReentrantLock lock = stripes.get(index, key);
+        if (lock.isHeldByCurrentThread()) {
+            return false;
+        }
+        try {
+            if (!lock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for a lock on " + index + " " + key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a lock on " + index + " " + key, e);
+        }
+        transactions.get().locks.add(lock);
+        return true;
+    }
+
+    /**
+     * Gives up a lock taken by {@link #lockKey} before the transaction ends
+     *
+     * Only safe if the transaction did not create anything for the key.
+     */
+    protected void unlockKey(final String index, final Object key) {
+        unlockKey(locks, index, key);
+    }
+
+    private void unlockKey(final StripedLock stripes, final String index, final Object key) {
+        final ReentrantLock lock = stripes.get(index, key);
+        if (transactions.get().locks.remove(lock)) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Locks the degrees of every vertex that got new edges in the transaction
+     *
+     * The locks are taken in a fixed order and only ever while committing,
+     * so waiting for them can't deadlock.
+     */
+    private List<ReentrantLock> lockDegrees(final TransactionState tx) {
+        final List<ReentrantLock> held = new ArrayList<ReentrantLock>();
+        if (tx.edgeChanges.isEmpty()) {
+            return held;
+        }
+        for (ReentrantLock lock : degreeLocks.getAll(DEGREE_LOCK, tx.edgeChanges.getVertexIds())) {
+            boolean acquired = false;
+            try {
+                acquired = lock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!acquired) {
+                for (ReentrantLock h : held) {
+                    h.unlock();
+                }
+                throw new IllegalStateException("Unable to lock the degrees of "
+                        + tx.edgeChanges.getVertexIds().size() + " vertices for commit");
+            }
+            held.add(lock);
+        }
+        return held;
+    }
+
+    private void releaseLocks(final TransactionState tx) {
+        for (ReentrantLock lock : tx.locks) {
+            lock.unlock();
+        }
+        tx.locks.clear();
+    }
+
+    /**
+     * The batch inserter is not thread safe, so an initial load must be
+     * done by a single thread
+     */
+    private void checkInitialLoadThread() {
+        if (initialLoadThread == null) {
+            initialLoadThread = Thread.currentThread();
+        } else if (initialLoadThread != Thread.currentThread()) {
+            throw new IllegalStateException("An initial load must be written by a single thread");
+        }
+    }
+
+    /**
+     * Called after a transaction has been rolled back
+     *
+     * Subclasses that keep any state about the graph in memory must
+     * discard it here.
+     */
+    protected void onRollback() {
+        // nothing is cached by default
+    }
+
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    public long getRollbackCount() {
+        return rollbacks.get();
+    }
+
+    /**
+     * Sets a property, but only if the value differs from what is stored
+     *
+     * Most refreshes write back exactly the values that are already in the
+     * database. Each of those writes still dirties a record and grows the
+     * transaction log, so values are compared first. Dates are stored as
+     * seconds since the epoch and numbers are compared by value, so an
+     * Integer and a Long with the same value are considered equal.
+     *
+     * Null values are never written.
+     *
+     * @param elem the vertex or edge to update
+     * @param property the name of the property
+     * @param value the new value
+     * @return true if the property was written
+     */
+    protected boolean setPropertyIfChanged(final Element elem, final String property, final Object value) {
+        if (elem == null || value == null) {
+            return false;
+        }
+        final Object normalized = normalizePropertyValue(value);
+        if (initialLoad == null && samePropertyValue(elem.getProperty(property), normalized)) {
+            countPropertyWrite(elem, false);
+            return false;
+        }
+        elem.setProperty(property, normalized);
+        countPropertyWrite(elem, true);
+        return true;
+    }
+
+    protected boolean setPropertyIfChanged(final Element elem, final String property, final Date value) {
+        return setPropertyIfChanged(elem, property, (Object) value);
+    }
+
+    private static Object normalizePropertyValue(final Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime() / 1000L;
+        }
+        if (value instanceof String || value instanceof Number || value instanceof Boolean
+                || value.getClass().isArray()) {
+            return value;
+        }
+        return value.toString();
+    }
+
+    private static boolean samePropertyValue(final Object stored, final Object value) {
+        if (stored == null) {
+            return false;
+        }
+        if (stored instanceof Number && value instanceof Number) {
+            if (stored instanceof Double || stored instanceof Float
+                    || value instanceof Double || value instanceof Float) {
+                return ((Number) stored).doubleValue() == ((Number) value).doubleValue();
+            }
+            return ((Number) stored).longValue() == ((Number) value).longValue();
+        }
+        if (stored.getClass().isArray() || value.getClass().isArray()) {
+            return false;
+        }
+        return stored.equals(value);
+    }
+
+    private void countPropertyWrite(final Element elem, final boolean changed) {
+        Object type = elem instanceof Edge ? ((Edge) elem).getLabel() : elem.getProperty(PropertyName.TYPE);
+        String key = type == null ? "unknown" : type.toString();
+        synchronized (propertyWrites) {
+            long[] counts = propertyWrites.get(key);
+            if (counts == null) {
+                counts = new long[2];
+                propertyWrites.put(key, counts);
+            }
+            counts[changed ? 0 : 1]++;
+        }
+    }
+
+    /**
+     * @return for each vertex type or edge label the number of property writes
+     *      that changed a value and the number that were skipped
+     */
+    public Map<String, long[]> getPropertyWriteCounts() {
+        synchronized (propertyWrites) {
+            return new TreeMap<String, long[]>(propertyWrites);
+        }
+    }
+
+    @Override
+    public Vertex getOrCreateVertexHelper(final String idcol, final Object idval,
+            final String vertexType, final Index<Vertex> index) {
+        Vertex node;
+        if (initialLoad != null) {
+            checkInitialLoadThread();
+            node = initialLoad.getVertex(idcol, idval, index);
+            if (node != null) {
+                return node;
+            }
+            node = super.getOrCreateVertexHelper(idcol, idval, vertexType, index);
+            initialLoad.putVertex(idval, index, node);
+            countOperation();
+            return node;
+        }
+        final String indexName = index.getIndexName();
+        if (identityCache != null) {
+            final Object id = identityCache.get(indexName, idval);
+            if (id != null) {
+                node = graph.getVertex(id);
+                if (node != null) {
+                    return node;
+                }
+                identityCache.remove(indexName, idval);
+            }
+        }
+        // hold the key from the lookup so two threads can't both create it
+        final boolean locked = lockKey(vertexLocks, indexName, idval);
+        node = findVertex(index, idcol, idval);
+        if (node != null) {
+            if (locked) {
+                unlockKey(vertexLocks, indexName, idval);
+            }
+        } else {
+            node = super.getOrCreateVertexHelper(idcol, idval, vertexType, index);
+        }
+        if (identityCache != null) {
+            identityCache.put(indexName, idval, node.getId());
+        }
+        countOperation();
+        return node;
+    }
+
+    /**
+     * Sets the number of identity keys cached for each index
+     *
+     * The cache maps keys such as logins and commit hashes to vertex ids so
+     * repeated lookups can skip the index. Changing the size clears the
+     * cache.
+     *
+     * @param size entries per index, 0 turns the cache off
+     */
+    public void setIdentityCacheSize(final int size) {
+        identityCache = size > 0 ? new IdentityCache(size) : null;
+    }
+
+    /**
+     * @return the identity cache, or null if it is turned off
+     */
+    public IdentityCache getIdentityCache() {
+        return identityCache;
+    }
+
+    /**
+     * Moves large texts, such as the bodies of issues and comments, out of
+     * the database and into a text store
+     *
+     * Texts of at least minLength characters are written to the store and
+     * only their hash is kept on the vertex, under the name of the property
+     * with Hash appended. Shorter texts stay on the vertex.
+     *
+     * @param store the store to use, null keeps all texts on the vertices
+     * @param minLength the length from which texts are moved to the store
+     */
+    public void setTextStore(final TextStore store, final int minLength) {
+        textStore = store;
+        textStoreMinLength = minLength;
+    }
+
+    public TextStore getTextStore() {
+        return textStore;
+    }
+
+    /**
+     * Chooses which representations of a body are saved
+     *
+     * GitHub returns the same text as markdown, html and plain text. By
+     * default all of them are saved.
+     *
+     * @param properties any of {@link PropertyName#BODY},
+     *      {@link PropertyName#BODY_HTML} and {@link PropertyName#BODY_TEXT}
+     */
+    public void setTextProperties(final Collection<String> properties) {
+        textProperties = new HashSet<String>(properties);
+    }
+
+    /**
+     * Sets a body, either directly on the element or through the text store
+     *
+     * Whichever of the two is not used is removed, so an element never
+     * carries both a stale text and a hash.
+     *
+     * @return true if the element was changed
+     */
+    protected boolean setTextPropertyIfChanged(final Element elem, final String property, final String value) {
+        if (elem == null || value == null || !textProperties.contains(property)) {
+            return false;
+        }
+        final String hashProperty = TEXT_HASH_PROPERTIES.get(property);
+        final boolean offload = textStore != null && hashProperty != null
+                && value.length() >= textStoreMinLength;
+        final String stale = offload ? property : hashProperty;
+        boolean changed = false;
+        if (stale != null && elem.getProperty(stale) != null) {
+            elem.removeProperty(stale);
+            changed = true;
+        }
+        if (offload) {
+            return setPropertyIfChanged(elem, hashProperty, textStore.put(value)) || changed;
+        }
+        return setPropertyIfChanged(elem, property, value) || changed;
+    }
+
+    /**
+     * Loads a body saved with {@link #setTextPropertyIfChanged}
+     *
+     * @return the text, or null if the element has no such text
+     */
+    public String getText(final Element elem, final String property) {
+        final Object value = elem.getProperty(property);
+        if (value != null) {
+            return value.toString();
+        }
+        final String hashProperty = TEXT_HASH_PROPERTIES.get(property);
+        final Object hash = hashProperty == null ? null : elem.getProperty(hashProperty);
+        if (hash == null) {
+            return null;
+        }
+        if (textStore == null) {
+            log.warn("{} of {} is in the text store, but no text store is configured", property, elem);
+            return null;
+        }
+        return textStore.get(hash.toString());
+    }
+
+    /**
+     * Creates an edge between two vertices if it does not already exist
+     *
+     * Existing edges are found through the {@link EdgeExistenceIndex} rather
+     * than by walking the edges of the out vertex, so this takes the same
+     * time no matter how many edges the vertex has.
+     *
+     * During an initial load the existing edge can't be fetched from the
+     * batch inserter, so null is returned when the edge already exists.
+     */
+    @Override
+    public Edge createEdgeIfNotExist(final Vertex outVertex, final Vertex inVertex,
+            final String edgeType) {
+        return createEdgeIfNotExist(null, outVertex, inVertex, edgeType);
+    }
+
+    @Override
+    public Edge createEdgeIfNotExist(final String id, final Vertex outVertex,
+            final Vertex inVertex, final String edgeType) {
+        if (initialLoad != null) {
+            checkInitialLoadThread();
+            if (!initialLoad.addEdge(outVertex, inVertex, edgeType)) {
+                return null;
+            }
+            return addEdge(null, outVertex, inVertex, edgeType);
+        }
+        final String key = EdgeExistenceIndex.key(outVertex.getId(), edgeType, inVertex.getId());
+        final boolean locked = lockKey(edgeLocks, IndexNames.EDGE, key);
+        Edge edge = edgeIndex.get(outVertex, inVertex, edgeType);
+        if (edge == null) {
+            edge = addEdge(id, outVertex, inVertex, edgeType);
+            edgeIndex.put(edge);
+        } else if (locked) {
+            unlockKey(edgeLocks, IndexNames.EDGE, key);
+        }
+        return edge;
+    }
+
+    private Edge addEdge(final Object id, final Vertex outVertex, final Vertex inVertex,
+            final String edgeType) {
+        final Edge edge = graph.addEdge(id, outVertex, inVertex, edgeType);
+        edge.setProperty(PropertyName.SYS_CREATED_AT, (int) (new Date().getTime() / 1000L));
+        if (edgePartitions != null) {
+            edgePartitions.added(transactions.get().edgeChanges, edge);
+        }
+        countOperation();
+        return edge;
+    }
+
+    /**
+     * Sizes the table that finds duplicate edges during an initial load
+     *
+     * The table takes 16 bytes for every 0.75 edges on disk. A load with
+     * more edges than expected adds more tables as it goes, so this only
+     * has to be about right. It must be called before anything is saved.
+     *
+     * @param expectedEdges the number of edges the load is expected to create
+     */
+    public void setInitialLoadEdges(final long expectedEdges) {
+        if (initialLoad != null) {
+            try {
+                initialLoad.setExpectedEdges(expectedEdges);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to create edge file for initial load", e);
+            }
+        }
+    }
+
+    /**
+     * @return true if this driver is writing through the batch inserter
+     */
+    public boolean isInitialLoad() {
+        return initialLoad != null;
+    }
+
+    /**
+     * Picks the database engine for a run
+     *
+     * When an initial load is requested and the neo4j store does not exist
+     * yet the non-transactional batch inserter is used. Once the store
+     * exists every later run goes back to the transactional engine.
+     *
+     * @param dbengine the configured engine
+     * @param dburl the location of the database
+     * @param initialLoad whether or not an initial load was requested
+     * @return the engine to pass to the constructor
+     */
+    public static String selectEngine(final String dbengine, final String dburl, final boolean initialLoad) {
+        if (initialLoad && NEO4J_ENGINE.equals(dbengine) && !new File(dburl, "neostore").exists()) {
+            log.info("No database found at {}, using batch inserter for initial load", dburl);
+            return INITIAL_LOAD_ENGINE;
+        }
+        return dbengine;
+    }
+
+    @Override
+    public void shutdown() {
+        final TransactionState tx = transactions.get();
+        if (tx.batchDepth > 0) {
+            log.warn("Shutting down with {} open batches, rolling back", tx.batchDepth);
+            tx.batchDepth = 0;
+            rollback();
+        } else {
+            flush();
+        }
+        if (initialLoad != null) {
+            initialLoad.finish();
+            initialLoad = null;
+        }
+        log.info("Transactions committed: {} rolled back: {}", commits.get(), rollbacks.get());
+        if (identityCache != null) {
+            identityCache.logStatistics();
+        }
+        if (edgeIndex != null) {
+            edgeIndex.logStatistics();
+        }
+        if (edgePartitions != null) {
+            edgePartitions.logStatistics();
+        }
+        if (textStore != null) {
+            textStore.logStatistics();
+        }
+        for (Map.Entry<String, long[]> entry : getPropertyWriteCounts().entrySet()) {
+            log.info("Property writes for {}: changed: {} unchanged: {}",
+                    new Object[]{entry.getKey(), entry.getValue()[0], entry.getValue()[1]});
+        }
+        super.shutdown();
     }
 
     /**
@@ -164,9 +985,13 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
      * @return the updated map
      */
     @SuppressWarnings("unchecked")
-    private <T, I extends Element> Map<T, Date> addValuesFromIterable(
+    protected <T, I extends Element> Map<T, Date> addValuesFromIterable(
             final Iterable<I> iterable, final Map<T, Date> map,
             final String idkey, final String datekey) {
+        if (initialLoad != null) {
+            // the batch inserter can't traverse, everything is new anyway
+            return map;
+        }
         for (I vertex : iterable) {
             final Set<String> keys = vertex.getPropertyKeys();
             try {
@@ -188,6 +1013,232 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         return map;
     }
 
+    /**
+     * Gets the sync state for the issues or pull requests of a repository
+     *
+     * States are kept in memory once loaded and written back to the
+     * repository vertex when the transaction is committed. The state stays
+     * locked until then, so transactions on other threads can't update the
+     * same arrays at the same time. Repositories mined before the sync
+     * state existed are migrated with a single walk over their issues or
+     * pull requests.
+     *
+     * @param repo the repository vertex
+     * @param edgetype {@link EdgeType#ISSUE} or {@link EdgeType#PULLREQUEST}
+     */
+    protected SyncState getSyncState(final Vertex repo, final String edgetype) {
+        final TransactionState tx = transactions.get();
+        final String key = edgetype + ":" + repo.getId();
+        if (lockKey(SYNC_LOCK, key)) {
+            // another transaction may have changed it since it was cached
+            tx.syncStates.remove(key);
+        }
+        SyncState state = tx.syncStates.get(key);
+        if (state == null) {
+            state = new SyncState(repo.getId(), edgetype,
+                    edgetype.equals(EdgeType.ISSUE) ? ISSUE_SYNC_FIELDS : PULLREQUEST_SYNC_FIELDS);
+            if (!state.load(repo) && initialLoad == null) {
+                migrateSyncState(repo, edgetype, state);
+            }
+            tx.syncStates.put(key, state);
+        }
+        return state;
+    }
+
+    /**
+     * Reads one timestamp of a sync state without keeping it locked
+     */
+    private Map<Integer, Date> getSyncDates(final Vertex repo, final String edgetype, final String field) {
+        final String key = edgetype + ":" + repo.getId();
+        final boolean held = locks.get(SYNC_LOCK, key).isHeldByCurrentThread();
+        final SyncState state = getSyncState(repo, edgetype);
+        final Map<Integer, Date> map = state.toMap(field);
+        if (!held && !state.isDirty()) {
+            unlockKey(SYNC_LOCK, key);
+            transactions.get().syncStates.remove(key);
+        }
+        return map;
+    }
+
+    private void migrateSyncState(final Vertex repo, final String edgetype, final SyncState state) {
+        final GremlinPipeline<Vertex, Vertex> pipe = new GremlinPipeline<Vertex, Vertex>();
+        pipe.start(repo).out(edgetype);
+        for (Vertex vertex : pipe) {
+            final Object number = vertex.getProperty(PropertyName.NUMBER);
+            if (!(number instanceof Number)) {
+                log.warn("Node found with no number: {}", vertex);
+                continue;
+            }
+            state.add(((Number) number).intValue());
+            for (String field : edgetype.equals(EdgeType.ISSUE) ? ISSUE_SYNC_FIELDS : PULLREQUEST_SYNC_FIELDS) {
+                final Object value = vertex.getProperty(field);
+                if (value instanceof Number) {
+                    state.set(((Number) number).intValue(), field, ((Number) value).longValue());
+                }
+            }
+        }
+        log.info("Built {} sync state for {} with {} entries",
+                new Object[]{edgetype, repo.getProperty(PropertyName.FULLNAME), state.size()});
+    }
+
+    /**
+     * Gets the users related to a repository and how they are related
+     *
+     * Like the sync state this is kept in memory, locked, and written back
+     * to the repository vertex on commit. Repositories without stored
+     * members are migrated with the traversals in
+     * {@link Traversals#getRepositoryUserRoles(Vertex)}.
+     *
+     * @param repo the repository vertex
+     */
+    protected RepositoryMembers getRepositoryMembers(final Vertex repo) {
+        final TransactionState tx = transactions.get();
+        final String key = "members:" + repo.getId();
+        if (lockKey(SYNC_LOCK, key)) {
+            tx.repositoryMembers.remove(repo.getId());
+        }
+        RepositoryMembers members = tx.repositoryMembers.get(repo.getId());
+        if (members == null) {
+            members = new RepositoryMembers(repo.getId());
+            if (!members.load(repo) && initialLoad == null) {
+                for (Map.Entry<Vertex, Integer> entry : traversals.getRepositoryUserRoles(repo).entrySet()) {
+                    final Object login = entry.getKey().getProperty(PropertyName.LOGIN);
+                    if (login != null) {
+                        members.add(login.toString(), entry.getValue());
+                    }
+                }
+                log.info("Built member list for {} with {} users",
+                        repo.getProperty(PropertyName.FULLNAME), members.size());
+            }
+            tx.repositoryMembers.put(repo.getId(), members);
+        }
+        return members;
+    }
+
+    private void addRepositoryMember(final Vertex repo, final User user, final int role) {
+        if (user != null && user.getLogin() != null) {
+            getRepositoryMembers(repo).add(user.getLogin(), role);
+        }
+    }
+
+    /**
+     * Looks up a user without creating it
+     *
+     * @return the user vertex or null if there is no such user
+     */
+    private Vertex getUser(final String login) {
+        if (identityCache != null) {
+            final Object id = identityCache.get(useridx.getIndexName(), login);
+            if (id != null) {
+                final Vertex user = graph.getVertex(id);
+                if (user != null) {
+                    return user;
+                }
+            }
+        }
+        return findVertex(useridx, IdCols.USER, login);
+    }
+
+    /**
+     * @return the vertex stored in an index for a key or null
+     */
+    private Vertex findVertex(final Index<Vertex> index, final String idcol, final Object idval) {
+        final CloseableIterable<Vertex> hits = index.get(idcol, idval);
+        try {
+            final Iterator<Vertex> it = hits.iterator();
+            return it.hasNext() ? it.next() : null;
+        } finally {
+            hits.close();
+        }
+    }
+
+    /**
+     * Gets the user vertices of all members of a repository
+     *
+     * The lookups for gists, events and full updates all ask for the same
+     * repository in a row, so the vertices of the last repository are kept
+     * until its members change.
+     */
+    private List<Vertex> getRepositoryUsers(final Vertex repo) {
+        final TransactionState tx = transactions.get();
+        final String key = "members:" + repo.getId();
+        final boolean held = locks.get(SYNC_LOCK, key).isHeldByCurrentThread();
+        final RepositoryMembers members = getRepositoryMembers(repo);
+        if (tx.scannedUsers == null || !repo.getId().equals(tx.scannedRepository)
+                || members.getVersion() != tx.scannedVersion
+                || members.getModifications() != tx.scannedModifications) {
+            final List<Vertex> users = new ArrayList<Vertex>(members.size());
+            for (String login : members.getLogins()) {
+                final Vertex user = getUser(login);
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+            tx.scannedRepository = repo.getId();
+            tx.scannedVersion = members.getVersion();
+            tx.scannedModifications = members.getModifications();
+            tx.scannedUsers = users;
+        }
+        releaseRepositoryMembers(repo, members, held);
+        return tx.scannedUsers;
+    }
+
+    /**
+     * Gets the logins of all users related to a repository
+     *
+     * @param reponame the name of the repository, eg mxcl/homebrew
+     */
+    public List<String> getRepositoryMemberLogins(final String reponame) {
+        final Vertex repo = getOrCreateRepository(reponame);
+        final boolean held = locks.get(SYNC_LOCK, "members:" + repo.getId()).isHeldByCurrentThread();
+        final RepositoryMembers members = getRepositoryMembers(repo);
+        final List<String> logins = members.getLogins();
+        releaseRepositoryMembers(repo, members, held);
+        return logins;
+    }
+
+    /**
+     * Unlocks members that were only read, unless the transaction already
+     * held the lock before reading them
+     */
+    private void releaseRepositoryMembers(final Vertex repo, final RepositoryMembers members,
+            final boolean held) {
+        if (!held && !members.isDirty()) {
+            unlockKey(SYNC_LOCK, "members:" + repo.getId());
+            transactions.get().repositoryMembers.remove(repo.getId());
+        }
+    }
+
+    private boolean hasDirtyRepositoryState(final TransactionState tx) {
+        for (SyncState state : tx.syncStates.values()) {
+            if (state.isDirty()) {
+                return true;
+            }
+        }
+        for (RepositoryMembers members : tx.repositoryMembers.values()) {
+            if (members.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void storeRepositoryStates(final TransactionState tx) {
+        for (SyncState state : tx.syncStates.values()) {
+            if (state.isDirty()) {
+                state.store(graph.getVertex(state.getRepositoryId()));
+            }
+        }
+        for (RepositoryMembers members : tx.repositoryMembers.values()) {
+            if (members.isDirty()) {
+                members.store(graph.getVertex(members.getRepositoryId()));
+            }
+        }
+        // the locks are released with the commit, so reload them when needed
+        tx.syncStates.clear();
+        tx.repositoryMembers.clear();
+    }
+
     /**
      * Get a map of date when comments were added to each issue
      * 
@@ -198,13 +1249,7 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
      */
     public Map<Integer, Date> getIssueCommentsAddedAt(final String reponame) {
         final Vertex node = getOrCreateRepository(reponame);
-        final HashMap<Integer, Date> map = new HashMap<Integer, Date>();
-
-        final GremlinPipeline<Vertex, Vertex> pipe = new GremlinPipeline<Vertex, Vertex>();
-        pipe.start(node).out(EdgeType.ISSUE);
-
-        addValuesFromIterable(pipe, map, PropertyName.NUMBER,
-                PropertyName.SYS_COMMENTS_ADDED);
+        final Map<Integer, Date> map = getSyncDates(node, EdgeType.ISSUE, PropertyName.SYS_COMMENTS_ADDED);
         log.warn("number of issues: {}", map.size());
         return map;
     }
@@ -219,15 +1264,7 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
      */
     public Map<Integer, Date> getIssueEventsAddedAt(final IRepositoryIdProvider repo) {
         final Vertex node = getOrCreateRepository(repo.generateId());
-        final HashMap<Integer, Date> map = new HashMap<Integer, Date>();
-
-        GremlinPipeline<Vertex, Vertex> pipe = new GremlinPipeline<Vertex, Vertex>();
-        pipe.start(node).out(EdgeType.ISSUE.toString());
-
-        addValuesFromIterable(pipe, map, PropertyName.NUMBER,
-                PropertyName.SYS_EVENTS_ADDED);
-
-        return map;
+        return getSyncDates(node, EdgeType.ISSUE, PropertyName.SYS_EVENTS_ADDED);
     }
 
     public Vertex getOrCreateComment(final long commentId) {
@@ -428,7 +1465,11 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             final String keyProperty, final String valueProperty) {
         Vertex node = getOrCreateRepository(reponame);
         HashMap<String, Date> map = new HashMap<String, Date>();
-        addValuesFromIterable(traversals.getAllRepositoryUsers(node), map,
+        if (initialLoad != null) {
+            log.warn("Project users for {} can't be found during an initial load, they will be mined on the next run", reponame);
+            return map;
+        }
+        addValuesFromIterable(getRepositoryUsers(node), map,
                 keyProperty, valueProperty);
         return map;
     }
@@ -442,13 +1483,7 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
      */
     public Map<Integer, Date> getPullRequestDiscussionsAddedAt(final String reponame) {
         Vertex node = getOrCreateRepository(reponame);
-        HashMap<Integer, Date> map = new HashMap<Integer, Date>();
-
-        GremlinPipeline<Vertex, Vertex> pipe = new GremlinPipeline<Vertex, Vertex>();
-        pipe.start(node).out(EdgeType.PULLREQUEST.toString());
-        addValuesFromIterable(pipe, map, PropertyName.NUMBER,
-                PropertyName.SYS_DISCUSSIONS_ADDED);
-        return map;
+        return getSyncDates(node, EdgeType.PULLREQUEST, PropertyName.SYS_DISCUSSIONS_ADDED);
     }
 
     /**
@@ -463,19 +1498,26 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
     }
 
     protected Vertex saveCommentHelper(final Comment comment, final String edgetype) {
-        Vertex node = getOrCreateComment(comment.getId());
-        setProperty(node, PropertyName.BODY, comment.getBody());
-        setProperty(node, PropertyName.BODY_HTML, comment.getBodyHtml());
-        setProperty(node, PropertyName.BODY_TEXT, comment.getBodyText());
-        setProperty(node, PropertyName.URL, comment.getUrl());
-        setProperty(node, PropertyName.GITHUB_ID, comment.getId());
-        setProperty(node, PropertyName.CREATED_AT, comment.getCreatedAt());
-        setProperty(node, PropertyName.UPDATED_AT, comment.getUpdatedAt());
-        if (comment.getUser() != null) {
-            Vertex user = getOrCreateUser(comment.getUser());
-            createEdgeIfNotExist(user, node, edgetype);
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex node = getOrCreateComment(comment.getId());
+            setTextPropertyIfChanged(node, PropertyName.BODY, comment.getBody());
+            setTextPropertyIfChanged(node, PropertyName.BODY_HTML, comment.getBodyHtml());
+            setTextPropertyIfChanged(node, PropertyName.BODY_TEXT, comment.getBodyText());
+            setPropertyIfChanged(node, PropertyName.URL, comment.getUrl());
+            setPropertyIfChanged(node, PropertyName.GITHUB_ID, comment.getId());
+            setPropertyIfChanged(node, PropertyName.CREATED_AT, comment.getCreatedAt());
+            setPropertyIfChanged(node, PropertyName.UPDATED_AT, comment.getUpdatedAt());
+            if (comment.getUser() != null) {
+                Vertex user = getOrCreateUser(comment.getUser());
+                createEdgeIfNotExist(user, node, edgetype);
+            }
+            success = true;
+            return node;
+        } finally {
+            endBatch(success);
         }
-        return node;
     }
 
     /**
@@ -489,25 +1531,32 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
      * @return
      */
     public Vertex saveCommit(final Commit commit) {
-        log.trace("saveCommit: enter");
-        Vertex node = getOrCreateCommit(commit.getSha());
-        if (commit.getAuthor() != null) {
-            Vertex author = saveUser(commit.getAuthor());
-            createEdgeIfNotExist(node, author, EdgeType.COMMITAUTHOR);
-            setProperty(node, PropertyName.AUTHORED_DATE, commit.getAuthor().getDate());
-        }
-        if (commit.getCommitter() != null) {
-            Vertex committer = saveUser(commit.getCommitter());
-            createEdgeIfNotExist(node, committer, EdgeType.COMMITTER);
-            setProperty(node, PropertyName.COMMITTED_DATE, commit.getCommitter().getDate());
-        }
-        setProperty(node, PropertyName.COMMIT_ID, commit.getSha());
-        setProperty(node, PropertyName.MESSAGE, commit.getMessage());
-
-        setProperty(node, PropertyName.TREE, commit.getTree());
-        setProperty(node, PropertyName.URL, commit.getUrl());
-        log.trace("saveCommit: exit");
-        return node;
+        beginBatch();
+        boolean success = false;
+        try {
+            log.trace("saveCommit: enter");
+            Vertex node = getOrCreateCommit(commit.getSha());
+            if (commit.getAuthor() != null) {
+                Vertex author = saveUser(commit.getAuthor());
+                createEdgeIfNotExist(node, author, EdgeType.COMMITAUTHOR);
+                setPropertyIfChanged(node, PropertyName.AUTHORED_DATE, commit.getAuthor().getDate());
+            }
+            if (commit.getCommitter() != null) {
+                Vertex committer = saveUser(commit.getCommitter());
+                createEdgeIfNotExist(node, committer, EdgeType.COMMITTER);
+                setPropertyIfChanged(node, PropertyName.COMMITTED_DATE, commit.getCommitter().getDate());
+            }
+            setPropertyIfChanged(node, PropertyName.COMMIT_ID, commit.getSha());
+            setPropertyIfChanged(node, PropertyName.MESSAGE, commit.getMessage());
+
+            setPropertyIfChanged(node, PropertyName.TREE, commit.getTree());
+            setPropertyIfChanged(node, PropertyName.URL, commit.getUrl());
+            log.trace("saveCommit: exit");
+            success = true;
+            return node;
+        } finally {
+            endBatch(success);
+        }
     }
 
 //    public Vertex saveDiscussion(Discussion discussion) {
@@ -536,23 +1585,30 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
 //    }
 
     public Vertex saveGist(final Gist gist) {
-        Vertex node = getOrCreateGist(gist.getId());
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex node = getOrCreateGist(gist.getId());
         
-        setProperty(node, PropertyName.CREATED_AT, gist.getCreatedAt());
-        setProperty(node, PropertyName.DESCRIPTION, gist.getDescription());
-
-        for (Map.Entry<String, GistFile> gistFile : gist.getFiles().entrySet()) {
-            Vertex filenode = saveGistFile(gist.getId(), gistFile.getValue());
-            createEdgeIfNotExist(null, node, filenode, EdgeType.GISTFILE);
-        }
-        setProperty(node, PropertyName.OWNER, gist.getUser().getLogin());
-        setProperty(node, PropertyName.COMMENTS, gist.getComments());
-        setProperty(node, PropertyName.GIT_PULL_URL, gist.getGitPullUrl());
-        setProperty(node, PropertyName.GIT_PUSH_URL, gist.getGitPushUrl());
-        setProperty(node, PropertyName.URL, gist.getUrl());
-        setProperty(node, PropertyName.UPDATED_AT, gist.getUpdatedAt());
-        setProperty(node, PropertyName.HTML_URL, gist.getHtmlUrl());
-        return node;
+            setPropertyIfChanged(node, PropertyName.CREATED_AT, gist.getCreatedAt());
+            setPropertyIfChanged(node, PropertyName.DESCRIPTION, gist.getDescription());
+
+            for (Map.Entry<String, GistFile> gistFile : gist.getFiles().entrySet()) {
+                Vertex filenode = saveGistFile(gist.getId(), gistFile.getValue());
+                createEdgeIfNotExist(null, node, filenode, EdgeType.GISTFILE);
+            }
+            setPropertyIfChanged(node, PropertyName.OWNER, gist.getUser().getLogin());
+            setPropertyIfChanged(node, PropertyName.COMMENTS, gist.getComments());
+            setPropertyIfChanged(node, PropertyName.GIT_PULL_URL, gist.getGitPullUrl());
+            setPropertyIfChanged(node, PropertyName.GIT_PUSH_URL, gist.getGitPushUrl());
+            setPropertyIfChanged(node, PropertyName.URL, gist.getUrl());
+            setPropertyIfChanged(node, PropertyName.UPDATED_AT, gist.getUpdatedAt());
+            setPropertyIfChanged(node, PropertyName.HTML_URL, gist.getHtmlUrl());
+            success = true;
+            return node;
+        } finally {
+            endBatch(success);
+        }
     }
 
     public Collection<Vertex> saveGistComments(final Gist gist,
@@ -613,70 +1669,78 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
     private Vertex saveIssue(final Repository repo,
             final Vertex repoVertex,
             final Issue issue) {
-        String reponame;
-        Vertex repoVtx = repoVertex;
-        if (repoVtx == null) {
-            repoVtx = getOrCreateRepository(repo);
-        }
-        if (repo != null) {
-            reponame = repo.generateId();
-        } else {
-            reponame = (String)repoVtx.getProperty(PropertyName.FULLNAME);
-            log.warn("Guessing repo name: {}", reponame);
-        }
-
-        log.warn("reponame: {}", reponame);
-        log.warn("Issue: {}", issue);
-        Vertex issuenode = getOrCreateIssue(reponame, issue);
-        if (issue.getAssignee() != null) {
-            setProperty(issuenode, PropertyName.ASSIGNEE, issue.getAssignee().getLogin());
-            Vertex userNode = getOrCreateUser(issue.getAssignee());
-            createEdgeIfNotExist(userNode, issuenode, EdgeType.ISSUEASSIGNEE);
-        }
-        // FIXME: need to add support for getClosedBy
-        setProperty(issuenode, PropertyName.BODY, issue.getBody());
-        setProperty(issuenode, PropertyName.BODY_HTML, issue.getBodyHtml());
-        setProperty(issuenode, PropertyName.CLOSED_AT, issue.getClosedAt());
-        setProperty(issuenode, PropertyName.COMMENTS, issue.getComments());
-        setProperty(issuenode, PropertyName.CREATED_AT, issue.getCreatedAt());
-        setProperty(issuenode, PropertyName.HTML_URL, issue.getHtmlUrl());
-        setProperty(issuenode, PropertyName.HTML_URL, issue.getHtmlUrl());
-        setProperty(issuenode, PropertyName.GITHUB_ID, issue.getId());
-        for (Label label : issue.getLabels()) {
-            Vertex labelnode = getOrCreateIssueLabel(label);
-            createEdgeIfNotExist(issuenode, labelnode, EdgeType.ISSUELABEL);
-        }
-        setProperty(issuenode, PropertyName.GITHUB_ID, issue.getId());
-        if (issue.getMilestone() != null) {
-            if (repo != null) {
-                Milestone milestone = issue.getMilestone();
-                Vertex msVtx = saveMilestone(repo, milestone);
-                createEdgeIfNotExist(issuenode, msVtx, EdgeType.MILESTONE);
-            } else {
-                log.warn("Attempting to save a milestone with a null repo");
+        beginBatch();
+        boolean success = false;
+        try {
+            String reponame;
+            Vertex repoVtx = repoVertex;
+            if (repoVtx == null) {
+                repoVtx = getOrCreateRepository(repo);
             }
-        }
-        setProperty(issuenode, PropertyName.NUMBER, issue.getNumber());
-        // Fix for the v3 API always creating a pull request object
-        if (issue.getPullRequest() != null && issue.getPullRequest().getId() != 0L) {
             if (repo != null) {
-                PullRequest pullRequest = issue.getPullRequest();
-                Vertex prnode = savePullRequest(repo, pullRequest);
-                createEdgeIfNotExist(issuenode, prnode, EdgeType.PULLREQUEST);
+                reponame = repo.generateId();
             } else {
-                log.warn("Attempting to save an issue PullRequest with a null repo");
+                reponame = (String)repoVtx.getProperty(PropertyName.FULLNAME);
+                log.warn("Guessing repo name: {}", reponame);
             }
+
+            log.warn("reponame: {}", reponame);
+            log.warn("Issue: {}", issue);
+            Vertex issuenode = getOrCreateIssue(reponame, issue);
+            if (issue.getAssignee() != null) {
+                setPropertyIfChanged(issuenode, PropertyName.ASSIGNEE, issue.getAssignee().getLogin());
+                Vertex userNode = getOrCreateUser(issue.getAssignee());
+                createEdgeIfNotExist(userNode, issuenode, EdgeType.ISSUEASSIGNEE);
+            }
+            // FIXME: need to add support for getClosedBy
+            setTextPropertyIfChanged(issuenode, PropertyName.BODY, issue.getBody());
+            setTextPropertyIfChanged(issuenode, PropertyName.BODY_HTML, issue.getBodyHtml());
+            setPropertyIfChanged(issuenode, PropertyName.CLOSED_AT, issue.getClosedAt());
+            setPropertyIfChanged(issuenode, PropertyName.COMMENTS, issue.getComments());
+            setPropertyIfChanged(issuenode, PropertyName.CREATED_AT, issue.getCreatedAt());
+            setPropertyIfChanged(issuenode, PropertyName.HTML_URL, issue.getHtmlUrl());
+            setPropertyIfChanged(issuenode, PropertyName.HTML_URL, issue.getHtmlUrl());
+            setPropertyIfChanged(issuenode, PropertyName.GITHUB_ID, issue.getId());
+            for (Label label : issue.getLabels()) {
+                Vertex labelnode = getOrCreateIssueLabel(label);
+                createEdgeIfNotExist(issuenode, labelnode, EdgeType.ISSUELABEL);
+            }
+            setPropertyIfChanged(issuenode, PropertyName.GITHUB_ID, issue.getId());
+            if (issue.getMilestone() != null) {
+                if (repo != null) {
+                    Milestone milestone = issue.getMilestone();
+                    Vertex msVtx = saveMilestone(repo, milestone);
+                    createEdgeIfNotExist(issuenode, msVtx, EdgeType.MILESTONE);
+                } else {
+                    log.warn("Attempting to save a milestone with a null repo");
+                }
+            }
+            setPropertyIfChanged(issuenode, PropertyName.NUMBER, issue.getNumber());
+            // Fix for the v3 API always creating a pull request object
+            if (issue.getPullRequest() != null && issue.getPullRequest().getId() != 0L) {
+                if (repo != null) {
+                    PullRequest pullRequest = issue.getPullRequest();
+                    Vertex prnode = savePullRequest(repo, pullRequest);
+                    createEdgeIfNotExist(issuenode, prnode, EdgeType.PULLREQUEST);
+                } else {
+                    log.warn("Attempting to save an issue PullRequest with a null repo");
+                }
+            }
+            setPropertyIfChanged(issuenode, PropertyName.STATE, issue.getState().toString());
+            setPropertyIfChanged(issuenode, PropertyName.TITLE, issue.getTitle());
+            setPropertyIfChanged(issuenode, PropertyName.UPDATED_AT, issue.getUpdatedAt());
+            if (issue.getUser() != null) {
+                setPropertyIfChanged(issuenode, PropertyName.USER, issue.getUser().getLogin());
+                Vertex userNode = getOrCreateUser(issue.getUser());
+                createEdgeIfNotExist(userNode, issuenode, EdgeType.ISSUEOWNER);
+                addRepositoryMember(repoVtx, issue.getUser(), RepositoryMembers.ISSUE_OWNER);
+            }
+            setPropertyIfChanged(issuenode, PropertyName.SYS_LAST_UPDATED, new Date());
+            success = true;
+            return issuenode;
+        } finally {
+            endBatch(success);
         }
-        setProperty(issuenode, PropertyName.STATE, issue.getState().toString());
-        setProperty(issuenode, PropertyName.TITLE, issue.getTitle());
-        setProperty(issuenode, PropertyName.UPDATED_AT, issue.getUpdatedAt());
-        if (issue.getUser() != null) {
-            setProperty(issuenode, PropertyName.USER, issue.getUser().getLogin());
-            Vertex userNode = getOrCreateUser(issue.getUser());
-            createEdgeIfNotExist(userNode, issuenode, EdgeType.ISSUEOWNER);
-        }
-        setProperty(issuenode, PropertyName.SYS_LAST_UPDATED, new Date());
-        return issuenode;
     }
 
     public Vertex saveIssueComment(final Comment comment) {
@@ -690,7 +1754,10 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         for (Comment comment : issueComments) {
             saveIssueComment(repo, issue, comment);
         }
-        setProperty(issueVtx, PropertyName.SYS_COMMENTS_ADDED, new Date());
+        Date now = new Date();
+        setPropertyIfChanged(issueVtx, PropertyName.SYS_COMMENTS_ADDED, now);
+        getSyncState(getOrCreateRepository(repo), EdgeType.ISSUE).set(issue.getNumber(),
+                PropertyName.SYS_COMMENTS_ADDED, now.getTime() / 1000L);
     }
 
     private Vertex saveIssueComment(final Repository repo,
@@ -700,6 +1767,7 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         Vertex issuenode = saveIssue(repo, issue);
         Vertex commentnode = saveCommentHelper(comment, EdgeType.ISSUECOMMENTOWNER);
         createEdgeIfNotExist(issuenode, commentnode, EdgeType.ISSUECOMMENT);
+        addRepositoryMember(getOrCreateRepository(repo), comment.getUser(), RepositoryMembers.ISSUE_COMMENTER);
         return commentnode;
     }
 
@@ -710,50 +1778,67 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         for (IssueEvent event : issueEvents) {
             saveIssueEvent(repo, issuenode, event);
         }
-        setProperty(issuenode, PropertyName.SYS_EVENTS_ADDED, new Date());
+        Date now = new Date();
+        setPropertyIfChanged(issuenode, PropertyName.SYS_EVENTS_ADDED, now);
+        getSyncState(getOrCreateRepository(repo), EdgeType.ISSUE).set(issue.getNumber(),
+                PropertyName.SYS_EVENTS_ADDED, now.getTime() / 1000L);
     }
 
     private Vertex saveIssueEvent(final Repository repo,
             final Vertex issuenode,
             final IssueEvent event) {
-        Vertex eventnode = getOrCreateIssueEvent(event);
-        createEdgeIfNotExist(issuenode, eventnode, EdgeType.ISSUEEVENT);
-        if (event.getActor() != null) {
-            Vertex usernode = saveUser(event.getActor());
-            createEdgeIfNotExist(usernode, eventnode, EdgeType.ISSUEEVENTACTOR);
-        }
-        if (event.getCommitId() != null) {
-            setProperty(eventnode, PropertyName.COMMIT_ID, event.getCommitId());
-            Vertex commit = this.getOrCreateCommit(event.getCommitId());
-            createEdgeIfNotExist(eventnode, commit, EdgeType.EVENTCOMMIT);
-        }
-        setProperty(eventnode, PropertyName.CREATED_AT, event.getCreatedAt());
-        setProperty(eventnode, PropertyName.EVENT, event.getEvent());
-        setProperty(eventnode, PropertyName.GITHUB_ID, event.getId());
-        if (event.getIssue() != null) {
-            Vertex altissuenode = saveIssue(repo, event.getIssue());
-            createEdgeIfNotExist(eventnode, altissuenode, EdgeType.ISSUEALTEVENT);
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex eventnode = getOrCreateIssueEvent(event);
+            createEdgeIfNotExist(issuenode, eventnode, EdgeType.ISSUEEVENT);
+            if (event.getActor() != null) {
+                Vertex usernode = saveUser(event.getActor());
+                createEdgeIfNotExist(usernode, eventnode, EdgeType.ISSUEEVENTACTOR);
+            }
+            if (event.getCommitId() != null) {
+                setPropertyIfChanged(eventnode, PropertyName.COMMIT_ID, event.getCommitId());
+                Vertex commit = this.getOrCreateCommit(event.getCommitId());
+                createEdgeIfNotExist(eventnode, commit, EdgeType.EVENTCOMMIT);
+            }
+            setPropertyIfChanged(eventnode, PropertyName.CREATED_AT, event.getCreatedAt());
+            setPropertyIfChanged(eventnode, PropertyName.EVENT, event.getEvent());
+            setPropertyIfChanged(eventnode, PropertyName.GITHUB_ID, event.getId());
+            if (event.getIssue() != null) {
+                Vertex altissuenode = saveIssue(repo, event.getIssue());
+                createEdgeIfNotExist(eventnode, altissuenode, EdgeType.ISSUEALTEVENT);
+            }
+            setPropertyIfChanged(eventnode, PropertyName.URL, event.getUrl());
+            success = true;
+            return null;
+        } finally {
+            endBatch(success);
         }
-        setProperty(eventnode, PropertyName.URL, event.getUrl());
-        return null;
     }
 
     private Vertex saveMilestone(final Repository repo, final Milestone milestone) {
-        Vertex msnode = getOrCreateMilestone(repo.generateId() + ":" + milestone.getTitle());
-        setProperty(msnode, PropertyName.CLOSED_ISSUES, milestone.getClosedIssues());
-        setProperty(msnode, PropertyName.CREATED_AT, milestone.getCreatedAt());
-        if (milestone.getCreator() != null) {
-            Vertex userVtx = saveUser(milestone.getCreator());
-            createEdgeIfNotExist(msnode, userVtx, EdgeType.CREATOR);
-        }
-        setProperty(msnode, PropertyName.DESCRIPTION, milestone.getDescription());
-        setProperty(msnode, PropertyName.DUE_DATE, milestone.getDueOn());
-        setProperty(msnode, PropertyName.NUMBER, milestone.getNumber());
-        setProperty(msnode, PropertyName.OPEN_ISSUES, milestone.getOpenIssues());
-        setProperty(msnode, PropertyName.STATE, milestone.getState());
-        setProperty(msnode, PropertyName.UPDATED_AT, new Date());
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex msnode = getOrCreateMilestone(repo.generateId() + ":" + milestone.getTitle());
+            setPropertyIfChanged(msnode, PropertyName.CLOSED_ISSUES, milestone.getClosedIssues());
+            setPropertyIfChanged(msnode, PropertyName.CREATED_AT, milestone.getCreatedAt());
+            if (milestone.getCreator() != null) {
+                Vertex userVtx = saveUser(milestone.getCreator());
+                createEdgeIfNotExist(msnode, userVtx, EdgeType.CREATOR);
+            }
+            setPropertyIfChanged(msnode, PropertyName.DESCRIPTION, milestone.getDescription());
+            setPropertyIfChanged(msnode, PropertyName.DUE_DATE, milestone.getDueOn());
+            setPropertyIfChanged(msnode, PropertyName.NUMBER, milestone.getNumber());
+            setPropertyIfChanged(msnode, PropertyName.OPEN_ISSUES, milestone.getOpenIssues());
+            setPropertyIfChanged(msnode, PropertyName.STATE, milestone.getState());
+            setPropertyIfChanged(msnode, PropertyName.UPDATED_AT, new Date());
 
-        return msnode;
+            success = true;
+            return msnode;
+        } finally {
+            endBatch(success);
+        }
     }
 
     /**
@@ -838,25 +1923,33 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             Vertex pullRequestNode = getOrCreatePullRequest(repo, pullRequest);
             Vertex commentnode = saveCommentHelper(comment, EdgeType.PULLREQUESTCOMMENTOWNER);
             createEdgeIfNotExist(pullRequestNode, commentnode, EdgeType.PULLREQUESTISSUECOMMENT);
+            addRepositoryMember(getOrCreateRepository(repo), comment.getUser(), RepositoryMembers.DISCUSSION);
             return commentnode;
     }
 
     private Vertex savePullRequestMarker(final PullRequestMarker head) {
-        Vertex markernode = getOrCreatePullRequestMarker(head);
-        setProperty(markernode, PropertyName.LABEL, head.getLabel());
-        setProperty(markernode, PropertyName.SHA, head.getSha());
-        setProperty(markernode, PropertyName.REF, head.getRef());
-        User user = head.getUser();
-        if (user != null) {
-            Vertex usernode = saveUser(user);
-            createEdgeIfNotExist(markernode, usernode, EdgeType.PULLREQUESTMARKERUSER);
-        }
-        Repository repo = head.getRepo();
-        if (repo != null) {
-            Vertex reponode = saveRepository(repo);
-            createEdgeIfNotExist(markernode, reponode, EdgeType.REPOSITORY);
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex markernode = getOrCreatePullRequestMarker(head);
+            setPropertyIfChanged(markernode, PropertyName.LABEL, head.getLabel());
+            setPropertyIfChanged(markernode, PropertyName.SHA, head.getSha());
+            setPropertyIfChanged(markernode, PropertyName.REF, head.getRef());
+            User user = head.getUser();
+            if (user != null) {
+                Vertex usernode = saveUser(user);
+                createEdgeIfNotExist(markernode, usernode, EdgeType.PULLREQUESTMARKERUSER);
+            }
+            Repository repo = head.getRepo();
+            if (repo != null) {
+                Vertex reponode = saveRepository(repo);
+                createEdgeIfNotExist(markernode, reponode, EdgeType.REPOSITORY);
+            }
+            success = true;
+            return markernode;
+        } finally {
+            endBatch(success);
         }
-        return markernode;
     }
 
 //    public Vertex savePullRequestReviewComent(Comment comment) {
@@ -903,62 +1996,69 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             log.error("Repository ID is null. Skipping");
             return null;
         }
-        Vertex node = getOrCreateRepository(repo.generateId());
-
-        setProperty(node, PropertyName.FULLNAME, repo.generateId());
-        setProperty(node, PropertyName.CLONE_URL, repo.getCloneUrl());
-        setProperty(node, PropertyName.CREATED_AT, repo.getCreatedAt());
-        setProperty(node, PropertyName.DESCRIPTION, repo.getDescription());
-        setProperty(node, PropertyName.FORKS, repo.getForks());
-        setProperty(node, PropertyName.GIT_URL, repo.getGitUrl());
-        setProperty(node, PropertyName.HOMEPAGE, repo.getHomepage());
-        setProperty(node, PropertyName.HTML_URL, repo.getHtmlUrl());
-        setProperty(node, PropertyName.GITHUB_ID, repo.getId());
-        setProperty(node, PropertyName.LANGUAGE, repo.getLanguage());
-        setProperty(node, PropertyName.MASTER_BRANCH, repo.getMasterBranch());
-        setProperty(node, PropertyName.MIRROR_URL, repo.getMirrorUrl());
-        setProperty(node, PropertyName.NAME, repo.getName());
-        setProperty(node, PropertyName.OPEN_ISSUES, repo.getOpenIssues());
-        User user = repo.getOwner();
-        if (user != null) {
-            Vertex owner = saveUser(user);
-            createEdgeIfNotExist(owner, node, EdgeType.REPOOWNER);
-        }
-        Repository altrepo = repo.getParent();
-        if (altrepo != null) {
-            Vertex parentNode = saveRepository(altrepo);
-            createEdgeIfNotExist(node, parentNode, EdgeType.REPOPARENT);
-        }
-        setProperty(node, PropertyName.PUSHED_AT, repo.getPushedAt()); 
-        setProperty(node, PropertyName.SIZE, repo.getSize());
-        altrepo = repo.getSource();
-        if (altrepo != null) {
-            Vertex sourceNode = saveRepository(altrepo);
-            createEdgeIfNotExist(node, sourceNode, EdgeType.REPOSOURCE);
-        }
-        setProperty(node, PropertyName.SSH_URL, repo.getSshUrl());
-        setProperty(node, PropertyName.SVN_URL, repo.getSvnUrl());
-        setProperty(node, PropertyName.UPDATED_AT, repo.getUpdatedAt());
-        setProperty(node, PropertyName.URL, repo.getUrl());
-        setProperty(node, PropertyName.WATCHERS, repo.getWatchers());
-
-        setProperty(node, PropertyName.IS_FORK, repo.isFork());
-        setProperty(node, PropertyName.HAS_DOWNLOADS, repo.isHasDownloads());
-        setProperty(node, PropertyName.HAS_ISSUES, repo.isHasIssues());
-        setProperty(node, PropertyName.HAS_WIKI, repo.isHasWiki());
-        setProperty(node, PropertyName.IS_PRIVATE, repo.isPrivate());
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex node = getOrCreateRepository(repo.generateId());
+
+            setPropertyIfChanged(node, PropertyName.FULLNAME, repo.generateId());
+            setPropertyIfChanged(node, PropertyName.CLONE_URL, repo.getCloneUrl());
+            setPropertyIfChanged(node, PropertyName.CREATED_AT, repo.getCreatedAt());
+            setPropertyIfChanged(node, PropertyName.DESCRIPTION, repo.getDescription());
+            setPropertyIfChanged(node, PropertyName.FORKS, repo.getForks());
+            setPropertyIfChanged(node, PropertyName.GIT_URL, repo.getGitUrl());
+            setPropertyIfChanged(node, PropertyName.HOMEPAGE, repo.getHomepage());
+            setPropertyIfChanged(node, PropertyName.HTML_URL, repo.getHtmlUrl());
+            setPropertyIfChanged(node, PropertyName.GITHUB_ID, repo.getId());
+            setPropertyIfChanged(node, PropertyName.LANGUAGE, repo.getLanguage());
+            setPropertyIfChanged(node, PropertyName.MASTER_BRANCH, repo.getMasterBranch());
+            setPropertyIfChanged(node, PropertyName.MIRROR_URL, repo.getMirrorUrl());
+            setPropertyIfChanged(node, PropertyName.NAME, repo.getName());
+            setPropertyIfChanged(node, PropertyName.OPEN_ISSUES, repo.getOpenIssues());
+            User user = repo.getOwner();
+            if (user != null) {
+                Vertex owner = saveUser(user);
+                createEdgeIfNotExist(owner, node, EdgeType.REPOOWNER);
+            }
+            Repository altrepo = repo.getParent();
+            if (altrepo != null) {
+                Vertex parentNode = saveRepository(altrepo);
+                createEdgeIfNotExist(node, parentNode, EdgeType.REPOPARENT);
+            }
+            setPropertyIfChanged(node, PropertyName.PUSHED_AT, repo.getPushedAt()); 
+            setPropertyIfChanged(node, PropertyName.SIZE, repo.getSize());
+            altrepo = repo.getSource();
+            if (altrepo != null) {
+                Vertex sourceNode = saveRepository(altrepo);
+                createEdgeIfNotExist(node, sourceNode, EdgeType.REPOSOURCE);
+            }
+            setPropertyIfChanged(node, PropertyName.SSH_URL, repo.getSshUrl());
+            setPropertyIfChanged(node, PropertyName.SVN_URL, repo.getSvnUrl());
+            setPropertyIfChanged(node, PropertyName.UPDATED_AT, repo.getUpdatedAt());
+            setPropertyIfChanged(node, PropertyName.URL, repo.getUrl());
+            setPropertyIfChanged(node, PropertyName.WATCHERS, repo.getWatchers());
+
+            setPropertyIfChanged(node, PropertyName.IS_FORK, repo.isFork());
+            setPropertyIfChanged(node, PropertyName.HAS_DOWNLOADS, repo.isHasDownloads());
+            setPropertyIfChanged(node, PropertyName.HAS_ISSUES, repo.isHasIssues());
+            setPropertyIfChanged(node, PropertyName.HAS_WIKI, repo.isHasWiki());
+            setPropertyIfChanged(node, PropertyName.IS_PRIVATE, repo.isPrivate());
         
-        // Former v2 Properties not in v3 API
-        // getPermission
-        //		setProperty(node, PropertyName.ACTIONS, repo.getActions());
-        //		setProperty(node, PropertyName.FOLLOWERS, repo.getFollowers());
-        //		setProperty(node, PropertyName.ORGANIZATION, repo.getOrganization());
-        //		setProperty(node, PropertyName.SCORE, repo.getScore());
-        //		setProperty(node, PropertyName.REPO_TYPE, repo.getType()); // note name change
-        //		setProperty(node, PropertyName.USERNAME, repo.getUsername());
-
-        setProperty(node, PropertyName.SYS_LAST_UPDATED, new Date());
-        return node;
+            // Former v2 Properties not in v3 API
+            // getPermission
+            //		setProperty(node, PropertyName.ACTIONS, repo.getActions());
+            //		setProperty(node, PropertyName.FOLLOWERS, repo.getFollowers());
+            //		setProperty(node, PropertyName.ORGANIZATION, repo.getOrganization());
+            //		setProperty(node, PropertyName.SCORE, repo.getScore());
+            //		setProperty(node, PropertyName.REPO_TYPE, repo.getType()); // note name change
+            //		setProperty(node, PropertyName.USERNAME, repo.getUsername());
+
+            setPropertyIfChanged(node, PropertyName.SYS_LAST_UPDATED, new Date());
+            success = true;
+            return node;
+        } finally {
+            endBatch(success);
+        }
     }
 
     /**
@@ -979,6 +2079,7 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             for (User user : collaborators) {
                 Vertex userVtx = getOrCreateUser(user);
                 createEdgeIfNotExist(null, repoVtx, userVtx, EdgeType.REPOCOLLABORATOR);
+                addRepositoryMember(repoVtx, user, RepositoryMembers.COLLABORATOR);
                 mapper.put(user, userVtx);
             }
         }
@@ -1004,7 +2105,9 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             for (Contributor contributor : contributors) {
                 Vertex contributorVtx = saveContributor(contributor);
                 Edge contributorEdge = createEdgeIfNotExist(null, repoVtx, contributorVtx, EdgeType.REPOCONTRIBUTOR);
-                setProperty(contributorEdge, PropertyName.CONTRIBUTIONS, contributor.getContributions());
+                if (contributorEdge != null) {
+                    setPropertyIfChanged(contributorEdge, PropertyName.CONTRIBUTIONS, contributor.getContributions());
+                }
                 mapper.put(contributor, contributorVtx);
             }
         }
@@ -1022,14 +2125,14 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
     private Vertex saveContributor(final Contributor contributor) {
         Vertex contributorVtx = getOrCreateUser(contributor.getLogin());
         if (contributor.getAvatarUrl() != null && !contributor.getAvatarUrl().trim().equals("")) {
-            setProperty(contributorVtx, PropertyName.GRAVATAR_ID, contributor.getAvatarUrl());
+            setPropertyIfChanged(contributorVtx, PropertyName.GRAVATAR_ID, contributor.getAvatarUrl());
             Vertex gravatarVtx = saveGravatar(contributor.getAvatarUrl());
             createEdgeIfNotExist(contributorVtx, gravatarVtx, EdgeType.GRAVATAR);
         }
-        setProperty(contributorVtx, PropertyName.NAME, contributor.getName());
-        setProperty(contributorVtx, PropertyName.GITHUB_ID, contributor.getId());
+        setPropertyIfChanged(contributorVtx, PropertyName.NAME, contributor.getName());
+        setPropertyIfChanged(contributorVtx, PropertyName.GITHUB_ID, contributor.getId());
         // setProperty(contributorVtx, PropertyName.contributor.getType();
-        setProperty(contributorVtx, PropertyName.URL, contributor.getUrl());
+        setPropertyIfChanged(contributorVtx, PropertyName.URL, contributor.getUrl());
         return contributorVtx;
     }
 
@@ -1115,10 +2218,12 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             final Collection<Issue> issues) {
         final Vertex proj = getOrCreateRepository(repo);
         final HashMap<String,Vertex> mapper = new HashMap<String,Vertex>();
+        final SyncState syncState = getSyncState(proj, EdgeType.ISSUE);
         for (Issue issue : issues) {
             String issueId = repo.generateId() + ":" + issue.getNumber();
             Vertex issuenode = saveIssue(repo, issue);
             createEdgeIfNotExist(null, proj, issuenode, EdgeType.ISSUE);
+            syncState.add(issue.getNumber());
             mapper.put(issueId, issuenode);
         }
         return mapper;
@@ -1147,104 +2252,116 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             final Vertex repoVertex,
             final PullRequest request,
             final boolean full) {
-        log.trace("Saving pull request {}", request.getNumber());
-        log.trace(request.toString());
-
-        Vertex reponode = repoVertex;
-        String reponame;
-        if (repo == null) {
-            reponame = (String)repoVertex.getProperty(PropertyName.FULLNAME);
-        } else {
-            reponame = repo.generateId();
-        }
+        beginBatch();
+        boolean success = false;
+        try {
+            log.trace("Saving pull request {}", request.getNumber());
+            log.trace(request.toString());
+
+            Vertex reponode = repoVertex;
+            String reponame;
+            if (repo == null) {
+                reponame = (String)repoVertex.getProperty(PropertyName.FULLNAME);
+            } else {
+                reponame = repo.generateId();
+            }
         
-        if (reponode == null) {
-            reponode = getOrCreateRepository(reponame);
-        }
-        Vertex pullnode = getOrCreatePullRequest(reponame, request);
-        // getBase()
+            if (reponode == null) {
+                reponode = getOrCreateRepository(reponame);
+            }
+            Vertex pullnode = getOrCreatePullRequest(reponame, request);
+            // getBase()
         
-        setProperty(pullnode, PropertyName.BODY, request.getBody());
-        setProperty(pullnode, PropertyName.BODY_HTML, request.getBodyHtml());
-        setProperty(pullnode, PropertyName.BODY_TEXT, request.getBodyText());
-        setProperty(pullnode, PropertyName.COMMENTS, request.getComments());
-        setProperty(pullnode, PropertyName.COMMITS, request.getCommits());
-        setProperty(pullnode, PropertyName.CREATED_AT, request.getCreatedAt());
-        setProperty(pullnode, PropertyName.CLOSED_AT, request.getClosedAt());
-        setProperty(pullnode, PropertyName.DIFF_URL, request.getDiffUrl());
-        setProperty(pullnode, PropertyName.PATCH_URL, request.getPatchUrl());
-        setProperty(pullnode, PropertyName.ADDITIONS, request.getAdditions());
-        setProperty(pullnode, PropertyName.DELETIONS, request.getDeletions());
-        setProperty(pullnode, PropertyName.UPDATED_AT, request.getUpdatedAt());
-        setProperty(pullnode, PropertyName.UPDATED_AT, request.getUpdatedAt());
-        setProperty(pullnode, PropertyName.URL, request.getUrl());
-
-        // FIXME: it does not appear that getDiscussions exists in the v3 api
-        //		for (Discussion discussion : request.getDiscussion()) {
-        //			Vertex discussionnode = saveDiscussion(discussion);
-        //			log.trace("Created discussion node");
-        //			createEdgeIfNotExist(null, pullnode, discussionnode, EdgeType.PULLREQUESTDISCUSSION);
-        //		}
-
-        setProperty(pullnode, PropertyName.HTML_URL, request.getHtmlUrl());
-        setProperty(pullnode, PropertyName.ISSUE_CREATED_AT, request.getCreatedAt());
-        setProperty(pullnode, PropertyName.ISSUE_UPDATED_AT, request.getUpdatedAt());
-        setProperty(pullnode, PropertyName.GITHUB_ID, request.getId());
-        setProperty(pullnode, PropertyName.ISSUE_URL, request.getIssueUrl());
-        setProperty(pullnode, PropertyName.MERGED_AT, request.getMergedAt());
-
-        // FIXME: it does not appear that getIssueUser exists in the v3 api
-        //		if (request.getIssueUser() != null) {
-        //			Vertex usernode = saveUser(request.getIssueUser());
-        //			createEdgeIfNotExist(usernode, pullnode, EdgeType.PULLREQUESTISSUEUSER);
-        //		}
-
-        // FIXME: it does not appear that getLabels exists in the v3 api
-        //		for (Label label : request.getLabels()) {
-        //			Vertex labelnode = getOrCreateIssueLabel(label);
-        //			createEdgeIfNotExist(null, pullnode, labelnode, EdgeType.PULLREQUESTLABEL);
-        //		}
-
-        setProperty(pullnode, PropertyName.NUMBER, request.getNumber());
-        setProperty(pullnode, PropertyName.PATCH_URL, request.getPatchUrl());
-        // FIXME: it does not appear that getPosition exists in the v3 api
-        //		setProperty(pullnode, PropertyName.POSITION, request.getPosition());
-        if (request.getState() != null) {
-            setProperty(pullnode, PropertyName.STATE, request.getState().toString());
-        }
-        setProperty(pullnode, PropertyName.TITLE, request.getTitle());
-        if (request.getUser() != null) {
-            Vertex usernode = saveUser(request.getUser());
-            createEdgeIfNotExist(usernode, pullnode, EdgeType.PULLREQUESTOWNER);
-        }
-
-        if (request.getMergedBy() != null) {
-            Vertex usernode = saveUser(request.getMergedBy());
-            createEdgeIfNotExist(pullnode, usernode, EdgeType.PULLREQUESTMERGEDBY);
-        }
-        setProperty(pullnode, PropertyName.MERGED_AT, request.getMergedAt());
-
-        // FIXME: it does not appear that getVotes exists in the v3 api
-        //		setProperty(pullnode, PropertyName.VOTES, request.getVotes());
-        createEdgeIfNotExist(reponode, pullnode, EdgeType.PULLREQUEST);
-
-        PullRequestMarker head = request.getHead();
-        if (head != null) {
-            Vertex headnode = savePullRequestMarker(head);
-            createEdgeIfNotExist(pullnode, headnode, EdgeType.PULLREQUESTHEAD);
-        }
-        PullRequestMarker base = request.getBase();
-        if (base != null) {
-            Vertex basenode = savePullRequestMarker(base);
-            createEdgeIfNotExist(pullnode, basenode, EdgeType.PULLREQUESTBASE);
-        }
-
-        if (full) {
-            setProperty(pullnode, PropertyName.SYS_DISCUSSIONS_ADDED.toString(), new Date());
-            setProperty(pullnode, PropertyName.SYS_UPDATE_COMPLETE.toString(), new Date());
-        }
-
-        return pullnode;
+            setTextPropertyIfChanged(pullnode, PropertyName.BODY, request.getBody());
+            setTextPropertyIfChanged(pullnode, PropertyName.BODY_HTML, request.getBodyHtml());
+            setTextPropertyIfChanged(pullnode, PropertyName.BODY_TEXT, request.getBodyText());
+            setPropertyIfChanged(pullnode, PropertyName.COMMENTS, request.getComments());
+            setPropertyIfChanged(pullnode, PropertyName.COMMITS, request.getCommits());
+            setPropertyIfChanged(pullnode, PropertyName.CREATED_AT, request.getCreatedAt());
+            setPropertyIfChanged(pullnode, PropertyName.CLOSED_AT, request.getClosedAt());
+            setPropertyIfChanged(pullnode, PropertyName.DIFF_URL, request.getDiffUrl());
+            setPropertyIfChanged(pullnode, PropertyName.PATCH_URL, request.getPatchUrl());
+            setPropertyIfChanged(pullnode, PropertyName.ADDITIONS, request.getAdditions());
+            setPropertyIfChanged(pullnode, PropertyName.DELETIONS, request.getDeletions());
+            setPropertyIfChanged(pullnode, PropertyName.UPDATED_AT, request.getUpdatedAt());
+            setPropertyIfChanged(pullnode, PropertyName.UPDATED_AT, request.getUpdatedAt());
+            setPropertyIfChanged(pullnode, PropertyName.URL, request.getUrl());
+
+            // FIXME: it does not appear that getDiscussions exists in the v3 api
+            //		for (Discussion discussion : request.getDiscussion()) {
+            //			Vertex discussionnode = saveDiscussion(discussion);
+            //			log.trace("Created discussion node");
+            //			createEdgeIfNotExist(null, pullnode, discussionnode, EdgeType.PULLREQUESTDISCUSSION);
+            //		}
+
+            setPropertyIfChanged(pullnode, PropertyName.HTML_URL, request.getHtmlUrl());
+            setPropertyIfChanged(pullnode, PropertyName.ISSUE_CREATED_AT, request.getCreatedAt());
+            setPropertyIfChanged(pullnode, PropertyName.ISSUE_UPDATED_AT, request.getUpdatedAt());
+            setPropertyIfChanged(pullnode, PropertyName.GITHUB_ID, request.getId());
+            setPropertyIfChanged(pullnode, PropertyName.ISSUE_URL, request.getIssueUrl());
+            setPropertyIfChanged(pullnode, PropertyName.MERGED_AT, request.getMergedAt());
+
+            // FIXME: it does not appear that getIssueUser exists in the v3 api
+            //		if (request.getIssueUser() != null) {
+            //			Vertex usernode = saveUser(request.getIssueUser());
+            //			createEdgeIfNotExist(usernode, pullnode, EdgeType.PULLREQUESTISSUEUSER);
+            //		}
+
+            // FIXME: it does not appear that getLabels exists in the v3 api
+            //		for (Label label : request.getLabels()) {
+            //			Vertex labelnode = getOrCreateIssueLabel(label);
+            //			createEdgeIfNotExist(null, pullnode, labelnode, EdgeType.PULLREQUESTLABEL);
+            //		}
+
+            setPropertyIfChanged(pullnode, PropertyName.NUMBER, request.getNumber());
+            setPropertyIfChanged(pullnode, PropertyName.PATCH_URL, request.getPatchUrl());
+            // FIXME: it does not appear that getPosition exists in the v3 api
+            //		setProperty(pullnode, PropertyName.POSITION, request.getPosition());
+            if (request.getState() != null) {
+                setPropertyIfChanged(pullnode, PropertyName.STATE, request.getState().toString());
+            }
+            setPropertyIfChanged(pullnode, PropertyName.TITLE, request.getTitle());
+            if (request.getUser() != null) {
+                Vertex usernode = saveUser(request.getUser());
+                createEdgeIfNotExist(usernode, pullnode, EdgeType.PULLREQUESTOWNER);
+                addRepositoryMember(reponode, request.getUser(), RepositoryMembers.PULLREQUEST_OWNER);
+            }
+
+            if (request.getMergedBy() != null) {
+                Vertex usernode = saveUser(request.getMergedBy());
+                createEdgeIfNotExist(pullnode, usernode, EdgeType.PULLREQUESTMERGEDBY);
+            }
+            setPropertyIfChanged(pullnode, PropertyName.MERGED_AT, request.getMergedAt());
+
+            // FIXME: it does not appear that getVotes exists in the v3 api
+            //		setProperty(pullnode, PropertyName.VOTES, request.getVotes());
+            createEdgeIfNotExist(reponode, pullnode, EdgeType.PULLREQUEST);
+            final SyncState syncState = getSyncState(reponode, EdgeType.PULLREQUEST);
+            syncState.add(request.getNumber());
+
+            PullRequestMarker head = request.getHead();
+            if (head != null) {
+                Vertex headnode = savePullRequestMarker(head);
+                createEdgeIfNotExist(pullnode, headnode, EdgeType.PULLREQUESTHEAD);
+            }
+            PullRequestMarker base = request.getBase();
+            if (base != null) {
+                Vertex basenode = savePullRequestMarker(base);
+                createEdgeIfNotExist(pullnode, basenode, EdgeType.PULLREQUESTBASE);
+            }
+
+            if (full) {
+                Date now = new Date();
+                setPropertyIfChanged(pullnode, PropertyName.SYS_DISCUSSIONS_ADDED.toString(), now);
+                setPropertyIfChanged(pullnode, PropertyName.SYS_UPDATE_COMPLETE.toString(), now);
+                syncState.set(request.getNumber(), PropertyName.SYS_DISCUSSIONS_ADDED, now.getTime() / 1000L);
+            }
+
+            success = true;
+            return pullnode;
+        } finally {
+            endBatch(success);
+        }
     }
 
     /**
@@ -1275,6 +2392,7 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         for (String user : users) {
             Vertex node = getOrCreateUser(user);
             createEdgeIfNotExist(null, node, proj, EdgeType.REPOWATCHED);
+            getRepositoryMembers(proj).add(user, RepositoryMembers.WATCHER);
             mapper.put(user, node);
         }
         return mapper;
@@ -1296,20 +2414,28 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         for (User user : watchers) {
             Vertex userVtx = getOrCreateUser(user);
             createEdgeIfNotExist(null, userVtx, repoVtx, EdgeType.REPOWATCHED);
+            addRepositoryMember(repoVtx, user, RepositoryMembers.WATCHER);
             mapper.put(user, userVtx);
         }
         return mapper;
     }
     
     public Vertex saveTeam(final Team team) {
-        Vertex node = getOrCreateTeam(team);
-        setProperty(node, PropertyName.NAME, team.getName());
-        setProperty(node, PropertyName.PERMISSION, team.getPermission());
-        setProperty(node, PropertyName.GITHUB_ID, team.getId());
-        setProperty(node, PropertyName.URL, team.getUrl());
-        setProperty(node, PropertyName.MEMBERS, team.getMembersCount());
-        setProperty(node, PropertyName.REPOSITORIES, team.getReposCount());
-        return node;
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex node = getOrCreateTeam(team);
+            setPropertyIfChanged(node, PropertyName.NAME, team.getName());
+            setPropertyIfChanged(node, PropertyName.PERMISSION, team.getPermission());
+            setPropertyIfChanged(node, PropertyName.GITHUB_ID, team.getId());
+            setPropertyIfChanged(node, PropertyName.URL, team.getUrl());
+            setPropertyIfChanged(node, PropertyName.MEMBERS, team.getMembersCount());
+            setPropertyIfChanged(node, PropertyName.REPOSITORIES, team.getReposCount());
+            success = true;
+            return node;
+        } finally {
+            endBatch(success);
+        }
     }
 
     public Map<User,Vertex> saveTeamMembers(final Team team, final List<User> users) {
@@ -1336,66 +2462,80 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
     }
 
     private Vertex saveUser(final CommitUser user) {
-        String sName = user.getName();
-        String sEmail = user.getEmail();
-        Vertex gitUser = getOrCreateGitUser( sName, sEmail );
-        if (sName != null) {
-            Vertex vName = getOrCreateName( sName );
-            createEdgeIfNotExist( gitUser, vName, EdgeType.NAME );
-        }
-        if (sEmail != null) {
-            Vertex vEmail = getOrCreateEmail( sEmail );
-            createEdgeIfNotExist( gitUser, vEmail, EdgeType.EMAIL );
+        beginBatch();
+        boolean success = false;
+        try {
+            String sName = user.getName();
+            String sEmail = user.getEmail();
+            Vertex gitUser = getOrCreateGitUser( sName, sEmail );
+            if (sName != null) {
+                Vertex vName = getOrCreateName( sName );
+                createEdgeIfNotExist( gitUser, vName, EdgeType.NAME );
+            }
+            if (sEmail != null) {
+                Vertex vEmail = getOrCreateEmail( sEmail );
+                createEdgeIfNotExist( gitUser, vEmail, EdgeType.EMAIL );
+            }
+            success = true;
+            return gitUser;
+        } finally {
+            endBatch(success);
         }
-        return gitUser;
     }
 
     public Vertex saveUser(final User user, final boolean overwrite) {
-        Vertex node = getOrCreateUser(user.getLogin());
-        log.debug("Saving User: {}", user.getLogin());
-
-        setProperty(node, PropertyName.BIOGRAPHY, user.getBiography());
-        setProperty(node, PropertyName.BLOG, user.getBlog());
-        setProperty(node, PropertyName.COMPANY, user.getCompany());
-        setProperty(node, PropertyName.CREATED_AT, user.getCreatedAt());
-        if (user.getEmail() != null && !user.getEmail().trim().equals("")) {
-            setProperty(node, PropertyName.EMAIL, user.getEmail());
-            Vertex email = getOrCreateEmail(user.getEmail());
-            createEdgeIfNotExist(node, email, EdgeType.EMAIL);
-        }
-        // these are all properties that tend to be 0 when non-full information is passed
-        // thus we need to ignore them unless we're doing a full update
-        if (overwrite) {
-            setProperty(node, PropertyName.DISK_USAGE, user.getDiskUsage());
-            setProperty(node, PropertyName.COLLABORATORS, user.getCollaborators());
-            setProperty(node, PropertyName.FOLLOWERS, user.getFollowers());
-            setProperty(node, PropertyName.FOLLOWING, user.getFollowing());
-            setProperty(node, PropertyName.OWNED_PRIVATE_REPO_COUNT, user.getOwnedPrivateRepos());
-            setProperty(node, PropertyName.PRIVATE_GIST_COUNT, user.getPrivateGists());
-            setProperty(node, PropertyName.PUBLIC_GIST_COUNT, user.getPublicGists());
-            setProperty(node, PropertyName.PUBLIC_REPO_COUNT, user.getPublicRepos());
-            setProperty(node, PropertyName.TOTAL_PRIVATE_REPO_COUNT, user.getTotalPrivateRepos());
-            setProperty(node, PropertyName.SYS_LAST_FULL_UPDATE.toString(), new Date());
-        }
-        setProperty(node, PropertyName.URL, user.getUrl());
-        setProperty(node, PropertyName.FULLNAME, user.getName());
-        if (user.getAvatarUrl() != null && !user.getAvatarUrl().trim().equals("")) {
-            setProperty(node, PropertyName.GRAVATAR_ID, user.getAvatarUrl());
-            Vertex gravatarVtx = saveGravatar(user.getAvatarUrl());
-            createEdgeIfNotExist(node, gravatarVtx, EdgeType.GRAVATAR);
-        }
-        setProperty(node, PropertyName.GITHUB_ID, user.getId()); // note name change
-        setProperty(node, PropertyName.LOCATION, user.getLocation());
-        setProperty(node, PropertyName.LOGIN, user.getLogin());
-        setProperty(node, PropertyName.NAME, user.getName());
-        setProperty(node, PropertyName.USER_TYPE, user.getType());
-        setProperty(node, PropertyName.SYS_LAST_UPDATED.toString(), new Date());
-        // getPermission
-        // getPlan
-
-        // FIXME: I don't think there is a getUsername method in the v3 api
-        //		setProperty(node, PropertyName.USERNAME, user.getUsername());
-        return node;
+        beginBatch();
+        boolean success = false;
+        try {
+            Vertex node = getOrCreateUser(user.getLogin());
+            log.debug("Saving User: {}", user.getLogin());
+
+            setPropertyIfChanged(node, PropertyName.BIOGRAPHY, user.getBiography());
+            setPropertyIfChanged(node, PropertyName.BLOG, user.getBlog());
+            setPropertyIfChanged(node, PropertyName.COMPANY, user.getCompany());
+            setPropertyIfChanged(node, PropertyName.CREATED_AT, user.getCreatedAt());
+            if (user.getEmail() != null && !user.getEmail().trim().equals("")) {
+                setPropertyIfChanged(node, PropertyName.EMAIL, user.getEmail());
+                Vertex email = getOrCreateEmail(user.getEmail());
+                createEdgeIfNotExist(node, email, EdgeType.EMAIL);
+            }
+            // these are all properties that tend to be 0 when non-full information is passed
+            // thus we need to ignore them unless we're doing a full update
+            if (overwrite) {
+                setPropertyIfChanged(node, PropertyName.DISK_USAGE, user.getDiskUsage());
+                setPropertyIfChanged(node, PropertyName.COLLABORATORS, user.getCollaborators());
+                setPropertyIfChanged(node, PropertyName.FOLLOWERS, user.getFollowers());
+                setPropertyIfChanged(node, PropertyName.FOLLOWING, user.getFollowing());
+                setPropertyIfChanged(node, PropertyName.OWNED_PRIVATE_REPO_COUNT, user.getOwnedPrivateRepos());
+                setPropertyIfChanged(node, PropertyName.PRIVATE_GIST_COUNT, user.getPrivateGists());
+                setPropertyIfChanged(node, PropertyName.PUBLIC_GIST_COUNT, user.getPublicGists());
+                setPropertyIfChanged(node, PropertyName.PUBLIC_REPO_COUNT, user.getPublicRepos());
+                setPropertyIfChanged(node, PropertyName.TOTAL_PRIVATE_REPO_COUNT, user.getTotalPrivateRepos());
+                setPropertyIfChanged(node, PropertyName.SYS_LAST_FULL_UPDATE.toString(), new Date());
+            }
+            setPropertyIfChanged(node, PropertyName.URL, user.getUrl());
+            setPropertyIfChanged(node, PropertyName.FULLNAME, user.getName());
+            if (user.getAvatarUrl() != null && !user.getAvatarUrl().trim().equals("")) {
+                setPropertyIfChanged(node, PropertyName.GRAVATAR_ID, user.getAvatarUrl());
+                Vertex gravatarVtx = saveGravatar(user.getAvatarUrl());
+                createEdgeIfNotExist(node, gravatarVtx, EdgeType.GRAVATAR);
+            }
+            setPropertyIfChanged(node, PropertyName.GITHUB_ID, user.getId()); // note name change
+            setPropertyIfChanged(node, PropertyName.LOCATION, user.getLocation());
+            setPropertyIfChanged(node, PropertyName.LOGIN, user.getLogin());
+            setPropertyIfChanged(node, PropertyName.NAME, user.getName());
+            setPropertyIfChanged(node, PropertyName.USER_TYPE, user.getType());
+            setPropertyIfChanged(node, PropertyName.SYS_LAST_UPDATED.toString(), new Date());
+            // getPermission
+            // getPlan
+
+            // FIXME: I don't think there is a getUsername method in the v3 api
+            //		setProperty(node, PropertyName.USERNAME, user.getUsername());
+            success = true;
+            return node;
+        } finally {
+            endBatch(success);
+        }
     }
 
     /**
@@ -1451,7 +2591,7 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
                 mapper.put(gist, gistnode);
             }
         }
-        setProperty(usernode, PropertyName.SYS_GISTS_ADDED, new Date());
+        setPropertyIfChanged(usernode, PropertyName.SYS_GISTS_ADDED, new Date());
         return mapper;
     }
 
@@ -1469,6 +2609,9 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
             Vertex reponode = saveRepository(repo);
             if (reponode != null) {
                 createEdgeIfNotExist(null, source, reponode, edgetype);
+                if (edgetype.equals(EdgeType.REPOWATCHED)) {
+                    getRepositoryMembers(reponode).add(user, RepositoryMembers.WATCHER);
+                }
                 mapper.put(repo, reponode);
             }
         }
@@ -1485,209 +2628,216 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
         for (Event event : events) {
             saveEvent(user, event);
         }
-        setProperty(user, PropertyName.SYS_EVENTS_ADDED, new Date());
+        setPropertyIfChanged(user, PropertyName.SYS_EVENTS_ADDED, new Date());
     }
     
     public Vertex saveEvent(final Vertex user, final Event event) {
-        String eventType = event.getType();
-        Vertex eventVertex = getOrCreateEvent(event);
-        Vertex repoVertex = null;
-        if (event.getActor() != null && event.getActor().getLogin() != null) {
-            Vertex userVertex = getOrCreateUser(event.getActor());
-            createEdgeIfNotExist(userVertex, eventVertex, EdgeType.USEREVENT);
-        }
+        beginBatch();
+        boolean success = false;
+        try {
+            String eventType = event.getType();
+            Vertex eventVertex = getOrCreateEvent(event);
+            Vertex repoVertex = null;
+            if (event.getActor() != null && event.getActor().getLogin() != null) {
+                Vertex userVertex = getOrCreateUser(event.getActor());
+                createEdgeIfNotExist(userVertex, eventVertex, EdgeType.USEREVENT);
+            }
         
-        setProperty(eventVertex, PropertyName.CREATED_AT, event.getCreatedAt());
-        if (event.getOrg() != null) {
-            Vertex orgVertex = getOrCreateUser(event.getOrg());
-            createEdgeIfNotExist(orgVertex, eventVertex, EdgeType.USEREVENT);
-        }
+            setPropertyIfChanged(eventVertex, PropertyName.CREATED_AT, event.getCreatedAt());
+            if (event.getOrg() != null) {
+                Vertex orgVertex = getOrCreateUser(event.getOrg());
+                createEdgeIfNotExist(orgVertex, eventVertex, EdgeType.USEREVENT);
+            }
         
-        if (event.getRepo() != null) {
-            repoVertex = getOrCreateRepository(event.getRepo());
-            setProperty(repoVertex, PropertyName.GITHUB_ID, event.getRepo().getId());
-            setProperty(repoVertex, PropertyName.FULLNAME, event.getRepo().getName());
-            setProperty(repoVertex, PropertyName.URL, event.getRepo().getUrl());
-            createEdgeIfNotExist(eventVertex, repoVertex, EdgeType.EVENTREPO);
-        }
+            if (event.getRepo() != null) {
+                repoVertex = getOrCreateRepository(event.getRepo());
+                setPropertyIfChanged(repoVertex, PropertyName.GITHUB_ID, event.getRepo().getId());
+                setPropertyIfChanged(repoVertex, PropertyName.FULLNAME, event.getRepo().getName());
+                setPropertyIfChanged(repoVertex, PropertyName.URL, event.getRepo().getUrl());
+                createEdgeIfNotExist(eventVertex, repoVertex, EdgeType.EVENTREPO);
+            }
         
-        setProperty(eventVertex, PropertyName.EVENT_TYPE, event.getType());
+            setPropertyIfChanged(eventVertex, PropertyName.EVENT_TYPE, event.getType());
         
-        // Please Java7 become standard soon...
-        if (eventType.equals(EventType.COMMIT_COMMENT_EVENT)) {
-            CommitCommentPayload ccp = (CommitCommentPayload)event.getPayload();
-            if (ccp.getComment() != null) {
-                CommitComment comment = ccp.getComment();
-                Vertex commitCommentVertex = saveCommitComment(repoVertex, comment);
-                createEdgeIfNotExist(eventVertex, commitCommentVertex, EdgeType.EVENTCOMMITCOMMENT);
-            }
-        } else if (eventType.equals(EventType.CREATE_EVENT)) {
-            CreatePayload cp = (CreatePayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.DESCRIPTION, cp.getDescription());
-            setProperty(eventVertex, PropertyName.MASTER_BRANCH, cp.getMasterBranch());
-            setProperty(eventVertex, PropertyName.REF, cp.getRef());
-            setProperty(eventVertex, PropertyName.REF_TYPE, cp.getRefType());
-        } else if (eventType.equals(EventType.DELETE_EVENT)) {
-            DeletePayload dp = (DeletePayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.REF, dp.getRef());
-            setProperty(eventVertex, PropertyName.REF_TYPE, dp.getRefType());
-        } else if (eventType.equals(EventType.DOWNLOAD_EVENT)) {
-            DownloadPayload dp = (DownloadPayload)event.getPayload();
-            if (dp.getDownload() != null) {
-                Vertex downloadVtx = saveDownload(dp.getDownload());
-                createEdgeIfNotExist(eventVertex, downloadVtx, EdgeType.EVENTDOWNLOAD);
-            }
-        } else if (eventType.equals(EventType.FOLLOW_EVENT)) {
-            FollowPayload fp = (FollowPayload)event.getPayload();
-            if (fp.getTarget() != null) {
-                Vertex targetVtx = saveUser(fp.getTarget());
-                createEdgeIfNotExist(eventVertex, targetVtx, EdgeType.EVENTFOLLOWUSER);
-            }
-        } else if (eventType.equals(EventType.FORK_APPLY_EVENT)) {
-            ForkApplyPayload fap = (ForkApplyPayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.AFTER, fap.getAfter());
-            setProperty(eventVertex, PropertyName.BEFORE, fap.getBefore());
-            setProperty(eventVertex, PropertyName.HEAD, fap.getHead());
-        } else if (eventType.equals(EventType.FORK_EVENT)) {
-            ForkPayload fp = (ForkPayload)event.getPayload();
-            Repository forkee = fp.getForkee();
-            if (forkee != null) {
+            // Please Java7 become standard soon...
+            if (eventType.equals(EventType.COMMIT_COMMENT_EVENT)) {
+                CommitCommentPayload ccp = (CommitCommentPayload)event.getPayload();
+                if (ccp.getComment() != null) {
+                    CommitComment comment = ccp.getComment();
+                    Vertex commitCommentVertex = saveCommitComment(repoVertex, comment);
+                    createEdgeIfNotExist(eventVertex, commitCommentVertex, EdgeType.EVENTCOMMITCOMMENT);
+                }
+            } else if (eventType.equals(EventType.CREATE_EVENT)) {
+                CreatePayload cp = (CreatePayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.DESCRIPTION, cp.getDescription());
+                setPropertyIfChanged(eventVertex, PropertyName.MASTER_BRANCH, cp.getMasterBranch());
+                setPropertyIfChanged(eventVertex, PropertyName.REF, cp.getRef());
+                setPropertyIfChanged(eventVertex, PropertyName.REF_TYPE, cp.getRefType());
+            } else if (eventType.equals(EventType.DELETE_EVENT)) {
+                DeletePayload dp = (DeletePayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.REF, dp.getRef());
+                setPropertyIfChanged(eventVertex, PropertyName.REF_TYPE, dp.getRefType());
+            } else if (eventType.equals(EventType.DOWNLOAD_EVENT)) {
+                DownloadPayload dp = (DownloadPayload)event.getPayload();
+                if (dp.getDownload() != null) {
+                    Vertex downloadVtx = saveDownload(dp.getDownload());
+                    createEdgeIfNotExist(eventVertex, downloadVtx, EdgeType.EVENTDOWNLOAD);
+                }
+            } else if (eventType.equals(EventType.FOLLOW_EVENT)) {
+                FollowPayload fp = (FollowPayload)event.getPayload();
+                if (fp.getTarget() != null) {
+                    Vertex targetVtx = saveUser(fp.getTarget());
+                    createEdgeIfNotExist(eventVertex, targetVtx, EdgeType.EVENTFOLLOWUSER);
+                }
+            } else if (eventType.equals(EventType.FORK_APPLY_EVENT)) {
+                ForkApplyPayload fap = (ForkApplyPayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.AFTER, fap.getAfter());
+                setPropertyIfChanged(eventVertex, PropertyName.BEFORE, fap.getBefore());
+                setPropertyIfChanged(eventVertex, PropertyName.HEAD, fap.getHead());
+            } else if (eventType.equals(EventType.FORK_EVENT)) {
+                ForkPayload fp = (ForkPayload)event.getPayload();
+                Repository forkee = fp.getForkee();
+                if (forkee != null) {
                
-                if (forkee.generateId() != null) {
-                    Vertex forkeeVtx = saveRepository(fp.getForkee());
-                    createEdgeIfNotExist(eventVertex, forkeeVtx, EdgeType.EVENTFORKEE);
-                } else {
-                    if (forkee.getName() != null && forkee.getName().indexOf("/") != -1) {
-                        Vertex forkeeVtx = getOrCreateRepository(forkee.getName());
-                        createEdgeIfNotExist(eventVertex, forkeeVtx, EdgeType.EVENTFORKEE);                    
+                    if (forkee.generateId() != null) {
+                        Vertex forkeeVtx = saveRepository(fp.getForkee());
+                        createEdgeIfNotExist(eventVertex, forkeeVtx, EdgeType.EVENTFORKEE);
                     } else {
-                        // FIXME: getName() appears to work, generateId() returns null
-                        User u = forkee.getOwner();
-                        String owner = null;
-                        if (u != null) { 
-                            owner = u.getName();
+                        if (forkee.getName() != null && forkee.getName().indexOf("/") != -1) {
+                            Vertex forkeeVtx = getOrCreateRepository(forkee.getName());
+                            createEdgeIfNotExist(eventVertex, forkeeVtx, EdgeType.EVENTFORKEE);                    
+                        } else {
+                            // FIXME: getName() appears to work, generateId() returns null
+                            User u = forkee.getOwner();
+                            String owner = null;
+                            if (u != null) { 
+                                owner = u.getName();
+                            }
+                            log.warn("Issue with forkee repository id: {}, {}", forkee.getName(), owner);
                         }
-                        log.warn("Issue with forkee repository id: {}, {}", forkee.getName(), owner);
                     }
                 }
-            }
-        } else if (eventType.equals(EventType.GIST_EVENT)) {
-            GistPayload gp = (GistPayload)event.getPayload();
-            if (gp.getGist() != null) {
-                Vertex gistVtx = saveGist(gp.getGist());
-                createEdgeIfNotExist(eventVertex, gistVtx, EdgeType.EVENTGIST);
-            }
-        } else if (eventType.equals(EventType.GOLLUM_EVENT)) {
-            GollumPayload gp = (GollumPayload)event.getPayload();
-            if (gp != null && gp.getPages() != null) {
-                for (GollumPage page : gp.getPages()) {
-                    // FIXME: ignore gollum pages where HtmlUrl is null
-                    // this should be dealt with somehow
-                    if (page.getHtmlUrl() != null) {
-                        Vertex pageVtx = saveGollumPage(page);
-                        createEdgeIfNotExist(eventVertex, pageVtx, EdgeType.EVENTGOLLUM);
+            } else if (eventType.equals(EventType.GIST_EVENT)) {
+                GistPayload gp = (GistPayload)event.getPayload();
+                if (gp.getGist() != null) {
+                    Vertex gistVtx = saveGist(gp.getGist());
+                    createEdgeIfNotExist(eventVertex, gistVtx, EdgeType.EVENTGIST);
+                }
+            } else if (eventType.equals(EventType.GOLLUM_EVENT)) {
+                GollumPayload gp = (GollumPayload)event.getPayload();
+                if (gp != null && gp.getPages() != null) {
+                    for (GollumPage page : gp.getPages()) {
+                        // FIXME: ignore gollum pages where HtmlUrl is null
+                        // this should be dealt with somehow
+                        if (page.getHtmlUrl() != null) {
+                            Vertex pageVtx = saveGollumPage(page);
+                            createEdgeIfNotExist(eventVertex, pageVtx, EdgeType.EVENTGOLLUM);
+                        }
                     }
                 }
-            }
-        } else if (eventType.equals(EventType.ISSUE_COMMENT_EVENT)) {
-            IssueCommentPayload icp = (IssueCommentPayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.ACTION, icp.getAction());
-            if (icp.getIssue() != null && repoVertex != null) {
-                Vertex issueVertex = saveIssue(repoVertex, icp.getIssue());
-                createEdgeIfNotExist(eventVertex, issueVertex, EdgeType.EVENTISSUE);
+            } else if (eventType.equals(EventType.ISSUE_COMMENT_EVENT)) {
+                IssueCommentPayload icp = (IssueCommentPayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.ACTION, icp.getAction());
+                if (icp.getIssue() != null && repoVertex != null) {
+                    Vertex issueVertex = saveIssue(repoVertex, icp.getIssue());
+                    createEdgeIfNotExist(eventVertex, issueVertex, EdgeType.EVENTISSUE);
            
-                if (icp.getComment() != null) {
-                    Vertex commentVertex = saveIssueComment(icp.getComment());
-                    createEdgeIfNotExist(issueVertex, commentVertex, EdgeType.ISSUECOMMENT);
-                    createEdgeIfNotExist(eventVertex, commentVertex, EdgeType.EVENTCOMMENT);
+                    if (icp.getComment() != null) {
+                        Vertex commentVertex = saveIssueComment(icp.getComment());
+                        createEdgeIfNotExist(issueVertex, commentVertex, EdgeType.ISSUECOMMENT);
+                        createEdgeIfNotExist(eventVertex, commentVertex, EdgeType.EVENTCOMMENT);
+                    }
                 }
-            }
-        } else if (eventType.equals(EventType.ISSUES_EVENT)) {
-            IssuesPayload ip = (IssuesPayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.EVENT_ACTION, ip.getAction());
-            if (ip.getIssue() != null && repoVertex != null) {
-                Vertex issueVertex = saveIssue(repoVertex, ip.getIssue());
-                createEdgeIfNotExist(eventVertex, issueVertex, EdgeType.EVENTISSUE);
-            }
-        } else if (eventType.equals(EventType.MEMBER_EVENT)) {
-            MemberPayload mp = (MemberPayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.EVENT_ACTION, mp.getAction());
-            if (mp.getMember() != null) {
-                Vertex userVtx = saveUser(mp.getMember());
-                createEdgeIfNotExist(eventVertex, userVtx, EdgeType.EVENTMEMBER);
-            }
-        } else if (eventType.equals(EventType.PUBLIC_EVENT)) {
-            // nothing to do for PUBLIC_EVENT
-            log.trace("Ignoring payload for PUBLIC_EVENT");
-        } else if (eventType.equals(EventType.PULL_REQUEST_EVENT)) {
-            PullRequestPayload prp = (PullRequestPayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.EVENT_ACTION, prp.getAction());
-            setProperty(eventVertex, PropertyName.NUMBER, prp.getNumber());
-            if (prp.getPullRequest() != null && repoVertex != null) {
-                Vertex pullVertex = savePullRequest(repoVertex, prp.getPullRequest());
-                createEdgeIfNotExist(eventVertex, pullVertex, EdgeType.EVENTPULLREQUEST);
-            }
-        } else if (eventType.equals(EventType.PULL_REQUEST_REVIEW_COMMENT_EVENT)) {
-            // FIXME: I have no idea what the payload type should be here
-            log.warn("Ignoring payload for PULL_REQUEST_REVIEW_COMMENT_EVENT");
-        } else if (eventType.equals(EventType.PUSH_EVENT)) {
-            PushPayload pp = (PushPayload)event.getPayload();
-            if (pp.getCommits() != null && repoVertex != null) {
-                for (Commit commit : pp.getCommits()) {
-                    Vertex commitVertex = saveCommit(commit);
-                    createEdgeIfNotExist(eventVertex, commitVertex, EdgeType.EVENTCOMMIT);
-                    createEdgeIfNotExist(commitVertex, repoVertex, EdgeType.REPOSITORY);
+            } else if (eventType.equals(EventType.ISSUES_EVENT)) {
+                IssuesPayload ip = (IssuesPayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.EVENT_ACTION, ip.getAction());
+                if (ip.getIssue() != null && repoVertex != null) {
+                    Vertex issueVertex = saveIssue(repoVertex, ip.getIssue());
+                    createEdgeIfNotExist(eventVertex, issueVertex, EdgeType.EVENTISSUE);
+                }
+            } else if (eventType.equals(EventType.MEMBER_EVENT)) {
+                MemberPayload mp = (MemberPayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.EVENT_ACTION, mp.getAction());
+                if (mp.getMember() != null) {
+                    Vertex userVtx = saveUser(mp.getMember());
+                    createEdgeIfNotExist(eventVertex, userVtx, EdgeType.EVENTMEMBER);
+                }
+            } else if (eventType.equals(EventType.PUBLIC_EVENT)) {
+                // nothing to do for PUBLIC_EVENT
+                log.trace("Ignoring payload for PUBLIC_EVENT");
+            } else if (eventType.equals(EventType.PULL_REQUEST_EVENT)) {
+                PullRequestPayload prp = (PullRequestPayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.EVENT_ACTION, prp.getAction());
+                setPropertyIfChanged(eventVertex, PropertyName.NUMBER, prp.getNumber());
+                if (prp.getPullRequest() != null && repoVertex != null) {
+                    Vertex pullVertex = savePullRequest(repoVertex, prp.getPullRequest());
+                    createEdgeIfNotExist(eventVertex, pullVertex, EdgeType.EVENTPULLREQUEST);
+                }
+            } else if (eventType.equals(EventType.PULL_REQUEST_REVIEW_COMMENT_EVENT)) {
+                // FIXME: I have no idea what the payload type should be here
+                log.warn("Ignoring payload for PULL_REQUEST_REVIEW_COMMENT_EVENT");
+            } else if (eventType.equals(EventType.PUSH_EVENT)) {
+                PushPayload pp = (PushPayload)event.getPayload();
+                if (pp.getCommits() != null && repoVertex != null) {
+                    for (Commit commit : pp.getCommits()) {
+                        Vertex commitVertex = saveCommit(commit);
+                        createEdgeIfNotExist(eventVertex, commitVertex, EdgeType.EVENTCOMMIT);
+                        createEdgeIfNotExist(commitVertex, repoVertex, EdgeType.REPOSITORY);
+                    }
                 }
-            }
             
-            setProperty(eventVertex, PropertyName.HEAD, pp.getHead());
-            setProperty(eventVertex, PropertyName.REF, pp.getRef());
-            setProperty(eventVertex, PropertyName.SIZE, pp.getSize());
-        } else if (eventType.equals(EventType.TEAM_ADD_EVENT)) {
-            TeamAddPayload tap = (TeamAddPayload)event.getPayload();
-            if (tap.getRepo() != null) {
-                Vertex repoVtx = saveRepository(tap.getRepo());
-                createEdgeIfNotExist(eventVertex, repoVtx, EdgeType.EVENTPAYLOADREPO);
-            }
-            if (tap.getTeam() != null) {
-                Vertex teamVtx = saveTeam(tap.getTeam());
-                createEdgeIfNotExist(eventVertex, teamVtx, EdgeType.EVENTTEAM);
-            }
-            if (tap.getUser() != null) {
-                Vertex userVtx = saveUser(tap.getUser());
-                createEdgeIfNotExist(eventVertex, userVtx, EdgeType.EVENTUSER);
-            }            
-        } else if (eventType.equals(EventType.WATCH_EVENT)) {
-            WatchPayload wp = (WatchPayload)event.getPayload();
-            setProperty(eventVertex, PropertyName.EVENT_ACTION, wp.getAction());
-        } else {
-            log.warn("Unhandled event type: {}", eventType);
+                setPropertyIfChanged(eventVertex, PropertyName.HEAD, pp.getHead());
+                setPropertyIfChanged(eventVertex, PropertyName.REF, pp.getRef());
+                setPropertyIfChanged(eventVertex, PropertyName.SIZE, pp.getSize());
+            } else if (eventType.equals(EventType.TEAM_ADD_EVENT)) {
+                TeamAddPayload tap = (TeamAddPayload)event.getPayload();
+                if (tap.getRepo() != null) {
+                    Vertex repoVtx = saveRepository(tap.getRepo());
+                    createEdgeIfNotExist(eventVertex, repoVtx, EdgeType.EVENTPAYLOADREPO);
+                }
+                if (tap.getTeam() != null) {
+                    Vertex teamVtx = saveTeam(tap.getTeam());
+                    createEdgeIfNotExist(eventVertex, teamVtx, EdgeType.EVENTTEAM);
+                }
+                if (tap.getUser() != null) {
+                    Vertex userVtx = saveUser(tap.getUser());
+                    createEdgeIfNotExist(eventVertex, userVtx, EdgeType.EVENTUSER);
+                }            
+            } else if (eventType.equals(EventType.WATCH_EVENT)) {
+                WatchPayload wp = (WatchPayload)event.getPayload();
+                setPropertyIfChanged(eventVertex, PropertyName.EVENT_ACTION, wp.getAction());
+            } else {
+                log.warn("Unhandled event type: {}", eventType);
+            }
+            // log.warn("Event: {} type: {}", event.getId(), event.getType());
+            // log.warn("Payload: {}", event.getPayload().toString());
+            success = true;
+            return eventVertex;
+        } finally {
+            endBatch(success);
         }
-        // log.warn("Event: {} type: {}", event.getId(), event.getType());
-        // log.warn("Payload: {}", event.getPayload().toString());
-        return eventVertex;
     }
 
     private Vertex saveDownload(Download download) {
         Vertex downloadVtx = getOrCreateDownload(download);
-        setProperty(downloadVtx, PropertyName.CONTENT_TYPE, download.getContentType());
-        setProperty(downloadVtx, PropertyName.DESCRIPTION, download.getDescription());
-        setProperty(downloadVtx, PropertyName.DOWNLOAD_COUNT, download.getDownloadCount());
-        setProperty(downloadVtx, PropertyName.HTML_URL, download.getHtmlUrl());
-        setProperty(downloadVtx, PropertyName.GITHUB_ID, download.getId());
-        setProperty(downloadVtx, PropertyName.NAME, download.getName());
-        setProperty(downloadVtx, PropertyName.SIZE, download.getSize());
-        setProperty(downloadVtx, PropertyName.URL, download.getUrl());
+        setPropertyIfChanged(downloadVtx, PropertyName.CONTENT_TYPE, download.getContentType());
+        setPropertyIfChanged(downloadVtx, PropertyName.DESCRIPTION, download.getDescription());
+        setPropertyIfChanged(downloadVtx, PropertyName.DOWNLOAD_COUNT, download.getDownloadCount());
+        setPropertyIfChanged(downloadVtx, PropertyName.HTML_URL, download.getHtmlUrl());
+        setPropertyIfChanged(downloadVtx, PropertyName.GITHUB_ID, download.getId());
+        setPropertyIfChanged(downloadVtx, PropertyName.NAME, download.getName());
+        setPropertyIfChanged(downloadVtx, PropertyName.SIZE, download.getSize());
+        setPropertyIfChanged(downloadVtx, PropertyName.URL, download.getUrl());
         return downloadVtx;
     }
 
     private Vertex saveGollumPage(GollumPage page) {
         Vertex gollumPage = getOrCreateGolumPage(page);
-        setProperty(gollumPage, PropertyName.ACTION, page.getAction());
-        setProperty(gollumPage, PropertyName.HTML_URL, page.getHtmlUrl());
-        setProperty(gollumPage, PropertyName.NAME, page.getPageName());
-        setProperty(gollumPage, PropertyName.TITLE, page.getTitle());
-        setProperty(gollumPage, PropertyName.SHA, page.getSha());
+        setPropertyIfChanged(gollumPage, PropertyName.ACTION, page.getAction());
+        setPropertyIfChanged(gollumPage, PropertyName.HTML_URL, page.getHtmlUrl());
+        setPropertyIfChanged(gollumPage, PropertyName.NAME, page.getPageName());
+        setPropertyIfChanged(gollumPage, PropertyName.TITLE, page.getTitle());
+        setPropertyIfChanged(gollumPage, PropertyName.SHA, page.getSha());
         return gollumPage;
     }
 
@@ -1704,10 +2854,10 @@ public class BlueprintsDriver extends BlueprintsBase implements Shutdownable {
      */
     private Vertex saveCommitComment(Vertex repoVertex, CommitComment comment) {
         Vertex commentVtx = saveCommentHelper(comment, EdgeType.COMMITCOMMENTOWNER);
-        setProperty(commentVtx, PropertyName.COMMIT_ID, comment.getCommitId());
-        setProperty(commentVtx, PropertyName.LINE, comment.getLine());
-        setProperty(commentVtx, PropertyName.PATH, comment.getPath());
-        setProperty(commentVtx, PropertyName.POSITION, comment.getPosition());
+        setPropertyIfChanged(commentVtx, PropertyName.COMMIT_ID, comment.getCommitId());
+        setPropertyIfChanged(commentVtx, PropertyName.LINE, comment.getLine());
+        setPropertyIfChanged(commentVtx, PropertyName.PATH, comment.getPath());
+        setPropertyIfChanged(commentVtx, PropertyName.POSITION, comment.getPosition());
         if (repoVertex != null) {
             createEdgeIfNotExist(commentVtx, repoVertex, EdgeType.COMMITCOMMENTREPO);
         }
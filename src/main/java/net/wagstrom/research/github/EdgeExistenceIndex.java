@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.CloseableIterable;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Index;
+import com.tinkerpop.blueprints.IndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A manual edge index keyed on (out vertex, label, in vertex).
+ *
+ * Checking whether an edge exists by walking the edges of a vertex is
+ * linear in the degree of the vertex, which makes loading supernodes
+ * quadratic. With this index the check is a single lookup.
+ *
+ * Databases created before the index existed are migrated lazily: the
+ * first time a vertex is used as the out vertex its existing out edges are
+ * added to the index and the vertex is flagged with
+ * {@link PropertyName#SYS_EDGES_INDEXED}. After that the vertex is never
+ * scanned again.
+ *
+ * Because flagged vertices are only looked up in the index, every edge
+ * must either be created through {@link BlueprintsDriver} or be added with
+ * {@link #put(Edge)} right after it is created. Scripts that can't do that
+ * must call {@link #invalidate(Vertex)} on the out vertex of every edge
+ * they add, otherwise the next run creates a duplicate of the edge.
+ */
+public class EdgeExistenceIndex {
+    private static final Logger log = LoggerFactory.getLogger(EdgeExistenceIndex.class); // NOPMD
+    private static final String KEY = "edge";
+
+    private final Index<Edge> index;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong migratedVertices = new AtomicLong();
+    private final AtomicLong migratedEdges = new AtomicLong();
+
+    public EdgeExistenceIndex(final IndexableGraph graph) {
+        Index<Edge> idx = graph.getIndex(IndexNames.EDGE, Edge.class);
+        if (idx == null) {
+            idx = graph.createIndex(IndexNames.EDGE, Edge.class);
+        }
+        index = idx;
+    }
+
+    /**
+     * @return the key used for an edge in the index
+     */
+    public static String key(final Object outId, final String label, final Object inId) {
+        return outId + ":" + label + ":" + inId;
+    }
+
+    /**
+     * Finds an existing edge
+     *
+     * @return the edge or null if there is no such edge
+     */
+    public Edge get(final Vertex outVertex, final Vertex inVertex, final String label) {
+        if (outVertex.getProperty(PropertyName.SYS_EDGES_INDEXED) == null) {
+            migrate(outVertex);
+        }
+        lookups.incrementAndGet();
+        final CloseableIterable<Edge> hits = index.get(KEY, key(outVertex.getId(), label, inVertex.getId()));
+        try {
+            final Iterator<Edge> it = hits.iterator();
+            return it.hasNext() ? it.next() : null;
+        } finally {
+            hits.close();
+        }
+    }
+
+    /**
+     * Adds a newly created edge to the index
+     */
+    public void put(final Edge edge) {
+        index.put(KEY, key(edge.getVertex(Direction.OUT).getId(), edge.getLabel(),
+                edge.getVertex(Direction.IN).getId()), edge);
+    }
+
+    /**
+     * Drops the flag of a vertex whose edges were changed outside of the
+     * index, so its out edges are indexed again the next time it is used
+     *
+     * Edges that were indexed already are put into the index a second
+     * time, which does not change any lookup.
+     */
+    public static void invalidate(final Vertex vertex) {
+        if (vertex.getProperty(PropertyName.SYS_EDGES_INDEXED) != null) {
+            vertex.removeProperty(PropertyName.SYS_EDGES_INDEXED);
+        }
+    }
+
+    private void migrate(final Vertex vertex) {
+        long ctr = 0;
+        for (Edge edge : vertex.getEdges(Direction.OUT)) {
+            put(edge);
+            ctr++;
+        }
+        vertex.setProperty(PropertyName.SYS_EDGES_INDEXED, Boolean.TRUE);
+        migratedVertices.incrementAndGet();
+        migratedEdges.addAndGet(ctr);
+        if (ctr > 0) {
+            log.debug("Indexed {} existing edges of {}", ctr, vertex);
+        }
+    }
+
+    public void logStatistics() {
+        log.info("Edge index: lookups: {} migrated vertices: {} migrated edges: {}",
+                new Object[]{lookups.get(), migratedVertices.get(), migratedEdges.get()});
+    }
+}
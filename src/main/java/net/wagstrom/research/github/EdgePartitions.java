@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.CloseableIterable;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Index;
+import com.tinkerpop.blueprints.IndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Degree counts and label partitioned adjacency for vertices with a lot of
+ * edges.
+ *
+ * Neo4j keeps all relationships of a node in one chain, so asking a popular
+ * user for its FOLLOWER edges still walks past every USER_EVENT edge. Two
+ * things are kept for the configured labels to avoid that:
+ *
+ * The number of edges of each of those labels is stored on both vertices
+ * as sys_degree_out_LABEL and sys_degree_in_LABEL, so degrees can be read
+ * without touching any edges. Other labels are not counted.
+ *
+ * Edges with a partitioned label are added to a manual index keyed on
+ * (vertex, direction, label). Edges with a bucketed label are also indexed
+ * by the month of the event they belong to, so a traversal of recent events
+ * only reads those months.
+ *
+ * Vertices that existed before this was added, or before a label was
+ * configured, are counted and indexed the first time one of their edges
+ * changes. {@link PropertyName#SYS_DEGREES_COUNTED} then holds the sorted
+ * labels that were counted. Until then their degrees are unknown.
+ */
+public class EdgePartitions {
+    private static final Logger log = LoggerFactory.getLogger(EdgePartitions.class); // NOPMD
+    private static final String DEGREE_PREFIX = "sys_degree_";
+    private static final String LABEL_KEY = "label";
+    private static final String BUCKET_KEY = "bucket";
+
+    /**
+     * The edges created by one transaction
+     *
+     * Degrees are only written when the transaction commits, so a vertex
+     * that gets a thousand new edges is updated once rather than a
+     * thousand times.
+     */
+    public static final class Changes {
+        private final Map<Object, Map<String, Integer>> deltas = new LinkedHashMap<Object, Map<String, Integer>>();
+        private final List<Edge> edges = new ArrayList<Edge>();
+
+        private void add(final Object vertexId, final String property) {
+            Map<String, Integer> vertexDeltas = deltas.get(vertexId);
+            if (vertexDeltas == null) {
+                vertexDeltas = new HashMap<String, Integer>();
+                deltas.put(vertexId, vertexDeltas);
+            }
+            final Integer delta = vertexDeltas.get(property);
+            vertexDeltas.put(property, delta == null ? 1 : delta + 1);
+        }
+
+        /**
+         * @return the ids of the vertices whose degrees changed
+         */
+        public Collection<Object> getVertexIds() {
+            return deltas.keySet();
+        }
+
+        public boolean isEmpty() {
+            return deltas.isEmpty();
+        }
+
+        public void clear() {
+            deltas.clear();
+            edges.clear();
+        }
+    }
+
+    private final Index<Edge> index;
+    private final Set<String> partitioned;
+    private final Set<String> bucketed;
+    private final String[] countedLabels;
+    private final AtomicLong countedVertices = new AtomicLong();
+    private final AtomicLong countedEdges = new AtomicLong();
+
+    /**
+     * @param graph the graph holding the partition index
+     * @param partitioned labels whose edges are indexed by vertex and label
+     * @param bucketed labels whose edges are also indexed by month
+     */
+    public EdgePartitions(final IndexableGraph graph, final Collection<String> partitioned,
+            final Collection<String> bucketed) {
+        Index<Edge> idx = graph.getIndex(IndexNames.ADJACENCY, Edge.class);
+        if (idx == null) {
+            idx = graph.createIndex(IndexNames.ADJACENCY, Edge.class);
+        }
+        index = idx;
+        this.bucketed = new HashSet<String>(bucketed);
+        this.partitioned = new HashSet<String>(partitioned);
+        this.partitioned.addAll(bucketed);
+        countedLabels = this.partitioned.toArray(new String[this.partitioned.size()]);
+        Arrays.sort(countedLabels);
+    }
+
+    /**
+     * @return the name of the vertex property holding a degree
+     */
+    public static String degreeProperty(final Direction direction, final String label) {
+        return DEGREE_PREFIX + direction.name().toLowerCase() + "_" + label;
+    }
+
+    /**
+     * Reads a degree stored on a vertex
+     *
+     * Edges created by a transaction that has not committed yet are not
+     * included.
+     *
+     * @return the number of edges, or -1 if the label has not been counted
+     *      on the vertex
+     */
+    public static long getDegree(final Vertex vertex, final Direction direction, final String label) {
+        final Object labels = vertex.getProperty(PropertyName.SYS_DEGREES_COUNTED);
+        if (!(labels instanceof String[]) || Arrays.binarySearch((String[]) labels, label) < 0) {
+            return -1;
+        }
+        final Object degree = vertex.getProperty(degreeProperty(direction, label));
+        return degree instanceof Number ? ((Number) degree).longValue() : 0;
+    }
+
+    /**
+     * @param seconds a time in seconds since the epoch
+     * @return the month of the time, for example 2012-06
+     */
+    public static String bucket(final long seconds) {
+        final Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        cal.setTimeInMillis(seconds * 1000L);
+        return String.format("%04d-%02d", cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
+    }
+
+    /**
+     * Finds the month an edge belongs to
+     *
+     * That is the {@link PropertyName#SYS_BUCKET} of the edge or else the
+     * creation time of whichever of its vertices has one, normally the
+     * event.
+     *
+     * @return the month or null if neither vertex has a creation time
+     */
+    public static String bucketOf(final Edge edge) {
+        final Object bucket = edge.getProperty(PropertyName.SYS_BUCKET);
+        if (bucket != null) {
+            return bucket.toString();
+        }
+        for (Direction direction : new Direction[]{Direction.OUT, Direction.IN}) {
+            final Object created = edge.getVertex(direction).getProperty(PropertyName.CREATED_AT);
+            if (created instanceof Number) {
+                return bucket(((Number) created).longValue());
+            }
+        }
+        return null;
+    }
+
+    public boolean isPartitioned(final String label) {
+        return partitioned.contains(label);
+    }
+
+    public boolean isBucketed(final String label) {
+        return bucketed.contains(label);
+    }
+
+    /**
+     * Gets the edges of a partitioned label from the index
+     *
+     * Only complete for vertices that have been counted.
+     */
+    public List<Edge> getEdges(final Vertex vertex, final Direction direction, final String label) {
+        return get(LABEL_KEY, key(vertex.getId(), direction, label));
+    }
+
+    /**
+     * Gets the edges of a bucketed label for a single month from the index
+     *
+     * @param bucket the month, as returned by {@link #bucket(long)}
+     */
+    public List<Edge> getEdges(final Vertex vertex, final Direction direction, final String label,
+            final String bucket) {
+        return get(BUCKET_KEY, key(vertex.getId(), direction, label) + ":" + bucket);
+    }
+
+    private List<Edge> get(final String key, final String value) {
+        final List<Edge> edges = new ArrayList<Edge>();
+        final CloseableIterable<Edge> hits = index.get(key, value);
+        try {
+            for (Edge edge : hits) {
+                edges.add(edge);
+            }
+        } finally {
+            hits.close();
+        }
+        return edges;
+    }
+
+    private static String key(final Object vertexId, final Direction direction, final String label) {
+        return vertexId + ":" + direction.name() + ":" + label;
+    }
+
+    /**
+     * Records a newly created edge, if its label is partitioned
+     */
+    public void added(final Changes changes, final Edge edge) {
+        if (!partitioned.contains(edge.getLabel())) {
+            return;
+        }
+        changes.add(edge.getVertex(Direction.OUT).getId(), degreeProperty(Direction.OUT, edge.getLabel()));
+        changes.add(edge.getVertex(Direction.IN).getId(), degreeProperty(Direction.IN, edge.getLabel()));
+        changes.edges.add(edge);
+    }
+
+    /**
+     * Writes the degrees and index entries for the edges of a transaction
+     *
+     * This must be called just before the transaction commits, while the
+     * caller holds a lock for every vertex in {@link Changes#getVertexIds()}.
+     * Otherwise two transactions can both add to the same old value.
+     */
+    public void apply(final Changes changes, final IndexableGraph graph) {
+        final Set<Object> counted = new HashSet<Object>();
+        for (Map.Entry<Object, Map<String, Integer>> entry : changes.deltas.entrySet()) {
+            final Vertex vertex = graph.getVertex(entry.getKey());
+            if (vertex == null) {
+                continue;
+            }
+            final Object labels = vertex.getProperty(PropertyName.SYS_DEGREES_COUNTED);
+            if (!(labels instanceof String[]) || !Arrays.equals((String[]) labels, countedLabels)) {
+                // counting sees the new edges too, so the deltas are not needed
+                count(vertex);
+                counted.add(vertex.getId());
+                continue;
+            }
+            for (Map.Entry<String, Integer> delta : entry.getValue().entrySet()) {
+                final Object degree = vertex.getProperty(delta.getKey());
+                vertex.setProperty(delta.getKey(),
+                        (degree instanceof Number ? ((Number) degree).longValue() : 0L) + delta.getValue());
+            }
+        }
+        for (Edge edge : changes.edges) {
+            String bucket = null;
+            if (bucketed.contains(edge.getLabel())) {
+                bucket = bucketOf(edge);
+                if (bucket != null && edge.getProperty(PropertyName.SYS_BUCKET) == null) {
+                    edge.setProperty(PropertyName.SYS_BUCKET, bucket);
+                }
+            }
+            for (Direction direction : new Direction[]{Direction.OUT, Direction.IN}) {
+                final Vertex vertex = edge.getVertex(direction);
+                if (!counted.contains(vertex.getId())) {
+                    put(edge, vertex, direction, bucket);
+                }
+            }
+        }
+        changes.clear();
+    }
+
+    private void put(final Edge edge, final Vertex vertex, final Direction direction, final String bucket) {
+        final String key = key(vertex.getId(), direction, edge.getLabel());
+        index.put(LABEL_KEY, key, edge);
+        if (bucket != null) {
+            index.put(BUCKET_KEY, key + ":" + bucket, edge);
+        }
+    }
+
+    /**
+     * Counts and indexes all existing edges of the configured labels of a vertex
+     */
+    private void count(final Vertex vertex) {
+        long ctr = 0;
+        for (Direction direction : new Direction[]{Direction.OUT, Direction.IN}) {
+            for (String label : countedLabels) {
+                long degree = 0;
+                for (Edge edge : vertex.getEdges(direction, label)) {
+                    put(edge, vertex, direction, bucketed.contains(label) ? bucketOf(edge) : null);
+                    degree++;
+                }
+                // a degree left over from an earlier count would be stale
+                final String property = degreeProperty(direction, label);
+                if (degree > 0) {
+                    vertex.setProperty(property, degree);
+                } else if (vertex.getProperty(property) != null) {
+                    vertex.removeProperty(property);
+                }
+                ctr += degree;
+            }
+        }
+        vertex.setProperty(PropertyName.SYS_DEGREES_COUNTED, countedLabels.clone());
+        countedVertices.incrementAndGet();
+        countedEdges.addAndGet(ctr);
+        if (ctr > 1000) {
+            log.info("Counted {} existing edges of {}", ctr, vertex);
+        }
+    }
+
+    public void logStatistics() {
+        log.info("Edge partitions: counted vertices: {} counted edges: {}",
+                countedVertices.get(), countedEdges.get());
+    }
+}
@@ -15,6 +15,8 @@
  */
 package net.wagstrom.research.github;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -23,6 +25,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import net.wagstrom.research.github.crawler.CrawlFrontier;
+import net.wagstrom.research.github.crawler.OffHeapVisitedSet;
+import net.wagstrom.research.github.crawler.SocialGraphCrawler;
 import net.wagstrom.research.github.v3.CollaboratorMinerV3;
 import net.wagstrom.research.github.v3.EventMinerV3;
 import net.wagstrom.research.github.v3.GistMinerV3;
@@ -338,10 +343,56 @@ public class GitHubMain {
             }
         }
 
+        if (props.getProperty(PropNames.GITHUB_MINE_CRAWL, PropDefaults.GITHUB_MINE_CRAWL).equals("true")) {
+            crawlSocialGraph(projects, users, umv3, rmv3, wmv3, emv3);
+        }
+
         log.info("Shutting down graph");
         bp.shutdown();
     }
 
+    /**
+     * Expands the crawl outward from the configured projects and users
+     * through followers, following, watchers and events.
+     * 
+     * @param projects seed repositories
+     * @param users seed users
+     */
+    private void crawlSocialGraph(final List<String> projects, final List<String> users,
+            final UserMinerV3 umv3, final RepositoryMinerV3 rmv3,
+            final WatcherMinerV3 wmv3, final EventMinerV3 emv3) {
+        File visitedFile = new File(props.getProperty(PropNames.GITHUB_CRAWL_VISITED_FILE, PropDefaults.GITHUB_CRAWL_VISITED_FILE).trim());
+        int visitedCapacity = Integer.parseInt(props.getProperty(PropNames.GITHUB_CRAWL_VISITED_CAPACITY, PropDefaults.GITHUB_CRAWL_VISITED_CAPACITY).trim());
+        int maxFrontier = Integer.parseInt(props.getProperty(PropNames.GITHUB_CRAWL_MAX_FRONTIER, PropDefaults.GITHUB_CRAWL_MAX_FRONTIER).trim());
+
+        OffHeapVisitedSet visited;
+        try {
+            visited = new OffHeapVisitedSet(visitedFile, visitedCapacity);
+        } catch (IOException e) {
+            log.error("Unable to open crawl visited set {}", visitedFile, e);
+            return;
+        }
+
+        SocialGraphCrawler crawler = new SocialGraphCrawler(bp, umv3, rmv3, wmv3, emv3, v3throttle,
+                visited, new CrawlFrontier(maxFrontier));
+        crawler.setMaxDepth(Integer.parseInt(props.getProperty(PropNames.GITHUB_CRAWL_MAX_DEPTH, PropDefaults.GITHUB_CRAWL_MAX_DEPTH).trim()));
+        crawler.setMaxNodes(Long.parseLong(props.getProperty(PropNames.GITHUB_CRAWL_MAX_NODES, PropDefaults.GITHUB_CRAWL_MAX_NODES).trim()));
+        crawler.setMaxCalls(Long.parseLong(props.getProperty(PropNames.GITHUB_CRAWL_MAX_CALLS, PropDefaults.GITHUB_CRAWL_MAX_CALLS).trim()));
+        crawler.setCrawlEvents(props.getProperty(PropNames.GITHUB_CRAWL_EVENTS, PropDefaults.GITHUB_CRAWL_EVENTS).equals("true"));
+
+        for (String proj : projects) {
+            crawler.addSeedRepository(proj);
+        }
+        for (String username : users) {
+            crawler.addSeedUser(username);
+        }
+        try {
+            crawler.crawl();
+        } finally {
+            visited.close();
+        }
+    }
+
     /**
      * @param owner
      */
@@ -510,11 +561,54 @@ public class GitHubMain {
         try {
             String dbengine = p.getProperty(PropNames.DBENGINE, PropDefaults.DBURL).trim();
             String dburl = p.getProperty(PropNames.DBURL, PropDefaults.DBURL).trim();
-            bp = new BlueprintsDriver(dbengine, dburl, dbprops);
+            dbengine = BlueprintsDriver.selectEngine(dbengine, dburl,
+                    p.getProperty(PropNames.DB_INITIAL_LOAD, PropDefaults.DB_INITIAL_LOAD).trim().equals("true"));
+            int shards = Integer.parseInt(p.getProperty(PropNames.DB_SHARDS, PropDefaults.DB_SHARDS).trim());
+            if (shards > 0) {
+                String shardDirectory = p.getProperty(PropNames.DB_SHARD_DIRECTORY, PropDefaults.DB_SHARD_DIRECTORY).trim();
+                if (shardDirectory.equals("")) {
+                    shardDirectory = dburl + ".shards";
+                }
+                if (p.getProperty(PropNames.DB_ASYNC_WRITER, PropDefaults.DB_ASYNC_WRITER).trim().equals("true")) {
+                    log.warn("The asynchronous writer can't be combined with shards, writing synchronously");
+                }
+                bp = new ShardedBlueprintsDriver(dbengine, dburl, dbprops, new File(shardDirectory), shards);
+            } else if (p.getProperty(PropNames.DB_ASYNC_WRITER, PropDefaults.DB_ASYNC_WRITER).trim().equals("true")) {
+                bp = new AsyncBlueprintsDriver(dbengine, dburl, dbprops,
+                        Integer.parseInt(p.getProperty(PropNames.DB_ASYNC_QUEUE_SIZE, PropDefaults.DB_ASYNC_QUEUE_SIZE).trim()),
+                        Long.parseLong(p.getProperty(PropNames.DB_ASYNC_LINGER, PropDefaults.DB_ASYNC_LINGER).trim()));
+            } else {
+                bp = new BlueprintsDriver(dbengine, dburl, dbprops);
+            }
+            bp.setCommitSize(Integer.parseInt(p.getProperty(PropNames.DB_COMMIT_SIZE, PropDefaults.DB_COMMIT_SIZE).trim()));
+            bp.setInitialLoadEdges(Long.parseLong(p.getProperty(PropNames.DB_INITIAL_LOAD_EDGES, PropDefaults.DB_INITIAL_LOAD_EDGES).trim()));
+            bp.setIdentityCacheSize(Integer.parseInt(p.getProperty(PropNames.DB_IDENTITY_CACHE_SIZE, PropDefaults.DB_IDENTITY_CACHE_SIZE).trim()));
+            String textStore = p.getProperty(PropNames.DB_TEXT_STORE, PropDefaults.DB_TEXT_STORE).trim();
+            if (!textStore.equals("")) {
+                bp.setTextStore(new TextStore(new File(textStore)),
+                        Integer.parseInt(p.getProperty(PropNames.DB_TEXT_STORE_MIN_LENGTH, PropDefaults.DB_TEXT_STORE_MIN_LENGTH).trim()));
+            }
+            bp.setTextProperties(splitList(p.getProperty(PropNames.DB_TEXT_PROPERTIES, PropDefaults.DB_TEXT_PROPERTIES)));
+            bp.setEdgePartitions(splitList(p.getProperty(PropNames.DB_PARTITIONED_EDGES, PropDefaults.DB_PARTITIONED_EDGES)),
+                    splitList(p.getProperty(PropNames.DB_BUCKETED_EDGES, PropDefaults.DB_BUCKETED_EDGES)),
+                    Long.parseLong(p.getProperty(PropNames.DB_SUPERNODE_DEGREE, PropDefaults.DB_SUPERNODE_DEGREE).trim()));
         } catch (NullPointerException e) {
             log.error("properties undefined, must define both {} and {}", PropNames.DBENGINE, PropNames.DBURL);
             bp = null;
         }
         return bp;
     }
+
+    /**
+     * Splits a comma separated property, skipping empty entries
+     */
+    private static List<String> splitList(final String value) {
+        ArrayList<String> items = new ArrayList<String>();
+        for (String item : value.split(",")) {
+            if (!item.trim().equals("")) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
 }
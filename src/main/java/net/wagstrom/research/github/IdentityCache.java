@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache from identity key to vertex id for each identity index.
+ *
+ * This sits in front of the manual index lookups in getOrCreateVertexHelper.
+ * Each index gets its own least recently used map so that a flood of events
+ * can't push the users and repositories out of the cache.
+ *
+ * Entries added since the last commit are remembered so they can be dropped
+ * again if the transaction is rolled back. Otherwise the cache could hand
+ * out ids of vertices that no longer exist.
+ *
+ * The cache may be shared by several threads, each with its own
+ * transaction. Entries a thread added are only visible to other threads
+ * once that thread commits.
+ */
+public class IdentityCache {
+    private static final Logger log = LoggerFactory.getLogger(IdentityCache.class); // NOPMD
+
+    private static final class LruMap extends LinkedHashMap<Object, Entry> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        LruMap(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Object, Entry> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static final class Entry {
+        private final Object id;
+        /** the thread whose transaction created the entry, null once committed */
+        private Thread owner;
+
+        Entry(final Object id, final Thread owner) {
+            this.id = id;
+            this.owner = owner;
+        }
+    }
+
+    private static final class Pending {
+        private final String index;
+        private final Object key;
+        private final Entry entry;
+
+        Pending(final String index, final Object key, final Entry entry) {
+            this.index = index;
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    private final int maxSize;
+    private final Map<String, LruMap> caches = new HashMap<String, LruMap>();
+    private final Map<String, long[]> stats = new HashMap<String, long[]>();
+    private final ThreadLocal<List<Pending>> pending = new ThreadLocal<List<Pending>>() {
+        @Override
+        protected List<Pending> initialValue() {
+            return new ArrayList<Pending>();
+        }
+    };
+
+    /**
+     * @param maxSize the maximum number of entries kept for each index
+     */
+    public IdentityCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private LruMap getCache(final String index) {
+        LruMap cache = caches.get(index);
+        if (cache == null) {
+            cache = new LruMap(maxSize);
+            caches.put(index, cache);
+            stats.put(index, new long[2]);
+        }
+        return cache;
+    }
+
+    /**
+     * Looks up the vertex id for a key and records a hit or a miss
+     *
+     * @param index the name of the identity index
+     * @param key the identity key
+     * @return the vertex id or null if the key is not cached
+     */
+    public synchronized Object get(final String index, final Object key) {
+        final Entry entry = getCache(index).get(key);
+        final Object id = entry == null || (entry.owner != null && entry.owner != Thread.currentThread())
+                ? null : entry.id;
+        stats.get(index)[id == null ? 1 : 0]++;
+        return id;
+    }
+
+    public synchronized void put(final String index, final Object key, final Object id) {
+        final Entry entry = new Entry(id, Thread.currentThread());
+        getCache(index).put(key, entry);
+        pending.get().add(new Pending(index, key, entry));
+    }
+
+    /**
+     * Removes a key, used when a cached id turns out to be stale
+     */
+    public synchronized void remove(final String index, final Object key) {
+        getCache(index).remove(key);
+    }
+
+    /**
+     * Everything the current thread added so far is now durable
+     */
+    public synchronized void commit() {
+        final List<Pending> entries = pending.get();
+        for (Pending p : entries) {
+            p.entry.owner = null;
+        }
+        entries.clear();
+    }
+
+    /**
+     * Drops everything the current thread added since its last commit
+     */
+    public synchronized void rollback() {
+        final List<Pending> entries = pending.get();
+        for (Pending p : entries) {
+            final LruMap cache = getCache(p.index);
+            if (cache.get(p.key) == p.entry) {
+                cache.remove(p.key);
+            }
+        }
+        log.debug("Removed {} uncommitted entries from identity cache", entries.size());
+        entries.clear();
+    }
+
+    public synchronized int size(final String index) {
+        return getCache(index).size();
+    }
+
+    public synchronized long getHits(final String index) {
+        getCache(index);
+        return stats.get(index)[0];
+    }
+
+    public synchronized long getMisses(final String index) {
+        getCache(index);
+        return stats.get(index)[1];
+    }
+
+    /**
+     * @return the fraction of lookups for the index that were served from the cache
+     */
+    public synchronized double getHitRate(final String index) {
+        final long hits = getHits(index);
+        final long total = hits + getMisses(index);
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public synchronized void logStatistics() {
+        for (String index : caches.keySet()) {
+            log.info("Identity cache {}: size: {} hits: {} misses: {} hit rate: {}",
+                    new Object[]{index, size(index), getHits(index), getMisses(index),
+                    String.format("%.3f", getHitRate(index))});
+        }
+    }
+}
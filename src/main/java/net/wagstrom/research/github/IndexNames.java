@@ -17,10 +17,12 @@ package net.wagstrom.research.github;
 
 public final class IndexNames {
 
+    public static final String ADJACENCY = "adjacency-idx";
     public static final String COMMENT = "comment-idx";;
     public static final String COMMIT = "commit-idx";
     public static final String DISCUSSION = "discussion-idx";
     public static final String DOWNLOAD = "download-idx";
+    public static final String EDGE = "edge-idx";
     public static final String EMAIL = "email-idx";
     public static final String EVENT = "event-idx";
     public static final String FILE = "file-idx";
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.wagstrom.research.github.crawler.OffHeapVisitedSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.CloseableIterable;
+import com.tinkerpop.blueprints.Index;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4jbatch.Neo4jBatchGraph;
+
+/**
+ * In memory bookkeeping for an initial load through the Neo4j batch inserter.
+ *
+ * The batch inserter does not make index entries visible until the indices
+ * are flushed, and it can't walk the edges of a vertex. Because an initial
+ * load always starts from an empty store we can track everything that was
+ * created ourselves: each identity index gets a map from key to vertex id
+ * and every edge is recorded as a pair of fingerprints in a wide
+ * {@link OffHeapVisitedSet}. The indices themselves are only flushed once,
+ * at the end of the load.
+ *
+ * The first edge table is sized for the expected number of edges and its
+ * file is created, and the disk space for it checked, before anything is
+ * loaded. A load with more edges than expected does not fail: once a table
+ * is full another one twice its size is added and every table is checked
+ * for each edge.
+ */
+class InitialLoadCache {
+    private static final Logger log = LoggerFactory.getLogger(InitialLoadCache.class); // NOPMD
+
+    private final Neo4jBatchGraph graph;
+    private final Map<Index<Vertex>, Map<Object, Long>> identities = new HashMap<Index<Vertex>, Map<Object, Long>>();
+    private final Map<Index<Vertex>, String> idcols = new HashMap<Index<Vertex>, String>();
+    private final List<File> edgeFiles = new ArrayList<File>();
+    /** the full tables followed by the one new edges go to */
+    private final List<OffHeapVisitedSet> edges = new ArrayList<OffHeapVisitedSet>();
+
+    /**
+     * @param expectedEdges the number of edges the first table is sized for
+     * @throws IOException if the first table can't be created
+     */
+    InitialLoadCache(final Neo4jBatchGraph graph, final long expectedEdges) throws IOException {
+        this.graph = graph;
+        addEdgeTable(capacityFor(expectedEdges));
+    }
+
+    private static int capacityFor(final long expectedEdges) {
+        if (expectedEdges < 1) {
+            throw new IllegalArgumentException("The expected number of edges must be positive: " + expectedEdges);
+        }
+        final long slots = (long) Math.ceil(expectedEdges / OffHeapVisitedSet.MAX_LOAD);
+        return (int) Math.min(slots, OffHeapVisitedSet.MAX_WIDE_CAPACITY);
+    }
+
+    private void addEdgeTable(final int capacity) throws IOException {
+        final File file = File.createTempFile("gitminer-edges", ".dat");
+        file.delete();
+        final long bytes = OffHeapVisitedSet.fileSize(capacity, true);
+        if (file.getParentFile().getUsableSpace() < bytes) {
+            throw new IOException("Not enough space in " + file.getParent() + " for an edge table of "
+                    + bytes + " bytes");
+        }
+        edgeFiles.add(file);
+        edges.add(new OffHeapVisitedSet(file, capacity, true));
+    }
+
+    /**
+     * Sizes the first edge table for a different number of edges
+     *
+     * @throws IllegalStateException if edges have been added already
+     * @throws IOException if the table can't be created
+     */
+    void setExpectedEdges(final long expectedEdges) throws IOException {
+        if (edges.size() > 1 || edges.get(0).size() > 0) {
+            throw new IllegalStateException("The edge table can only be sized before the initial load starts");
+        }
+        final int capacity = capacityFor(expectedEdges);
+        closeEdgeTables();
+        addEdgeTable(capacity);
+    }
+
+    private void closeEdgeTables() {
+        for (OffHeapVisitedSet table : edges) {
+            table.close();
+        }
+        for (File file : edgeFiles) {
+            file.delete();
+        }
+        edges.clear();
+        edgeFiles.clear();
+    }
+
+    /**
+     * @return the vertex created earlier in this load or null
+     */
+    Vertex getVertex(final String idcol, final Object idval, final Index<Vertex> index) {
+        Map<Object, Long> ids = identities.get(index);
+        if (ids == null) {
+            ids = new HashMap<Object, Long>();
+            identities.put(index, ids);
+            idcols.put(index, idcol);
+        }
+        Long id = ids.get(idval);
+        return id == null ? null : graph.getVertex(id);
+    }
+
+    void putVertex(final Object idval, final Index<Vertex> index, final Vertex vertex) {
+        identities.get(index).put(idval, (Long) vertex.getId());
+    }
+
+    /**
+     * Records an edge
+     *
+     * @return true if the edge had not been seen before and must be created
+     */
+    boolean addEdge(final Vertex outVertex, final Vertex inVertex, final String label) {
+        final String key = outVertex.getId() + ":" + label + ":" + inVertex.getId();
+        final int last = edges.size() - 1;
+        for (int i = 0; i < last; i++) {
+            if (edges.get(i).contains(key)) {
+                return false;
+            }
+        }
+        OffHeapVisitedSet table = edges.get(last);
+        if (table.isFull() && !table.contains(key)) {
+            final int capacity = Math.min(table.getCapacity() * 2, OffHeapVisitedSet.MAX_WIDE_CAPACITY);
+            try {
+                addEdgeTable(capacity);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to add an edge table after " + edgeCount() + " edges", e);
+            }
+            log.info("Edge table full at {} edges, added a table with {} slots", edgeCount(), capacity);
+            table = edges.get(last + 1);
+        }
+        return table.add(key);
+    }
+
+    private long edgeCount() {
+        long count = 0;
+        for (OffHeapVisitedSet table : edges) {
+            count += table.size();
+        }
+        return count;
+    }
+
+    /**
+     * Flushes the deferred index entries and checks that every vertex created
+     * during the load can be found through its identity index.
+     *
+     * Missing entries are added back. Keys that map to more than one vertex
+     * are logged, they indicate that the store was not empty when the load
+     * started.
+     *
+     * @return the number of problems found
+     */
+    long finish() {
+        log.info("Flushing indices for initial load");
+        graph.flushIndices();
+        long checked = 0;
+        long missing = 0;
+        long duplicates = 0;
+        for (Map.Entry<Index<Vertex>, Map<Object, Long>> entry : identities.entrySet()) {
+            final Index<Vertex> index = entry.getKey();
+            final String idcol = idcols.get(index);
+            for (Map.Entry<Object, Long> identity : entry.getValue().entrySet()) {
+                final CloseableIterable<Vertex> hits = index.get(idcol, identity.getKey());
+                int found = 0;
+                boolean matched = false;
+                final Iterator<Vertex> it = hits.iterator();
+                while (it.hasNext()) {
+                    found++;
+                    if (identity.getValue().equals(it.next().getId())) {
+                        matched = true;
+                    }
+                }
+                hits.close();
+                if (!matched) {
+                    index.put(idcol, identity.getKey(), graph.getVertex(identity.getValue()));
+                    missing++;
+                }
+                if (found > 1) {
+                    log.warn("Duplicate vertices in {} for {}", index.getIndexName(), identity.getKey());
+                    duplicates++;
+                }
+                checked++;
+            }
+        }
+        if (missing > 0) {
+            graph.flushIndices();
+        }
+        log.info("Initial load consistency check: vertices: {} edges: {} missing index entries: {} duplicates: {}",
+                new Object[]{checked, edgeCount(), missing, duplicates});
+        closeEdgeTables();
+        return missing + duplicates;
+    }
+}
@@ -25,7 +25,30 @@ public class PropDefaults {
     public static final String GITHUB_MINE_USERS = "true";
     public static final String GITHUB_MINE_ORGANIZATIONS = "true";
     public static final String GITHUB_MINE_GISTS = "true";
+    public static final String GITHUB_MINE_CRAWL = "false";
+    public static final String GITHUB_CRAWL_MAX_DEPTH = "2";
+    public static final String GITHUB_CRAWL_MAX_NODES = "0";
+    public static final String GITHUB_CRAWL_MAX_CALLS = "0";
+    public static final String GITHUB_CRAWL_MAX_FRONTIER = "250000";
+    public static final String GITHUB_CRAWL_EVENTS = "true";
+    public static final String GITHUB_CRAWL_VISITED_FILE = "crawl-visited.dat";
+    public static final String GITHUB_CRAWL_VISITED_CAPACITY = "4194304";
     
     public static final String DBENGINE = "neo4j";
     public static final String DBURL = "github.db";
+    public static final String DB_COMMIT_SIZE = "1000";
+    public static final String DB_INITIAL_LOAD = "false";
+    public static final String DB_INITIAL_LOAD_EDGES = "16000000";
+    public static final String DB_IDENTITY_CACHE_SIZE = "100000";
+    public static final String DB_ASYNC_WRITER = "false";
+    public static final String DB_ASYNC_QUEUE_SIZE = "10000";
+    public static final String DB_ASYNC_LINGER = "50";
+    public static final String DB_TEXT_STORE = "";
+    public static final String DB_TEXT_STORE_MIN_LENGTH = "256";
+    public static final String DB_TEXT_PROPERTIES = "body,bodyHtml,bodyText";
+    public static final String DB_PARTITIONED_EDGES = "";
+    public static final String DB_BUCKETED_EDGES = "";
+    public static final String DB_SUPERNODE_DEGREE = "1000";
+    public static final String DB_SHARDS = "0";
+    public static final String DB_SHARD_DIRECTORY = "";
 }
@@ -25,7 +25,30 @@ public class PropNames {
     public static final String GITHUB_MINE_USERS = "net.wagstrom.research.github.miner.users";
     public static final String GITHUB_MINE_ORGANIZATIONS = "net.wagstrom.research.github.miner.organizations";
     public static final String GITHUB_MINE_GISTS = "net.wagstrom.research.github.miner.gists";
+    public static final String GITHUB_MINE_CRAWL = "net.wagstrom.research.github.miner.crawl";
+    public static final String GITHUB_CRAWL_MAX_DEPTH = "net.wagstrom.research.github.crawl.maxDepth";
+    public static final String GITHUB_CRAWL_MAX_NODES = "net.wagstrom.research.github.crawl.maxNodes";
+    public static final String GITHUB_CRAWL_MAX_CALLS = "net.wagstrom.research.github.crawl.maxCalls";
+    public static final String GITHUB_CRAWL_MAX_FRONTIER = "net.wagstrom.research.github.crawl.maxFrontier";
+    public static final String GITHUB_CRAWL_EVENTS = "net.wagstrom.research.github.crawl.events";
+    public static final String GITHUB_CRAWL_VISITED_FILE = "net.wagstrom.research.github.crawl.visitedFile";
+    public static final String GITHUB_CRAWL_VISITED_CAPACITY = "net.wagstrom.research.github.crawl.visitedCapacity";
     
     public static final String DBENGINE = "net.wagstrom.research.github.dbengine";
     public static final String DBURL = "net.wagstrom.research.github.dburl";
+    public static final String DB_COMMIT_SIZE = "net.wagstrom.research.github.dbCommitSize";
+    public static final String DB_INITIAL_LOAD = "net.wagstrom.research.github.initialLoad";
+    public static final String DB_INITIAL_LOAD_EDGES = "net.wagstrom.research.github.initialLoadEdges";
+    public static final String DB_IDENTITY_CACHE_SIZE = "net.wagstrom.research.github.dbIdentityCacheSize";
+    public static final String DB_ASYNC_WRITER = "net.wagstrom.research.github.dbAsyncWriter";
+    public static final String DB_ASYNC_QUEUE_SIZE = "net.wagstrom.research.github.dbAsyncQueueSize";
+    public static final String DB_ASYNC_LINGER = "net.wagstrom.research.github.dbAsyncLingerMillis";
+    public static final String DB_TEXT_STORE = "net.wagstrom.research.github.dbTextStore";
+    public static final String DB_TEXT_STORE_MIN_LENGTH = "net.wagstrom.research.github.dbTextStoreMinLength";
+    public static final String DB_TEXT_PROPERTIES = "net.wagstrom.research.github.dbTextProperties";
+    public static final String DB_PARTITIONED_EDGES = "net.wagstrom.research.github.dbPartitionedEdges";
+    public static final String DB_BUCKETED_EDGES = "net.wagstrom.research.github.dbBucketedEdges";
+    public static final String DB_SUPERNODE_DEGREE = "net.wagstrom.research.github.dbSupernodeDegree";
+    public static final String DB_SHARDS = "net.wagstrom.research.github.dbShards";
+    public static final String DB_SHARD_DIRECTORY = "net.wagstrom.research.github.dbShardDirectory";
 }
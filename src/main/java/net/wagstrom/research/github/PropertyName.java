@@ -32,8 +32,12 @@ public final class PropertyName {
     public static final String BIOGRAPHY = "biography";
     public static final String BLOG = "blog";
     public static final String BODY = "body";
+    public static final String BODY_HASH = "bodyHash";
     public static final String BODY_HTML = "bodyHtml";
+    public static final String BODY_HTML_HASH = "bodyHtmlHash";
     public static final String BODY_TEXT = "bodyText";
+    public static final String BODY_TEXT_HASH = "bodyTextHash";
+    public static final String CHANGE_TYPE = "changeType";
     public static final String CLONE_URL = "cloneUrl";
     public static final String CLOSED_AT = "closedAt";
     public static final String CLOSED_ISSUES = "closedIssues";
@@ -110,6 +114,7 @@ public final class PropertyName {
     public static final String PUSHED_AT = "pushedAt";
     public static final String REF = "ref";
     public static final String REF_TYPE = "ref_type";
+    public static final String RENAMED_FROM = "renamedFrom";
     public static final String REPO = "repo";
     public static final String REPOSITORIES = "repositories";
     public static final String REPO_TYPE = "repoType";
@@ -121,13 +126,24 @@ public final class PropertyName {
     public static final String SSH_URL = "sshUrl";
     public static final String SVN_URL = "svnUrl";
     public static final String STATE = "state";
+    public static final String SYS_BUCKET = "sys_bucket";
     public static final String SYS_COMMENTS_ADDED = "sys_comments_added";
     public static final String SYS_CREATED_AT = "sys_created_at";
+    public static final String SYS_DEGREES_COUNTED = "sys_degrees_counted";
     public static final String SYS_EVENTS_ADDED = "sys_events_added";
     public static final String SYS_DISCUSSIONS_ADDED = "sys_discussions_added";
+    public static final String SYS_EDGES_INDEXED = "sys_edges_indexed";
     public static final String SYS_GISTS_ADDED = "sys_gists_added";
+    public static final String SYS_GIT_REFS = "sys_git_refs";
+    public static final String SYS_GIT_TIPS = "sys_git_tips";
     public static final String SYS_LAST_FULL_UPDATE = "sys_last_full_update";
     public static final String SYS_LAST_UPDATED = "sys_last_updated";
+    public static final String SYS_MEMBERS_BUCKETS = "sys_members_buckets";
+    public static final String SYS_MEMBERS_LOGINS = "sys_members_logins";
+    public static final String SYS_MEMBERS_ROLES = "sys_members_roles";
+    public static final String SYS_MEMBERS_VERSION = "sys_members_version";
+    public static final String SYS_SYNC_CHUNKS = "sys_sync_chunks";
+    public static final String SYS_SYNC_NUMBERS = "sys_sync_numbers";
     public static final String SYS_UPDATE_COMPLETE = "sys_update_complete";
     public static final String TOTAL_PRIVATE_REPO_COUNT = "totalPrivateRepoCount";
     public static final String TIME = "time";
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.tinkerpop.blueprints.Element;
+
+/**
+ * The users related to a repository and the ways they are related.
+ *
+ * Finding the users of a repository used to take six traversals each time
+ * it was needed. Instead the save methods record every user here as they
+ * link them to the repository, and the members are stored as properties on
+ * the repository vertex.
+ *
+ * Logins are spread over buckets by their hash. Each bucket is a sorted
+ * array of logins with a parallel array of role bits, and only the buckets
+ * that changed are written back, so adding a watcher to a repository with
+ * tens of thousands of them rewrites a few hundred logins. The number of
+ * buckets doubles once they hold {@link #BUCKET_SIZE} members on average,
+ * which rewrites all of them once.
+ */
+public class RepositoryMembers {
+    public static final int COLLABORATOR = 1;
+    public static final int WATCHER = 1 << 1;
+    public static final int ISSUE_OWNER = 1 << 2;
+    public static final int ISSUE_COMMENTER = 1 << 3;
+    public static final int PULLREQUEST_OWNER = 1 << 4;
+    public static final int DISCUSSION = 1 << 5;
+
+    /** average number of members in a bucket before the buckets are doubled */
+    public static final int BUCKET_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The members whose logins hash to one bucket
+     */
+    private static final class Bucket {
+        private String[] logins = new String[INITIAL_CAPACITY];
+        private int[] roles = new int[INITIAL_CAPACITY];
+        private int size = 0;
+        private boolean dirty = false;
+
+        /**
+         * @return true if this added the user or the role
+         */
+        private boolean add(final String login, final int role) {
+            int pos = Arrays.binarySearch(logins, 0, size, login);
+            if (pos >= 0) {
+                if ((roles[pos] & role) == role) {
+                    return false;
+                }
+                roles[pos] |= role;
+            } else {
+                pos = -pos - 1;
+                if (size == logins.length) {
+                    logins = Arrays.copyOf(logins, size * 2);
+                    roles = Arrays.copyOf(roles, size * 2);
+                }
+                System.arraycopy(logins, pos, logins, pos + 1, size - pos);
+                System.arraycopy(roles, pos, roles, pos + 1, size - pos);
+                logins[pos] = login;
+                roles[pos] = role;
+                size++;
+            }
+            dirty = true;
+            return true;
+        }
+    }
+
+    private final Object repositoryId;
+    private Bucket[] buckets = {new Bucket()};
+    private int size = 0;
+    private boolean resized = false;
+    private boolean dirty = false;
+    private long version = 0;
+    private int modifications = 0;
+
+    public RepositoryMembers(final Object repositoryId) {
+        this.repositoryId = repositoryId;
+    }
+
+    public Object getRepositoryId() {
+        return repositoryId;
+    }
+
+    private Bucket bucket(final String login) {
+        int h = login.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return buckets[h & (buckets.length - 1)];
+    }
+
+    /**
+     * Records that a user has a role in the repository
+     *
+     * @return true if this added the user or the role
+     */
+    public boolean add(final String login, final int role) {
+        final Bucket bucket = bucket(login);
+        final int before = bucket.size;
+        if (!bucket.add(login, role)) {
+            return false;
+        }
+        size += bucket.size - before;
+        dirty = true;
+        modifications++;
+        if (size > buckets.length * BUCKET_SIZE) {
+            grow();
+        }
+        return true;
+    }
+
+    private void grow() {
+        final Bucket[] old = buckets;
+        buckets = new Bucket[old.length * 2];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        for (Bucket bucket : old) {
+            for (int i = 0; i < bucket.size; i++) {
+                bucket(bucket.logins[i]).add(bucket.logins[i], bucket.roles[i]);
+            }
+        }
+        resized = true;
+    }
+
+    /**
+     * @return the role bits of a user, 0 if the user is not related to the repository
+     */
+    public int getRoles(final String login) {
+        final Bucket bucket = bucket(login);
+        final int pos = Arrays.binarySearch(bucket.logins, 0, bucket.size, login);
+        return pos < 0 ? 0 : bucket.roles[pos];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the sorted logins of all members
+     */
+    public List<String> getLogins() {
+        final List<String> logins = new ArrayList<String>(size);
+        for (Bucket bucket : buckets) {
+            logins.addAll(Arrays.asList(bucket.logins).subList(0, bucket.size));
+        }
+        Collections.sort(logins);
+        return logins;
+    }
+
+    /**
+     * @return the number of times the members have been stored
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of times a user or role was added since loading
+     */
+    public int getModifications() {
+        return modifications;
+    }
+
+    private static String propertyName(final String property, final int bucket) {
+        return property + "_" + bucket;
+    }
+
+    /**
+     * Loads the members stored on a repository vertex
+     *
+     * @return false if nothing has been stored yet
+     */
+    public boolean load(final Element repository) {
+        final Object storedBuckets = repository.getProperty(PropertyName.SYS_MEMBERS_BUCKETS);
+        if (!(storedBuckets instanceof Number)) {
+            return false;
+        }
+        final Bucket[] loaded = new Bucket[((Number) storedBuckets).intValue()];
+        int loadedSize = 0;
+        for (int i = 0; i < loaded.length; i++) {
+            final Object storedLogins = repository.getProperty(propertyName(PropertyName.SYS_MEMBERS_LOGINS, i));
+            final Object storedRoles = repository.getProperty(propertyName(PropertyName.SYS_MEMBERS_ROLES, i));
+            loaded[i] = new Bucket();
+            if (!(storedLogins instanceof String[]) || !(storedRoles instanceof int[])
+                    || ((String[]) storedLogins).length != ((int[]) storedRoles).length) {
+                continue;
+            }
+            final Bucket bucket = loaded[i];
+            bucket.size = ((String[]) storedLogins).length;
+            bucket.logins = Arrays.copyOf((String[]) storedLogins, Math.max(bucket.size, INITIAL_CAPACITY));
+            bucket.roles = Arrays.copyOf((int[]) storedRoles, bucket.logins.length);
+            loadedSize += bucket.size;
+        }
+        buckets = loaded;
+        size = loadedSize;
+        final Object storedVersion = repository.getProperty(PropertyName.SYS_MEMBERS_VERSION);
+        version = storedVersion instanceof Number ? ((Number) storedVersion).longValue() : 0;
+        resized = false;
+        dirty = false;
+        modifications = 0;
+        return true;
+    }
+
+    /**
+     * Writes the buckets that changed to the repository vertex
+     */
+    public void store(final Element repository) {
+        if (!dirty) {
+            return;
+        }
+        if (resized || repository.getProperty(PropertyName.SYS_MEMBERS_BUCKETS) == null) {
+            repository.setProperty(PropertyName.SYS_MEMBERS_BUCKETS, buckets.length);
+            resized = false;
+            for (Bucket bucket : buckets) {
+                bucket.dirty = true;
+            }
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            final Bucket bucket = buckets[i];
+            if (bucket.dirty) {
+                repository.setProperty(propertyName(PropertyName.SYS_MEMBERS_LOGINS, i),
+                        Arrays.copyOf(bucket.logins, bucket.size));
+                repository.setProperty(propertyName(PropertyName.SYS_MEMBERS_ROLES, i),
+                        Arrays.copyOf(bucket.roles, bucket.size));
+                bucket.dirty = false;
+            }
+        }
+        repository.setProperty(PropertyName.SYS_MEMBERS_VERSION, ++version);
+        dirty = false;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+}
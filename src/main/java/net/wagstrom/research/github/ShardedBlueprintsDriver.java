@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.egit.github.core.Comment;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.Issue;
+import org.eclipse.egit.github.core.IssueEvent;
+import org.eclipse.egit.github.core.PullRequest;
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A BlueprintsDriver that spreads repositories over several databases.
+ *
+ * The issues, pull requests, comments and events of a repository are saved
+ * to a shard picked by hashing the name of the repository. Users,
+ * organizations, teams, gists and the repositories themselves stay in the
+ * global database handled by this driver. Each shard is a complete graph
+ * of its own, so it also gets a copy of every user and repository its
+ * vertices link to. Those copies only carry what the shard was told about
+ * them, the global database has the full record.
+ *
+ * Lookups that need both sides are federated. The users of a repository
+ * are the users recorded in its shard plus those recorded globally, and
+ * their update times are read from the global database.
+ *
+ * The number of shards must not change once the shards exist, otherwise
+ * repositories would be looked for in the wrong shard.
+ */
+public class ShardedBlueprintsDriver extends BlueprintsDriver {
+    private static final Logger log = LoggerFactory.getLogger(ShardedBlueprintsDriver.class); // NOPMD
+    private static final String SHARD_PREFIX = "shard-";
+
+    private final List<BlueprintsDriver> shards;
+
+    /**
+     * @param dbengine The name of the engine to use, e.g. neo4j, orientdb, etc
+     * @param dburl The url of the global database
+     * @param config additional configuration parameters to be passed to the databases
+     * @param shardDirectory the directory holding one database for each shard
+     * @param shardCount the number of shards
+     */
+    public ShardedBlueprintsDriver(final String dbengine, final String dburl, final Map<String, String> config,
+            final File shardDirectory, final int shardCount) {
+        super(dbengine, dburl, config);
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive: " + shardCount);
+        }
+        final File[] existing = shardDirectory.listFiles(new FileFilter() {
+            public boolean accept(final File file) {
+                return file.isDirectory() && file.getName().startsWith(SHARD_PREFIX);
+            }
+        });
+        if (existing != null && existing.length > 0 && existing.length != shardCount) {
+            throw new IllegalStateException(shardDirectory + " has " + existing.length
+                    + " shards, unable to open it with " + shardCount);
+        }
+        final List<BlueprintsDriver> drivers = new ArrayList<BlueprintsDriver>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            final String shardUrl = new File(shardDirectory, String.format("%s%03d", SHARD_PREFIX, i)).getPath();
+            drivers.add(new BlueprintsDriver(dbengine, shardUrl, config));
+        }
+        shards = Collections.unmodifiableList(drivers);
+        log.info("Opened {} repository shards in {}", shardCount, shardDirectory);
+    }
+
+    /**
+     * @return the shard a repository is stored in, for a given number of shards
+     */
+    public static int shardOf(final String reponame, final int shardCount) {
+        // String.hashCode is specified, so this is stable across runs
+        return (reponame.toLowerCase().hashCode() & Integer.MAX_VALUE) % shardCount;
+    }
+
+    public BlueprintsDriver getShard(final String reponame) {
+        return shards.get(shardOf(reponame, shards.size()));
+    }
+
+    /**
+     * @return every shard, for example to analyze them in parallel
+     */
+    public List<BlueprintsDriver> getShards() {
+        return shards;
+    }
+
+    @Override
+    public void setCommitSize(final int commitSize) {
+        super.setCommitSize(commitSize);
+        for (BlueprintsDriver shard : shards) {
+            shard.setCommitSize(commitSize);
+        }
+    }
+
+    @Override
+    public void setIdentityCacheSize(final int size) {
+        super.setIdentityCacheSize(size);
+        for (BlueprintsDriver shard : shards) {
+            shard.setIdentityCacheSize(size);
+        }
+    }
+
+    @Override
+    public void setInitialLoadEdges(final long expectedEdges) {
+        super.setInitialLoadEdges(expectedEdges);
+        for (BlueprintsDriver shard : shards) {
+            shard.setInitialLoadEdges(expectedEdges);
+        }
+    }
+
+    @Override
+    public void setTextStore(final TextStore store, final int minLength) {
+        super.setTextStore(store, minLength);
+        // texts are addressed by their hash, so one store serves every shard
+        for (BlueprintsDriver shard : shards) {
+            shard.setTextStore(store, minLength);
+        }
+    }
+
+    @Override
+    public void setTextProperties(final Collection<String> properties) {
+        super.setTextProperties(properties);
+        for (BlueprintsDriver shard : shards) {
+            shard.setTextProperties(properties);
+        }
+    }
+
+    @Override
+    public void setEdgePartitions(final Collection<String> partitioned, final Collection<String> bucketed,
+            final long degreeCap) {
+        super.setEdgePartitions(partitioned, bucketed, degreeCap);
+        for (BlueprintsDriver shard : shards) {
+            shard.setEdgePartitions(partitioned, bucketed, degreeCap);
+        }
+    }
+
+    @Override
+    public void flush() {
+        super.flush();
+        for (BlueprintsDriver shard : shards) {
+            shard.flush();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (BlueprintsDriver shard : shards) {
+            shard.shutdown();
+        }
+        super.shutdown();
+    }
+
+    @Override
+    public Map<String, Vertex> saveRepositoryIssues(final Repository repo, final Collection<Issue> issues) {
+        return getShard(repo.generateId()).saveRepositoryIssues(repo, issues);
+    }
+
+    @Override
+    public void saveIssueComments(final Repository repo, final Issue issue, final Collection<Comment> issueComments) {
+        getShard(repo.generateId()).saveIssueComments(repo, issue, issueComments);
+    }
+
+    @Override
+    public void saveIssueEvents(final Repository repo, final Issue issue, final Collection<IssueEvent> issueEvents) {
+        getShard(repo.generateId()).saveIssueEvents(repo, issue, issueEvents);
+    }
+
+    @Override
+    public void savePullRequests(final Repository repo, final Collection<PullRequest> requests3) {
+        getShard(repo.generateId()).savePullRequests(repo, requests3);
+    }
+
+    /**
+     * Saves a pull request to the shard of its repository
+     *
+     * A repository vertex passed in belongs to the global database, so the
+     * shard finds its own copy of the repository instead.
+     */
+    @Override
+    public Vertex savePullRequest(final Repository repo, final Vertex repoVertex,
+            final PullRequest request, final boolean full) {
+        if (repo == null) {
+            return super.savePullRequest(repo, repoVertex, request, full);
+        }
+        return getShard(repo.generateId()).savePullRequest(repo, null, request, full);
+    }
+
+    @Override
+    public void savePullRequestComments(final Repository repo, final PullRequest pullRequest,
+            final List<Comment> comments) {
+        getShard(repo.generateId()).savePullRequestComments(repo, pullRequest, comments);
+    }
+
+    /**
+     * Saves an event to the shard of the repository it happened in
+     *
+     * Events without a repository, such as following a user, are global.
+     */
+    @Override
+    public Vertex saveEvent(final Vertex user, final Event event) {
+        if (event.getRepo() == null || event.getRepo().getName() == null) {
+            return super.saveEvent(user, event);
+        }
+        return getShard(event.getRepo().getName()).saveEvent(null, event);
+    }
+
+    @Override
+    public Map<Integer, Date> getIssueCommentsAddedAt(final String reponame) {
+        return getShard(reponame).getIssueCommentsAddedAt(reponame);
+    }
+
+    @Override
+    public Map<Integer, Date> getIssueEventsAddedAt(final IRepositoryIdProvider repo) {
+        return getShard(repo.generateId()).getIssueEventsAddedAt(repo);
+    }
+
+    @Override
+    public Map<Integer, Date> getPullRequestDiscussionsAddedAt(final String reponame) {
+        return getShard(reponame).getPullRequestDiscussionsAddedAt(reponame);
+    }
+
+    /**
+     * Gets the users of a repository from its shard and the global database
+     */
+    @Override
+    public List<String> getRepositoryMemberLogins(final String reponame) {
+        final Set<String> logins = new LinkedHashSet<String>(super.getRepositoryMemberLogins(reponame));
+        logins.addAll(getShard(reponame).getRepositoryMemberLogins(reponame));
+        return new ArrayList<String>(logins);
+    }
+
+    /**
+     * Reads the update times of all users of a repository from the global
+     * database
+     *
+     * Users only seen in a shard so far are added to the global database,
+     * which is where the miner will save them.
+     */
+    @Override
+    public Map<String, Date> getProjectUsersLastUpdateHelper(final String reponame,
+            final String keyProperty, final String valueProperty) {
+        final Map<String, Date> map = new HashMap<String, Date>();
+        if (isInitialLoad()) {
+            log.warn("Project users for {} can't be found during an initial load, they will be mined on the next run", reponame);
+            return map;
+        }
+        final List<Vertex> users = new ArrayList<Vertex>();
+        for (String login : getRepositoryMemberLogins(reponame)) {
+            users.add(getOrCreateUser(login));
+        }
+        return addValuesFromIterable(users, map, keyProperty, valueProperty);
+    }
+}
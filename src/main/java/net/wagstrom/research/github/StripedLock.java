@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by hashing (index, key) pairs onto them.
+ *
+ * Keeping a lock for every login or commit hash would cost more memory
+ * than the cache in front of the index. Two keys that land on the same
+ * stripe just wait for each other unnecessarily.
+ */
+public class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @param stripes the number of locks, rounded up to a power of two
+     */
+    public StripedLock(final int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @return the lock guarding a key of an index
+     */
+    public ReentrantLock get(final String index, final Object key) {
+        return stripes[stripe(index, key)];
+    }
+
+    /**
+     * @return the distinct locks guarding some keys of an index, always in
+     *      the same order so threads taking several of them can't deadlock
+     */
+    public List<ReentrantLock> getAll(final String index, final Collection<?> keys) {
+        final SortedMap<Integer, ReentrantLock> found = new TreeMap<Integer, ReentrantLock>();
+        for (Object key : keys) {
+            final int stripe = stripe(index, key);
+            found.put(stripe, stripes[stripe]);
+        }
+        return new ArrayList<ReentrantLock>(found.values());
+    }
+
+    private int stripe(final String index, final Object key) {
+        int h = index.hashCode() * 31 + (key == null ? 0 : key.hashCode());
+        // spread the bits, the same way HashMap does
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & (stripes.length - 1);
+    }
+
+    public int size() {
+        return stripes.length;
+    }
+}
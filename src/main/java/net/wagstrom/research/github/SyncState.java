@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.tinkerpop.blueprints.Element;
+
+/**
+ * The SYS_* timestamps of all issues or all pull requests of a repository.
+ *
+ * Deciding which issues need their comments or events refreshed used to
+ * require walking every issue of the repository. This keeps the timestamps,
+ * in seconds since the epoch with 0 meaning never, on the repository vertex
+ * instead, so loading them takes a few property reads.
+ *
+ * Items are grouped into chunks of 256 consecutive numbers. Each chunk is
+ * stored as an int array of the numbers it holds and one long array for
+ * each timestamp, and only the chunks that changed are written back. The
+ * chunks a repository has are listed in {@link PropertyName#SYS_SYNC_CHUNKS}.
+ */
+public class SyncState {
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * The items with numbers from id * 256 to id * 256 + 255
+     */
+    private static final class Chunk {
+        private final boolean[] present = new boolean[CHUNK_SIZE];
+        private final long[][] values;
+        private int size = 0;
+        private boolean dirty = false;
+
+        private Chunk(final int fields) {
+            values = new long[fields][CHUNK_SIZE];
+        }
+    }
+
+    private final Object repositoryId;
+    private final String kind;
+    private final String[] fields;
+    private final SortedMap<Integer, Chunk> chunks = new TreeMap<Integer, Chunk>();
+    private int size = 0;
+    private boolean chunksAdded = false;
+    private boolean dirty = false;
+
+    /**
+     * @param repositoryId the id of the repository vertex
+     * @param kind the kind of item, used to name the properties
+     * @param fields the names of the SYS_* properties to track
+     */
+    public SyncState(final Object repositoryId, final String kind, final String... fields) {
+        this.repositoryId = repositoryId;
+        this.kind = kind.toLowerCase();
+        this.fields = fields;
+    }
+
+    public Object getRepositoryId() {
+        return repositoryId;
+    }
+
+    private int field(final String field) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(field)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sync field " + field);
+    }
+
+    /**
+     * @return the name of the property holding one chunk of a column
+     */
+    private String propertyName(final String column, final int chunk) {
+        return column + "_" + kind + "_" + chunk;
+    }
+
+    private Chunk chunk(final int number) {
+        return chunks.get(number >> CHUNK_BITS);
+    }
+
+    /**
+     * Adds an item if it is not already present
+     */
+    public void add(final int number) {
+        Chunk chunk = chunk(number);
+        if (chunk == null) {
+            chunk = new Chunk(fields.length);
+            chunks.put(number >> CHUNK_BITS, chunk);
+            chunksAdded = true;
+        }
+        final int offset = number & (CHUNK_SIZE - 1);
+        if (!chunk.present[offset]) {
+            chunk.present[offset] = true;
+            chunk.size++;
+            size++;
+            chunk.dirty = true;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Records a timestamp for an item, adding the item if needed
+     */
+    public void set(final int number, final String field, final long seconds) {
+        final int f = field(field);
+        add(number);
+        final Chunk chunk = chunk(number);
+        final int offset = number & (CHUNK_SIZE - 1);
+        if (chunk.values[f][offset] != seconds) {
+            chunk.values[f][offset] = seconds;
+            chunk.dirty = true;
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return the timestamp in seconds, 0 if it was never set, -1 if the item is unknown
+     */
+    public long get(final int number, final String field) {
+        final int f = field(field);
+        if (!contains(number)) {
+            return -1;
+        }
+        return chunk(number).values[f][number & (CHUNK_SIZE - 1)];
+    }
+
+    public boolean contains(final int number) {
+        final Chunk chunk = chunk(number);
+        return chunk != null && chunk.present[number & (CHUNK_SIZE - 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a map from item number to timestamp, with null for timestamps
+     *      that were never set
+     */
+    public Map<Integer, Date> toMap(final String field) {
+        final int f = field(field);
+        final HashMap<Integer, Date> map = new HashMap<Integer, Date>(size * 4 / 3 + 1);
+        for (Map.Entry<Integer, Chunk> entry : chunks.entrySet()) {
+            final Chunk chunk = entry.getValue();
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                if (chunk.present[i]) {
+                    final long seconds = chunk.values[f][i];
+                    map.put((entry.getKey() << CHUNK_BITS) + i, seconds == 0 ? null : new Date(seconds * 1000L));
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Loads the state stored on a repository vertex
+     *
+     * @return false if nothing has been stored yet
+     */
+    public boolean load(final Element repository) {
+        final Object stored = repository.getProperty(PropertyName.SYS_SYNC_CHUNKS + "_" + kind);
+        if (!(stored instanceof int[])) {
+            return false;
+        }
+        chunks.clear();
+        size = 0;
+        for (int id : (int[]) stored) {
+            final Chunk chunk = new Chunk(fields.length);
+            chunks.put(id, chunk);
+            final Object numbers = repository.getProperty(propertyName(PropertyName.SYS_SYNC_NUMBERS, id));
+            if (!(numbers instanceof int[])) {
+                continue;
+            }
+            final int[] storedNumbers = (int[]) numbers;
+            final long[][] columns = new long[fields.length][];
+            for (int f = 0; f < fields.length; f++) {
+                final Object column = repository.getProperty(propertyName(fields[f], id));
+                columns[f] = column instanceof long[] && ((long[]) column).length == storedNumbers.length
+                        ? (long[]) column : null;
+            }
+            for (int i = 0; i < storedNumbers.length; i++) {
+                final int offset = storedNumbers[i] & (CHUNK_SIZE - 1);
+                chunk.present[offset] = true;
+                for (int f = 0; f < fields.length; f++) {
+                    if (columns[f] != null) {
+                        chunk.values[f][offset] = columns[f][i];
+                    }
+                }
+            }
+            chunk.size = storedNumbers.length;
+            size += chunk.size;
+        }
+        chunksAdded = false;
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * Writes the chunks that changed to the repository vertex
+     */
+    public void store(final Element repository) {
+        if (!dirty) {
+            return;
+        }
+        if (chunksAdded) {
+            final int[] ids = new int[chunks.size()];
+            int i = 0;
+            for (int id : chunks.keySet()) {
+                ids[i++] = id;
+            }
+            repository.setProperty(PropertyName.SYS_SYNC_CHUNKS + "_" + kind, ids);
+            chunksAdded = false;
+        }
+        for (Map.Entry<Integer, Chunk> entry : chunks.entrySet()) {
+            final Chunk chunk = entry.getValue();
+            if (!chunk.dirty) {
+                continue;
+            }
+            final int base = entry.getKey() << CHUNK_BITS;
+            final int[] numbers = new int[chunk.size];
+            final long[][] columns = new long[fields.length][chunk.size];
+            int n = 0;
+            for (int offset = 0; offset < CHUNK_SIZE; offset++) {
+                if (chunk.present[offset]) {
+                    numbers[n] = base + offset;
+                    for (int f = 0; f < fields.length; f++) {
+                        columns[f][n] = chunk.values[f][offset];
+                    }
+                    n++;
+                }
+            }
+            repository.setProperty(propertyName(PropertyName.SYS_SYNC_NUMBERS, entry.getKey()), numbers);
+            for (int f = 0; f < fields.length; f++) {
+                repository.setProperty(propertyName(fields[f], entry.getKey()), columns[f]);
+            }
+            chunk.dirty = false;
+        }
+        dirty = false;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content addressed store for large blocks of text, such as the bodies of
+ * issues and comments.
+ *
+ * Each text is compressed with deflate and written to a file named after
+ * the SHA-1 hash of its contents, so identical texts are only stored once.
+ * Only the hash is kept on the vertex. Files are spread over 256
+ * subdirectories by the first two characters of the hash.
+ *
+ * Files are never removed. A text written for a transaction that is later
+ * rolled back just becomes an unreferenced file.
+ */
+public class TextStore {
+    private static final Logger log = LoggerFactory.getLogger(TextStore.class); // NOPMD
+    private static final String ENCODING = "UTF-8";
+
+    private final File directory;
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    public TextStore(final File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Unable to create text store directory " + directory);
+        }
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of the text
+     */
+    public static String hash(final String text) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(ENCODING));
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(ENCODING + " is not available", e);
+        }
+    }
+
+    private File file(final String hash) {
+        return new File(new File(directory, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    /**
+     * Stores a text unless it is already in the store
+     *
+     * @return the hash to use to load the text again
+     */
+    public String put(final String text) {
+        final String hash = hash(text);
+        final File file = file(hash);
+        if (file.exists()) {
+            duplicates.incrementAndGet();
+            return hash;
+        }
+        final File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IllegalStateException("Unable to create directory " + parent);
+        }
+        // write to a temporary file first so a crash never leaves a truncated text behind,
+        // each writer gets its own so two threads storing the same text don't collide
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", parent);
+            final byte[] bytes = text.getBytes(ENCODING);
+            final OutputStream out = new DeflaterOutputStream(new FileOutputStream(tmp));
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            bytesIn.addAndGet(bytes.length);
+            bytesOut.addAndGet(tmp.length());
+            if (!tmp.renameTo(file) && !file.exists()) {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        } catch (IOException e) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalStateException("Unable to store text " + hash, e);
+        }
+        stored.incrementAndGet();
+        return hash;
+    }
+
+    /**
+     * Loads a text
+     *
+     * @return the text or null if there is no text with that hash
+     */
+    public String get(final String hash) {
+        final File file = file(hash);
+        if (!file.exists()) {
+            log.warn("Text {} is missing from the text store", hash);
+            return null;
+        }
+        try {
+            final InputStream in = new InflaterInputStream(new FileInputStream(file));
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buf = new byte[8192];
+                int len;
+                while ((len = in.read(buf)) > 0) {
+                    out.write(buf, 0, len);
+                }
+                return out.toString(ENCODING);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load text " + hash, e);
+        }
+    }
+
+    public boolean contains(final String hash) {
+        return file(hash).exists();
+    }
+
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    public void logStatistics() {
+        log.info("Text store: stored: {} duplicates: {} bytes: {} compressed: {}",
+                new Object[]{stored.get(), duplicates.get(), bytesIn.get(), bytesOut.get()});
+    }
+}
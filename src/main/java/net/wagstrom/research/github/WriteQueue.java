@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The operations waiting for the writer of an {@link AsyncBlueprintsDriver}
+ *
+ * Not thread safe, the driver guards it with its lock.
+ */
+class WriteQueue {
+    /**
+     * A queued operation and the repository or user it writes to
+     */
+    static final class Operation {
+        private final String entity;
+        private final Runnable runnable;
+
+        Operation(final String entity, final Runnable runnable) {
+            this.entity = entity;
+            this.runnable = runnable;
+        }
+
+        /**
+         * @return the repository or user written, null for lookups
+         */
+        String getEntity() {
+            return entity;
+        }
+
+        Runnable getRunnable() {
+            return runnable;
+        }
+    }
+
+    private final LinkedHashMap<String, Operation> operations = new LinkedHashMap<String, Operation>();
+    private long sequence = 0;
+
+    /**
+     * Adds an operation at the tail of the queue
+     *
+     * A queued operation with the same key is replaced, and the newer one
+     * moves to the tail: it must not run ahead of the operations that were
+     * queued between the two.
+     *
+     * @param key operations with the same key replace each other, null if
+     *   the operation must always run
+     * @param entity the repository or user written, null for lookups
+     * @param runnable the operation
+     * @return true if a queued operation was replaced
+     */
+    boolean add(final String key, final String entity, final Runnable runnable) {
+        final boolean replaced = key != null && operations.remove(key) != null;
+        operations.put(key == null ? "#" + sequence++ : key, new Operation(entity, runnable));
+        return replaced;
+    }
+
+    boolean contains(final String key) {
+        return key != null && operations.containsKey(key);
+    }
+
+    /**
+     * Removes up to max operations from the head of the queue
+     */
+    List<Operation> drain(final int max) {
+        final List<Operation> group = new ArrayList<Operation>();
+        final Iterator<Operation> it = operations.values().iterator();
+        while (it.hasNext() && group.size() < max) {
+            group.add(it.next());
+            it.remove();
+        }
+        return group;
+    }
+
+    /**
+     * Removes the queued operations that write to an entity
+     *
+     * @return the number of operations removed
+     */
+    int removeEntity(final String entity) {
+        int removed = 0;
+        final Iterator<Operation> it = operations.values().iterator();
+        while (it.hasNext()) {
+            if (entity.equals(it.next().getEntity())) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    int size() {
+        return operations.size();
+    }
+
+    boolean isEmpty() {
+        return operations.isEmpty();
+    }
+}
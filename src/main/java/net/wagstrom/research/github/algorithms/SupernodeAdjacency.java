@@ -0,0 +1,127 @@
+package net.wagstrom.research.github.algorithms;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+import net.wagstrom.research.github.EdgePartitions;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Reads the edges of a single label of a vertex without walking all of its
+ * edges.
+ *
+ * Vertices with fewer than degreeCap edges of the label are read the normal
+ * way, which is cheapest when there are few edges. Larger ones are read
+ * from the partition index kept by {@link EdgePartitions}. Vertices whose
+ * degrees have not been counted yet, and labels that are not partitioned,
+ * are always read the normal way.
+ *
+ * Edges created by a transaction that has not committed yet are only
+ * indexed on commit, so read supernodes outside of a write batch.
+ */
+public class SupernodeAdjacency {
+    /** degree from which vertices are read through the partition index */
+    public static final long DEFAULT_DEGREE_CAP = 1000;
+
+    private final EdgePartitions partitions;
+    private final long degreeCap;
+
+    /**
+     * @param partitions the partitions to read from, null to always walk the edges
+     * @param degreeCap the degree from which a vertex is read through the index
+     */
+    public SupernodeAdjacency(final EdgePartitions partitions, final long degreeCap) {
+        this.partitions = partitions;
+        this.degreeCap = degreeCap;
+    }
+
+    public long getDegreeCap() {
+        return degreeCap;
+    }
+
+    /**
+     * Gets the number of edges of a label, walking them only if the vertex
+     * has not been counted
+     */
+    public long getDegree(final Vertex vertex, final Direction direction, final String label) {
+        final long degree = EdgePartitions.getDegree(vertex, direction, label);
+        if (degree >= 0) {
+            return degree;
+        }
+        long ctr = 0;
+        for (Iterator<Edge> edges = vertex.getEdges(direction, label).iterator(); edges.hasNext(); edges.next()) {
+            ctr++;
+        }
+        return ctr;
+    }
+
+    /**
+     * @return true if the edges of the label are read through the partition index
+     */
+    public boolean isSupernode(final Vertex vertex, final Direction direction, final String label) {
+        return partitions != null && partitions.isPartitioned(label)
+                && EdgePartitions.getDegree(vertex, direction, label) >= degreeCap;
+    }
+
+    public List<Edge> getEdges(final Vertex vertex, final Direction direction, final String label) {
+        if (isSupernode(vertex, direction, label)) {
+            return partitions.getEdges(vertex, direction, label);
+        }
+        final List<Edge> edges = new ArrayList<Edge>();
+        for (Edge edge : vertex.getEdges(direction, label)) {
+            edges.add(edge);
+        }
+        return edges;
+    }
+
+    /**
+     * Gets the edges of a label that belong to the months from start to end
+     *
+     * Edges are selected by whole months, so edges from before start or
+     * after end in the same month are included.
+     */
+    public List<Edge> getEdges(final Vertex vertex, final Direction direction, final String label,
+            final Date start, final Date end) {
+        final String first = EdgePartitions.bucket(start.getTime() / 1000L);
+        final String last = EdgePartitions.bucket(end.getTime() / 1000L);
+        final List<Edge> edges = new ArrayList<Edge>();
+        if (partitions != null && partitions.isBucketed(label) && isSupernode(vertex, direction, label)) {
+            final Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            cal.setTime(start);
+            cal.set(Calendar.DAY_OF_MONTH, 1);
+            String bucket = first;
+            while (bucket.compareTo(last) <= 0) {
+                edges.addAll(partitions.getEdges(vertex, direction, label, bucket));
+                cal.add(Calendar.MONTH, 1);
+                bucket = EdgePartitions.bucket(cal.getTimeInMillis() / 1000L);
+            }
+            return edges;
+        }
+        for (Edge edge : vertex.getEdges(direction, label)) {
+            final String bucket = EdgePartitions.bucketOf(edge);
+            if (bucket != null && bucket.compareTo(first) >= 0 && bucket.compareTo(last) <= 0) {
+                edges.add(edge);
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * @return the vertices at the other end of the edges of a label
+     */
+    public List<Vertex> getVertices(final Vertex vertex, final Direction direction, final String label) {
+        final Direction other = direction == Direction.OUT ? Direction.IN : Direction.OUT;
+        final List<Vertex> vertices = new ArrayList<Vertex>();
+        for (Edge edge : getEdges(vertex, direction, label)) {
+            vertices.add(edge.getVertex(other));
+        }
+        return vertices;
+    }
+}
@@ -1,15 +1,17 @@
 package net.wagstrom.research.github.algorithms;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.List;
 
 import net.wagstrom.research.github.BlueprintsDriver;
 import net.wagstrom.research.github.EdgeType;
 import net.wagstrom.research.github.PropertyName;
+import net.wagstrom.research.github.RepositoryMembers;
 import net.wagstrom.research.github.VertexType;
 
-import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.gremlin.java.GremlinPipeline;
 
@@ -39,50 +41,71 @@ public class Traversals extends Algorithm {
      * 
      * Users who have forked the repository
      *
-     * Without doing an iteration over the objects we need to do an
-     * untyped cast using type erasure. Yeah, it sucks.
-     *
      * @param repo The vertex to traverse from
      * 
      * @return
      */
-    @SuppressWarnings("unchecked")
     public Set<Vertex> getAllRepositoryUsers(final Vertex repo) {
-        Set<Object> users = new HashSet<Object>();
+        return getRepositoryUserRoles(repo).keySet();
+    }
+
+    /**
+     * Get all the users related to a given repository along with how they
+     * are related
+     *
+     * This is the same set of users as {@link #getAllRepositoryUsers(Vertex)}.
+     * Each user is mapped to the bitwise or of the matching
+     * {@link RepositoryMembers} roles.
+     *
+     * @param repo The vertex to traverse from
+     * @return a map from user vertex to role bits
+     */
+    public Map<Vertex, Integer> getRepositoryUserRoles(final Vertex repo) {
+        Map<Vertex, Integer> users = new HashMap<Vertex, Integer>();
         GremlinPipeline<Vertex, Vertex> pipe = new GremlinPipeline<Vertex, Vertex>();
-        
-        List<? extends Element> userList = null;
-        userList = pipe.start(repo).in(EdgeType.REPOCOLLABORATOR).toList();
-        log.info("Collaboators: {}", userList.size());
-        users.addAll(userList);
+
+        // saveRepositoryCollaborators links from the repository to the user
+        pipe.start(repo).out(EdgeType.REPOCOLLABORATOR);
+        log.info("Collaboators: {}", addRoles(users, pipe, RepositoryMembers.COLLABORATOR));
+
+        // popular repositories have far more watchers than anything else
+        log.info("Watchers: {}", addRoles(users,
+                driver.getAdjacency().getVertices(repo, Direction.IN, EdgeType.REPOWATCHED),
+                RepositoryMembers.WATCHER));
 
         pipe = new GremlinPipeline<Vertex, Vertex>();
-        userList = pipe.start(repo).in(EdgeType.REPOWATCHED).toList();
-        log.info("Watchers: {}", userList.size());
-        users.addAll(userList);
-        
-        pipe = new GremlinPipeline<Vertex, Vertex>();
-        userList = pipe.start(repo).out(EdgeType.ISSUE).in(EdgeType.ISSUEOWNER).dedup().toList();
-        log.info("Issue owners: {}", userList.size());
-        users.addAll(userList);
-        
+        pipe.start(repo).out(EdgeType.ISSUE).in(EdgeType.ISSUEOWNER).dedup();
+        log.info("Issue owners: {}", addRoles(users, pipe, RepositoryMembers.ISSUE_OWNER));
+
         pipe = new GremlinPipeline<Vertex, Vertex>();
-        userList = pipe.start(repo).out(EdgeType.ISSUE).out(EdgeType.ISSUECOMMENT).in(EdgeType.ISSUECOMMENTOWNER).dedup().toList();
-        log.info("Issue Comment owners: {}", userList.size()); 
-        users.addAll(userList);
-        
+        pipe.start(repo).out(EdgeType.ISSUE).out(EdgeType.ISSUECOMMENT).in(EdgeType.ISSUECOMMENTOWNER).dedup();
+        log.info("Issue Comment owners: {}", addRoles(users, pipe, RepositoryMembers.ISSUE_COMMENTER));
+
         pipe = new GremlinPipeline<Vertex, Vertex>();
-        userList = pipe.start(repo).out(EdgeType.PULLREQUEST).in(EdgeType.PULLREQUESTOWNER).dedup().toList();
-        log.info("Pull Request owners: {}", userList.size());
-        users.addAll(userList);
-        
+        pipe.start(repo).out(EdgeType.PULLREQUEST).in(EdgeType.PULLREQUESTOWNER).dedup();
+        log.info("Pull Request owners: {}", addRoles(users, pipe, RepositoryMembers.PULLREQUEST_OWNER));
+
         pipe = new GremlinPipeline<Vertex, Vertex>();
-        userList = pipe.start(repo).out(EdgeType.PULLREQUEST).
+        pipe.start(repo).out(EdgeType.PULLREQUEST).
              out(EdgeType.PULLREQUESTDISCUSSION).in().
-             has(PropertyName.TYPE, VertexType.USER).dedup().toList();
-        log.info("Discussion users: {}", userList.size());
-        users.addAll(userList);
-        return (Set<Vertex>)(Set<?>)users;
+             has(PropertyName.TYPE, VertexType.USER).dedup();
+        int discussionUsers = addRoles(users, pipe, RepositoryMembers.DISCUSSION);
+        pipe = new GremlinPipeline<Vertex, Vertex>();
+        pipe.start(repo).out(EdgeType.PULLREQUEST).
+             out(EdgeType.PULLREQUESTISSUECOMMENT).in(EdgeType.PULLREQUESTCOMMENTOWNER).dedup();
+        discussionUsers += addRoles(users, pipe, RepositoryMembers.DISCUSSION);
+        log.info("Discussion users: {}", discussionUsers);
+        return users;
+    }
+
+    private int addRoles(final Map<Vertex, Integer> users, final Iterable<Vertex> pipe, final int role) {
+        int ctr = 0;
+        for (Vertex user : pipe) {
+            Integer roles = users.get(user);
+            users.put(user, roles == null ? role : roles | role);
+            ctr++;
+        }
+        return ctr;
     }
 
     /**
@@ -106,15 +129,17 @@ public class Traversals extends Algorithm {
         Set<Object> childRepositories = new HashSet<Object>();
         
         Set<Vertex> users = getAllRepositoryUsers(repo);
-        GremlinPipeline<Vertex, String> pipe = new GremlinPipeline<Vertex, String>();
-        
-        pipe.setStarts(users);
-        pipe.out(EdgeType.USEREVENT).out().
-             has(PropertyName.TYPE, VertexType.REPOSITORY).
-             hasNot(PropertyName.FULLNAME, "/").dedup().
-             property(PropertyName.FULLNAME).
-             fill(childRepositories);
-        
+        GremlinPipeline<Vertex, String> pipe;
+        // one user at a time, reading users with a lot of events through their partition
+        for (Vertex user : users) {
+            pipe = new GremlinPipeline<Vertex, String>();
+            pipe.setStarts(driver.getAdjacency().getVertices(user, Direction.OUT, EdgeType.USEREVENT));
+            pipe.out().
+                 has(PropertyName.TYPE, VertexType.REPOSITORY).
+                 hasNot(PropertyName.FULLNAME, "/").dedup().
+                 property(PropertyName.FULLNAME).
+                 fill(childRepositories);
+        }
     
         pipe = new GremlinPipeline<Vertex, String>();
         pipe.out(EdgeType.REPOWATCHED).dedup().
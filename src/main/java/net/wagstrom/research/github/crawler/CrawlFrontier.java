@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.crawler;
+
+import java.util.PriorityQueue;
+
+/**
+ * Priority queue of users and repositories waiting to be crawled.
+ *
+ * Targets closer to the seeds come out first. Among targets at the same
+ * depth, those that were discovered more often in the batch that produced
+ * them come first, and ties fall back to discovery order.
+ *
+ * The frontier is bounded so that a very popular user can't flood the heap
+ * with hundreds of thousands of followers. Targets offered once the
+ * frontier is full are dropped and counted.
+ */
+public class CrawlFrontier {
+    /**
+     * The kinds of things the crawler knows how to expand
+     */
+    public enum Kind { USER, REPOSITORY }
+
+    /**
+     * A single entry in the frontier
+     */
+    public static final class Target implements Comparable<Target> {
+        private final Kind kind;
+        private final String name;
+        private final int depth;
+        private final int weight;
+        private final long sequence;
+
+        Target(final Kind kind, final String name, final int depth, final int weight, final long sequence) {
+            this.kind = kind;
+            this.name = name;
+            this.depth = depth;
+            this.weight = weight;
+            this.sequence = sequence;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return the key used for this target in the visited set
+         */
+        public String getKey() {
+            return key(kind, name);
+        }
+
+        public int compareTo(final Target other) {
+            if (depth != other.depth) {
+                return depth < other.depth ? -1 : 1;
+            }
+            if (weight != other.weight) {
+                return weight > other.weight ? -1 : 1;
+            }
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ":" + name + "@" + depth;
+        }
+    }
+
+    private final PriorityQueue<Target> queue = new PriorityQueue<Target>();
+    private final int maxSize;
+    private long sequence = 0;
+    private long dropped = 0;
+
+    /**
+     * @param maxSize the maximum number of targets held at once
+     */
+    public CrawlFrontier(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Builds the key used to identify a target in the visited set
+     *
+     * Logins and repository names are case insensitive on GitHub, so the
+     * name is lowercased.
+     */
+    public static String key(final Kind kind, final String name) {
+        return (kind == Kind.USER ? "u:" : "r:") + name.toLowerCase();
+    }
+
+    /**
+     * Adds a target to the frontier
+     *
+     * @param kind user or repository
+     * @param name the login or full repository name
+     * @param depth number of hops from the seeds
+     * @param weight number of times the target was seen in the expansion that found it
+     * @return false if the frontier was full and the target was dropped
+     */
+    public boolean offer(final Kind kind, final String name, final int depth, final int weight) {
+        if (queue.size() >= maxSize) {
+            dropped++;
+            return false;
+        }
+        queue.add(new Target(kind, name, depth, weight, sequence++));
+        return true;
+    }
+
+    /**
+     * @return the next target to crawl or null if the frontier is empty
+     */
+    public Target poll() {
+        return queue.poll();
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of targets dropped because the frontier was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
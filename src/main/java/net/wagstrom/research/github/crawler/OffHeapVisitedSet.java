@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.crawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A set of visited keys that lives in a memory mapped file rather than on
+ * the Java heap.
+ *
+ * Keys are reduced to a 64-bit fingerprint and stored in an open addressing
+ * table with linear probing. A fingerprint of 0 marks an empty slot. This
+ * means that there is a very small chance (roughly n^2/2^65) that two keys
+ * collide and the second one is considered visited even though it is not.
+ * For a crawl of a few million logins that is a risk we're willing to take.
+ * Tables created as wide store a second, independent 64-bit fingerprint in
+ * every slot, for sets that must not lose keys to a collision.
+ *
+ * Because the table is backed by a file it also survives between runs, so a
+ * later crawl skips everything that an earlier crawl already covered.
+ */
+public class OffHeapVisitedSet {
+    private static final Logger log = LoggerFactory.getLogger(OffHeapVisitedSet.class); // NOPMD
+
+    private static final long MAGIC = 0x6769746d696e6572L; // "gitminer"
+    private static final long WIDE_MAGIC = 0x6769746d696e6532L; // "gitmine2"
+    private static final int HEADER_SIZE = 24; // magic, capacity, size
+    private static final int SLOT_SIZE = 8;
+    private static final int WIDE_SLOT_SIZE = 16;
+    /** the share of the slots that can be filled */
+    public static final double MAX_LOAD = 0.75;
+    /** largest table that fits into a single mapped buffer */
+    public static final int MAX_CAPACITY = 1 << 27;
+    /** largest wide table that fits into a single mapped buffer */
+    public static final int MAX_WIDE_CAPACITY = 1 << 26;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final boolean wide;
+    private final int slotSize;
+    private final int mask;
+    private final long maxSize;
+    private long size;
+
+    /**
+     * Opens or creates a visited set backed by the given file
+     *
+     * If the file already contains a table the capacity stored in the file
+     * wins over the requested capacity.
+     *
+     * @param path the file to map
+     * @param requestedCapacity the number of slots, rounded up to a power of two
+     * @throws IOException if the file cannot be mapped
+     */
+    public OffHeapVisitedSet(final File path, final int requestedCapacity) throws IOException {
+        this(path, requestedCapacity, false);
+    }
+
+    /**
+     * Opens or creates a visited set backed by the given file
+     *
+     * If the file already contains a table the capacity and width stored in
+     * the file win over the requested ones.
+     *
+     * @param path the file to map
+     * @param requestedCapacity the number of slots, rounded up to a power of two
+     * @param requestedWide whether or not to keep two fingerprints for every key
+     * @throws IOException if the file cannot be mapped
+     */
+    public OffHeapVisitedSet(final File path, final int requestedCapacity, final boolean requestedWide)
+            throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+
+        int cap;
+        long existingSize = 0;
+        final long magic = file.length() >= HEADER_SIZE ? file.readLong() : 0;
+        if (magic == MAGIC || magic == WIDE_MAGIC) {
+            wide = magic == WIDE_MAGIC;
+            cap = (int) file.readLong();
+            existingSize = file.readLong();
+            log.info("Reopening visited set {} with {} entries", path, existingSize);
+        } else {
+            wide = requestedWide;
+            cap = tableSizeFor(requestedCapacity, wide ? MAX_WIDE_CAPACITY : MAX_CAPACITY);
+        }
+        capacity = cap;
+        slotSize = wide ? WIDE_SLOT_SIZE : SLOT_SIZE;
+        mask = capacity - 1;
+        maxSize = (long) (capacity * MAX_LOAD);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity, wide));
+        buffer.putLong(0, wide ? WIDE_MAGIC : MAGIC);
+        buffer.putLong(8, capacity);
+        size = existingSize;
+        buffer.putLong(16, size);
+    }
+
+    /**
+     * @return the number of bytes a table with the given number of slots takes
+     */
+    public static long fileSize(final int capacity, final boolean wide) {
+        return HEADER_SIZE + (long) capacity * (wide ? WIDE_SLOT_SIZE : SLOT_SIZE);
+    }
+
+    private static int tableSizeFor(final int requested, final int maxCapacity) {
+        if (requested <= 0 || requested > maxCapacity) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + maxCapacity);
+        }
+        int cap = 1;
+        while (cap < requested) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    /**
+     * Computes the 64-bit fingerprint for a key
+     *
+     * This is FNV-1a over the characters of the key followed by the
+     * finalizer from MurmurHash3 to spread the bits. Zero is reserved for
+     * empty slots and is remapped.
+     *
+     * @param key the key to fingerprint
+     * @return a non-zero fingerprint
+     */
+    public static long fingerprint(final String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Computes the second fingerprint kept by wide tables
+     *
+     * This is a multiplicative hash over the characters of the key with a
+     * different multiplier, followed by the same finalizer, so it is
+     * independent of {@link #fingerprint(String)}.
+     */
+    public static long fingerprint2(final String key) {
+        long h = 0x84222325cbf29ce4L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h + key.charAt(i)) * 0x9e3779b97f4a7c15L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the offset of the slot holding a fingerprint, or of the empty
+     *      slot where it belongs
+     */
+    private int findSlot(final long fp, final long fp2) {
+        int slot = (int) (fp ^ (fp >>> 32)) & mask;
+        while (true) {
+            final int offset = HEADER_SIZE + slot * slotSize;
+            long current = buffer.getLong(offset);
+            if (current == 0 || current == fp && (!wide || buffer.getLong(offset + 8) == fp2)) {
+                return offset;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param key the key to check
+     * @return true if the key has been added to the set
+     */
+    public synchronized boolean contains(final String key) {
+        long fp = fingerprint(key);
+        return buffer.getLong(findSlot(fp, wide ? fingerprint2(key) : 0)) == fp;
+    }
+
+    /**
+     * Adds a key to the set
+     *
+     * @param key the key to add
+     * @return true if the key was not already in the set
+     * @throws IllegalStateException if the table is full
+     */
+    public synchronized boolean add(final String key) {
+        long fp = fingerprint(key);
+        long fp2 = wide ? fingerprint2(key) : 0;
+        int offset = findSlot(fp, fp2);
+        if (buffer.getLong(offset) == fp) {
+            return false;
+        }
+        if (size >= maxSize) {
+            throw new IllegalStateException("visited set is full at " + size + " entries");
+        }
+        buffer.putLong(offset, fp);
+        if (wide) {
+            buffer.putLong(offset + 8, fp2);
+        }
+        size++;
+        buffer.putLong(16, size);
+        return true;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isWide() {
+        return wide;
+    }
+
+    /**
+     * @return true if no more keys can be added without exceeding the load factor
+     */
+    public synchronized boolean isFull() {
+        return size >= maxSize;
+    }
+
+    /**
+     * Forces any changes out to disk
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Flushes the table and closes the underlying file
+     *
+     * The mapping itself is released when the buffer is garbage collected.
+     */
+    public synchronized void close() {
+        flush();
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            log.error("IOException closing visited set", e);
+        }
+    }
+}
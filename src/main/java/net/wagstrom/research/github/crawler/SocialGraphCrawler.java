@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.crawler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.wagstrom.research.github.ApiThrottle;
+import net.wagstrom.research.github.BlueprintsDriver;
+import net.wagstrom.research.github.crawler.CrawlFrontier.Kind;
+import net.wagstrom.research.github.crawler.CrawlFrontier.Target;
+import net.wagstrom.research.github.v3.EventMinerV3;
+import net.wagstrom.research.github.v3.RepositoryMinerV3;
+import net.wagstrom.research.github.v3.UserMinerV3;
+import net.wagstrom.research.github.v3.WatcherMinerV3;
+
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.User;
+import org.eclipse.egit.github.core.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Expands the crawl outward from a set of seed users and repositories.
+ *
+ * Users are expanded through their followers, the users they follow, and
+ * the repositories that show up in their public events. Repositories are
+ * expanded through their owners and watchers. Everything that is fetched is
+ * saved through the normal BlueprintsDriver methods, so the crawl produces
+ * exactly the same graph structure as the regular miner.
+ *
+ * This is the driver for the idea sketched out in
+ * {@link net.wagstrom.research.github.algorithms.Traversals#getAllChildRepositories(String)}.
+ *
+ * The crawl stops when the frontier is empty, when the maximum number of
+ * nodes has been expanded, when the API call budget is used up, or when the
+ * visited set is full.
+ */
+public class SocialGraphCrawler {
+    private static final Logger log = LoggerFactory.getLogger(SocialGraphCrawler.class); // NOPMD
+    private static final int PROGRESS_INTERVAL = 100;
+    private static final int FLUSH_INTERVAL = 1000;
+
+    private final BlueprintsDriver bp;
+    private final UserMinerV3 umv3;
+    private final RepositoryMinerV3 rmv3;
+    private final WatcherMinerV3 wmv3;
+    private final EventMinerV3 emv3;
+    private final ApiThrottle throttle;
+    private final OffHeapVisitedSet visited;
+    private final CrawlFrontier frontier;
+
+    private int maxDepth = 2;
+    private long maxNodes = 0;
+    private long maxCalls = 0;
+    private boolean crawlEvents = true;
+
+    public SocialGraphCrawler(final BlueprintsDriver bp, final UserMinerV3 umv3,
+            final RepositoryMinerV3 rmv3, final WatcherMinerV3 wmv3,
+            final EventMinerV3 emv3, final ApiThrottle throttle,
+            final OffHeapVisitedSet visited, final CrawlFrontier frontier) {
+        this.bp = bp;
+        this.umv3 = umv3;
+        this.rmv3 = rmv3;
+        this.wmv3 = wmv3;
+        this.emv3 = emv3;
+        this.throttle = throttle;
+        this.visited = visited;
+        this.frontier = frontier;
+    }
+
+    public void addSeedUser(final String login) {
+        frontier.offer(Kind.USER, login, 0, Integer.MAX_VALUE);
+    }
+
+    public void addSeedRepository(final String reponame) {
+        frontier.offer(Kind.REPOSITORY, reponame, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs the crawl until one of the stopping conditions is hit
+     *
+     * @return the number of users and repositories that were expanded
+     */
+    public long crawl() {
+        long startCalls = throttle.getCallCount();
+        long expanded = 0;
+        while (!frontier.isEmpty()) {
+            if (maxNodes > 0 && expanded >= maxNodes) {
+                log.info("Crawl stopping: expanded maximum of {} nodes", maxNodes);
+                break;
+            }
+            if (maxCalls > 0 && throttle.getCallCount() - startCalls >= maxCalls) {
+                log.info("Crawl stopping: used API call budget of {}", maxCalls);
+                break;
+            }
+            if (visited.isFull()) {
+                log.warn("Crawl stopping: visited set is full at {} entries", visited.size());
+                break;
+            }
+
+            // seeds are always expanded, even if an earlier crawl visited them
+            Target target = frontier.poll();
+            if (target.getDepth() > 0 && visited.contains(target.getKey())) {
+                continue;
+            }
+            log.debug("Crawling {}", target);
+            if (target.getKind() == Kind.USER) {
+                expandUser(target);
+            } else {
+                expandRepository(target);
+            }
+            // only marked once expanded, so a crash during the expansion doesn't skip it on resume
+            visited.add(target.getKey());
+
+            ++expanded;
+            if (expanded % PROGRESS_INTERVAL == 0) {
+                log.info("Crawl progress: expanded: {} frontier: {} visited: {} api calls: {}",
+                        new Object[]{expanded, frontier.size(), visited.size(), throttle.getCallCount() - startCalls});
+            }
+            if (expanded % FLUSH_INTERVAL == 0) {
+                flush();
+            }
+        }
+        flush();
+        log.info("Crawl finished: expanded: {} frontier remaining: {} dropped: {}",
+                new Object[]{expanded, frontier.size(), frontier.getDropped()});
+        return expanded;
+    }
+
+    /**
+     * Commits the graph before persisting the visited set, so the set never
+     * lists a node whose expansion was not committed
+     */
+    private void flush() {
+        bp.flush();
+        visited.flush();
+    }
+
+    private void expandUser(final Target target) {
+        final String login = target.getName();
+        final Map<String, Integer> users = new LinkedHashMap<String, Integer>();
+        final Map<String, Integer> repos = new LinkedHashMap<String, Integer>();
+
+        List<User> followers = umv3.getFollowers(login);
+        if (followers != null) {
+            bp.saveUserFollowers(login, followers);
+            countUsers(users, followers);
+        }
+
+        List<User> following = umv3.getFollowing(login);
+        if (following != null) {
+            bp.saveUserFollowing(login, following);
+            countUsers(users, following);
+        }
+
+        if (crawlEvents) {
+            List<Event> events = emv3.getUserEvents(login);
+            if (events != null) {
+                bp.saveUserEvents(login, events);
+                for (Event event : events) {
+                    if (event.getRepo() != null && event.getRepo().getName() != null
+                            && event.getRepo().getName().indexOf('/') > 0) {
+                        count(repos, event.getRepo().getName());
+                    }
+                }
+            }
+        }
+
+        // saved last for the same reason as in GitHubMain.fetchAllUserData
+        User userInfo = umv3.getUser(login);
+        if (userInfo != null) {
+            bp.saveUser(userInfo, true);
+        }
+
+        enqueue(Kind.USER, users, target.getDepth() + 1);
+        enqueue(Kind.REPOSITORY, repos, target.getDepth() + 1);
+    }
+
+    private void expandRepository(final Target target) {
+        final String[] split = target.getName().split("/");
+        if (split.length != 2) {
+            log.warn("Invalid repository name in crawl frontier: {}", target.getName());
+            return;
+        }
+        Repository repo = rmv3.getRepository(split[0], split[1]);
+        if (repo == null) {
+            return;
+        }
+        bp.saveRepository(repo);
+
+        final Map<String, Integer> users = new LinkedHashMap<String, Integer>();
+        if (repo.getOwner() != null && repo.getOwner().getLogin() != null) {
+            count(users, repo.getOwner().getLogin());
+        }
+        List<User> watchers = wmv3.getWatchers(repo);
+        if (watchers != null) {
+            bp.saveRepositoryWatchers(repo, watchers);
+            countUsers(users, watchers);
+        }
+        enqueue(Kind.USER, users, target.getDepth() + 1);
+    }
+
+    private void countUsers(final Map<String, Integer> counts, final List<User> users) {
+        for (User user : users) {
+            if (user != null && user.getLogin() != null) {
+                count(counts, user.getLogin());
+            }
+        }
+    }
+
+    private void count(final Map<String, Integer> counts, final String name) {
+        Integer current = counts.get(name);
+        counts.put(name, current == null ? 1 : current + 1);
+    }
+
+    private void enqueue(final Kind kind, final Map<String, Integer> counts, final int depth) {
+        if (depth > maxDepth) {
+            return;
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (!visited.contains(CrawlFrontier.key(kind, entry.getKey()))) {
+                frontier.offer(kind, entry.getKey(), depth, entry.getValue());
+            }
+        }
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param maxDepth the maximum number of hops away from the seeds to crawl
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @param maxNodes the maximum number of nodes to expand, 0 for no limit
+     */
+    public void setMaxNodes(final long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public long getMaxCalls() {
+        return maxCalls;
+    }
+
+    /**
+     * @param maxCalls the maximum number of API calls for the crawl, 0 for no limit
+     */
+    public void setMaxCalls(final long maxCalls) {
+        this.maxCalls = maxCalls;
+    }
+
+    public boolean isCrawlEvents() {
+        return crawlEvents;
+    }
+
+    public void setCrawlEvents(final boolean crawlEvents) {
+        this.crawlEvents = crawlEvents;
+    }
+}
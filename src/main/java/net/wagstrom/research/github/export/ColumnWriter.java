@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the values of one column to its own file.
+ *
+ * Numbers are written as little endian doubles and booleans and dictionary
+ * codes as little endian 32 bit integers, so R can read a whole column
+ * with a single readBin call. Missing values use the bit patterns R uses
+ * for NA. Other strings are written as UTF-8 terminated by a zero byte,
+ * with the empty string standing in for a missing value.
+ */
+public class ColumnWriter {
+    public static enum Kind { DOUBLE, LOGICAL, DICTIONARY, STRING }
+
+    /** R's NA_integer_ */
+    public static final int NA_INTEGER = Integer.MIN_VALUE;
+    /** R's NA_real_, a NaN with 1954 in the low word */
+    public static final long NA_DOUBLE_BITS = 0x7FF00000000007A2L;
+    private static final String ENCODING = "UTF-8";
+
+    private final String name;
+    private final Kind kind;
+    private final StringDictionary dictionary;
+    private final OutputStream out;
+    private final byte[] buf = new byte[8];
+    private long conflicts = 0;
+
+    /**
+     * @param dictionary the dictionary for {@link Kind#DICTIONARY} columns, otherwise null
+     */
+    public ColumnWriter(final File file, final String name, final Kind kind,
+            final StringDictionary dictionary) throws IOException {
+        this.name = name;
+        this.kind = kind;
+        this.dictionary = dictionary;
+        out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+    }
+
+    /**
+     * @return the kind of column for a value, null if the value can't be exported
+     */
+    public static Kind kindOf(final Object value) {
+        if (value instanceof Number) {
+            return Kind.DOUBLE;
+        }
+        if (value instanceof Boolean) {
+            return Kind.LOGICAL;
+        }
+        if (value instanceof String) {
+            return Kind.STRING;
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the number of values that didn't fit the column and were written as NA
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Writes the next value, null for a missing value
+     */
+    public void write(final Object value) throws IOException {
+        switch (kind) {
+        case DOUBLE:
+            if (value instanceof Number) {
+                writeLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+            } else {
+                countConflict(value);
+                writeLong(NA_DOUBLE_BITS);
+            }
+            break;
+        case LOGICAL:
+            if (value instanceof Boolean) {
+                writeInt(((Boolean) value) ? 1 : 0);
+            } else {
+                countConflict(value);
+                writeInt(NA_INTEGER);
+            }
+            break;
+        case DICTIONARY:
+            writeInt(value == null ? NA_INTEGER : dictionary.code(value.toString()));
+            break;
+        default:
+            if (value != null) {
+                out.write(value.toString().replace("\0", "").getBytes(ENCODING));
+            }
+            out.write(0);
+        }
+    }
+
+    /**
+     * Writes a number of missing values, used to fill in a column that
+     * first appears after some rows were already written
+     */
+    public void writeMissing(final long count) throws IOException {
+        for (long i = 0; i < count; i++) {
+            write(null);
+        }
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void countConflict(final Object value) {
+        if (value != null) {
+            conflicts++;
+        }
+    }
+
+    private void writeInt(final int v) throws IOException {
+        buf[0] = (byte) v;
+        buf[1] = (byte) (v >>> 8);
+        buf[2] = (byte) (v >>> 16);
+        buf[3] = (byte) (v >>> 24);
+        out.write(buf, 0, 4);
+    }
+
+    private void writeLong(final long v) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            buf[i] = (byte) (v >>> (8 * i));
+        }
+        out.write(buf, 0, 8);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.wagstrom.research.github.IdCols;
+import net.wagstrom.research.github.IndexNames;
+import net.wagstrom.research.github.VertexType;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.CloseableIterable;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Index;
+import com.tinkerpop.blueprints.IndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
+
+/**
+ * Exports the whole graph into column files for analysis in R.
+ *
+ * Every vertex type becomes a table under vertices/TYPE and every edge
+ * label a table under edges/LABEL. Each vertex type is exported by its own
+ * worker, which walks the type index and writes the vertices together with
+ * their out edges, so edge tables are split into one part for each type
+ * of out vertex: edges/LABEL/TYPE. Nothing is kept in memory apart from
+ * the open files and the dictionaries.
+ *
+ * Logins and repository names, the {@link IdCols#USER} and
+ * {@link IdCols#REPOSITORY} columns, are dictionary encoded with
+ * dictionaries shared by all tables, written to dictionaries/NAME.bin.
+ * Other strings, such as the full names of users, are written as they are.
+ * src/main/r/readColumnar.R reads the export back into data frames.
+ */
+public class ColumnarExporter {
+    private static final Logger log = LoggerFactory.getLogger(ColumnarExporter.class); // NOPMD
+    public static final int DEFAULT_THREADS = 4;
+    public static final String ID = "_id";
+    public static final String OUT = "_out";
+    public static final String IN = "_in";
+    /** properties encoded with a dictionary shared by all tables */
+    public static final String[] DICTIONARY_PROPERTIES = {IdCols.USER, IdCols.REPOSITORY};
+
+    private final IndexableGraph graph;
+    private final File directory;
+    private final int threads;
+    private final Map<String, StringDictionary> dictionaries = new HashMap<String, StringDictionary>();
+
+    /**
+     * @param graph the graph to export
+     * @param directory the directory to write the tables to
+     * @param threads the number of vertex types to export at the same time
+     */
+    public ColumnarExporter(final IndexableGraph graph, final File directory, final int threads) {
+        this.graph = graph;
+        this.directory = directory;
+        this.threads = threads < 1 ? 1 : threads;
+        for (String property : DICTIONARY_PROPERTIES) {
+            dictionaries.put(property, new StringDictionary(property));
+        }
+    }
+
+    /**
+     * @return every vertex type defined in {@link VertexType}
+     */
+    public static List<String> getVertexTypes() {
+        final List<String> types = new ArrayList<String>();
+        for (Field field : VertexType.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType().equals(String.class)) {
+                try {
+                    types.add((String) field.get(null));
+                } catch (IllegalAccessException e) {
+                    log.error("Unable to read vertex type {}", field.getName());
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Exports every vertex type and edge label
+     *
+     * @return the number of vertices exported
+     */
+    public long export() throws IOException {
+        final Index<Vertex> typeidx = graph.getIndex(IndexNames.TYPE, Vertex.class);
+        if (typeidx == null) {
+            throw new IOException("Graph has no " + IndexNames.TYPE + " index");
+        }
+        final long start = System.currentTimeMillis();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (final String type : getVertexTypes()) {
+            futures.add(pool.submit(new Callable<Long>() {
+                public Long call() throws IOException {
+                    return exportType(typeidx, type);
+                }
+            }));
+        }
+        pool.shutdown();
+        long total = 0;
+        try {
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting", e);
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new IOException("Unable to export graph", e.getCause());
+        }
+        final File dictionaryDirectory = new File(directory, "dictionaries");
+        if (!dictionaryDirectory.isDirectory() && !dictionaryDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + dictionaryDirectory);
+        }
+        for (StringDictionary dictionary : dictionaries.values()) {
+            dictionary.write(new File(dictionaryDirectory, dictionary.getName() + ".bin"));
+        }
+        log.info("Exported {} vertices to {} in {} seconds",
+                new Object[]{total, directory, (System.currentTimeMillis() - start) / 1000});
+        return total;
+    }
+
+    private long exportType(final Index<Vertex> typeidx, final String type) throws IOException {
+        final ColumnarTable vertices = new ColumnarTable(new File(new File(directory, "vertices"), type), dictionaries);
+        final Map<String, ColumnarTable> edges = new HashMap<String, ColumnarTable>();
+        final Map<String, Object> row = new HashMap<String, Object>();
+        final CloseableIterable<Vertex> hits = typeidx.get(IdCols.TYPE, type);
+        try {
+            for (Vertex vertex : hits) {
+                row.clear();
+                addProperties(row, vertex.getId(), vertex.getPropertyKeys(), vertex);
+                vertices.addRow(row);
+                for (Edge edge : vertex.getEdges(Direction.OUT)) {
+                    ColumnarTable table = edges.get(edge.getLabel());
+                    if (table == null) {
+                        table = new ColumnarTable(new File(new File(new File(directory, "edges"),
+                                edge.getLabel()), type), dictionaries);
+                        edges.put(edge.getLabel(), table);
+                    }
+                    row.clear();
+                    addProperties(row, edge.getId(), edge.getPropertyKeys(), edge);
+                    row.put(OUT, vertex.getId());
+                    row.put(IN, edge.getVertex(Direction.IN).getId());
+                    table.addRow(row);
+                }
+            }
+        } finally {
+            hits.close();
+            vertices.close();
+            for (ColumnarTable table : edges.values()) {
+                table.close();
+            }
+        }
+        if (vertices.getRows() > 0) {
+            log.info("Exported {} {} vertices with edges of {} labels",
+                    new Object[]{vertices.getRows(), type, edges.size()});
+        }
+        return vertices.getRows();
+    }
+
+    private static void addProperties(final Map<String, Object> row, final Object id,
+            final Iterable<String> keys, final Element element) {
+        row.put(ID, id);
+        for (String key : keys) {
+            row.put(key, element.getProperty(key));
+        }
+    }
+
+    private static class Arguments {
+        @Option(name="-d", usage="directory of the neo4j database to export")
+        private String dburl = null;
+
+        @Option(name="-o", usage="directory to write the export to")
+        private String output = null;
+
+        @Option(name="-t", usage="number of vertex types to export in parallel")
+        private int threads = DEFAULT_THREADS;
+    }
+
+    public static void main(final String[] args) {
+        final Arguments arguments = new Arguments();
+        final CmdLineParser parser = new CmdLineParser(arguments);
+        try {
+            parser.parseArgument(args);
+            if (arguments.dburl == null || arguments.output == null) {
+                throw new CmdLineException(parser, "both -d and -o must be given");
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage()); // NOPMD
+            System.err.println("\ncolumnar_export.sh -d database -o directory [-t threads]"); // NOPMD
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        final Neo4jGraph graph = new Neo4jGraph(arguments.dburl);
+        try {
+            new ColumnarExporter(graph, new File(arguments.output), arguments.threads).export();
+        } catch (IOException e) {
+            log.error("Export failed", e);
+            System.exit(1);
+        } finally {
+            graph.shutdown();
+        }
+    }
+}
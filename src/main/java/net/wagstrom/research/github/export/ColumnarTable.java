@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A table written one row at a time into a directory of column files.
+ *
+ * Columns are created as their properties first show up. A column that
+ * appears late is filled with missing values for the rows before it, and
+ * rows without a value for a column get a missing value. Only the open
+ * column files are held in memory, so tables of any size can be written.
+ *
+ * Closing the table writes schema.tsv, which lists the columns with their
+ * kind, their dictionary and the number of rows.
+ */
+public class ColumnarTable {
+    private static final Logger log = LoggerFactory.getLogger(ColumnarTable.class); // NOPMD
+    public static final String SCHEMA = "schema.tsv";
+
+    private final File directory;
+    private final Map<String, StringDictionary> dictionaries;
+    private final Map<String, ColumnWriter> columns = new LinkedHashMap<String, ColumnWriter>();
+    private final Set<String> skipped = new HashSet<String>();
+    private long rows = 0;
+
+    /**
+     * @param directory the directory for the column files, created with the first row
+     * @param dictionaries dictionaries for columns of the same name
+     */
+    public ColumnarTable(final File directory, final Map<String, StringDictionary> dictionaries) {
+        this.directory = directory;
+        this.dictionaries = dictionaries;
+    }
+
+    public void addRow(final Map<String, Object> values) throws IOException {
+        if (rows == 0 && columns.isEmpty() && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() == null || columns.containsKey(entry.getKey())
+                    || skipped.contains(entry.getKey())) {
+                continue;
+            }
+            final StringDictionary dictionary = dictionaries.get(entry.getKey());
+            final ColumnWriter.Kind kind = dictionary != null
+                    ? ColumnWriter.Kind.DICTIONARY : ColumnWriter.kindOf(entry.getValue());
+            if (kind == null) {
+                log.debug("Not exporting {} of type {}", entry.getKey(), entry.getValue().getClass());
+                skipped.add(entry.getKey());
+                continue;
+            }
+            final ColumnWriter column = new ColumnWriter(new File(directory, entry.getKey() + ".bin"),
+                    entry.getKey(), kind, dictionary);
+            column.writeMissing(rows);
+            columns.put(entry.getKey(), column);
+        }
+        for (ColumnWriter column : columns.values()) {
+            column.write(values.get(column.getName()));
+        }
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void close() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        final PrintWriter schema = new PrintWriter(new File(directory, SCHEMA), "UTF-8");
+        try {
+            schema.println("column\tkind\tdictionary\trows");
+            for (ColumnWriter column : columns.values()) {
+                column.close();
+                schema.println(column.getName() + "\t" + column.getKind().name().toLowerCase() + "\t"
+                        + (column.getDictionary() == null ? "" : column.getDictionary().getName()) + "\t" + rows);
+                if (column.getConflicts() > 0) {
+                    log.warn("{} values of {} in {} did not match the column and were exported as NA",
+                            new Object[]{column.getConflicts(), column.getName(), directory});
+                }
+            }
+        } finally {
+            schema.close();
+        }
+    }
+}
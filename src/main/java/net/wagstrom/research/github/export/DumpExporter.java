@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
+
+/**
+ * Writes a graph to a dump that {@link DumpImporter} can load into an
+ * empty database of any Neo4j version.
+ *
+ * The vertices and then the edges are streamed out in a single pass each,
+ * in the order the database stores them. For Neo4j that is id order, so
+ * the vertices end up sorted by id as {@link DumpFormat} expects.
+ */
+public class DumpExporter {
+    private static final Logger log = LoggerFactory.getLogger(DumpExporter.class); // NOPMD
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int LOG_INTERVAL = 1000000;
+
+    private final Graph graph;
+    private final Gson gson = new Gson();
+
+    public DumpExporter(final Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * @param directory the directory to write the dump to
+     */
+    public void export(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        final long start = System.currentTimeMillis();
+        long vertices = 0;
+        Writer out = open(new File(directory, DumpFormat.VERTICES));
+        try {
+            for (Vertex vertex : graph.getVertices()) {
+                writeLine(out, DumpFormat.encode(vertex));
+                if (++vertices % LOG_INTERVAL == 0) {
+                    log.info("Exported {} vertices", vertices);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        long edges = 0;
+        out = open(new File(directory, DumpFormat.EDGES));
+        try {
+            for (Edge edge : graph.getEdges()) {
+                writeLine(out, DumpFormat.encode(edge, edge.getVertex(Direction.OUT).getId(),
+                        edge.getVertex(Direction.IN).getId()));
+                if (++edges % LOG_INTERVAL == 0) {
+                    log.info("Exported {} edges", edges);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        log.info("Dumped {} vertices and {} edges to {} in {} seconds",
+                new Object[]{vertices, edges, directory, (System.currentTimeMillis() - start) / 1000});
+    }
+
+    private void writeLine(final Writer out, final JsonElement json) throws IOException {
+        out.write(gson.toJson(json));
+        out.write('\n');
+    }
+
+    private static Writer open(final File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE), "UTF-8"), BUFFER_SIZE);
+    }
+
+    private static class Arguments {
+        @Option(name="-d", usage="directory of the neo4j database to dump")
+        private String dburl = null;
+
+        @Option(name="-o", usage="directory to write the dump to")
+        private String output = null;
+    }
+
+    public static void main(final String[] args) {
+        final Arguments arguments = new Arguments();
+        final CmdLineParser parser = new CmdLineParser(arguments);
+        try {
+            parser.parseArgument(args);
+            if (arguments.dburl == null || arguments.output == null) {
+                throw new CmdLineException(parser, "both -d and -o must be given");
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage()); // NOPMD
+            System.err.println("\ndump_export.sh -d database -o directory"); // NOPMD
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        final Neo4jGraph graph = new Neo4jGraph(arguments.dburl);
+        try {
+            new DumpExporter(graph).export(new File(arguments.output));
+        } catch (IOException e) {
+            log.error("Dump failed", e);
+            System.exit(1);
+        } finally {
+            graph.shutdown();
+        }
+    }
+}
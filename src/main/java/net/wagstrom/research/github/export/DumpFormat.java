@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.export;
+
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.wagstrom.research.github.PropertyName;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * The line delimited format written by {@link DumpExporter} and read by
+ * {@link DumpImporter}.
+ *
+ * A dump is a directory with a gzipped file of vertices and one of edges.
+ * Every line is a single element in the extended GraphSON layout: the id,
+ * for edges the label and the ids of both vertices, and each property as
+ * an object with its type and value so that longs, ints and arrays come
+ * back as they were saved. Vertices are written in id order, which lets
+ * the importer map old ids to new ones with a sorted array.
+ *
+ * Properties that only describe the indices of a database, such as
+ * counted degrees, are left out. The graph rebuilds them as it is used.
+ */
+public final class DumpFormat {
+    public static final String VERTICES = "vertices.json.gz";
+    public static final String EDGES = "edges.json.gz";
+
+    public static final String ID = "_id";
+    public static final String TYPE = "_type";
+    public static final String LABEL = "_label";
+    public static final String OUT = "_outV";
+    public static final String IN = "_inV";
+    public static final String VERTEX = "vertex";
+    public static final String EDGE = "edge";
+    private static final String VALUE_TYPE = "type";
+    private static final String VALUE = "value";
+    private static final String ARRAY_SUFFIX = "[]";
+
+    private static final Map<Class<?>, String> TYPE_NAMES = new HashMap<Class<?>, String>();
+    static {
+        TYPE_NAMES.put(String.class, "string");
+        TYPE_NAMES.put(Integer.class, "integer");
+        TYPE_NAMES.put(Long.class, "long");
+        TYPE_NAMES.put(Double.class, "double");
+        TYPE_NAMES.put(Float.class, "float");
+        TYPE_NAMES.put(Boolean.class, "boolean");
+        TYPE_NAMES.put(Short.class, "short");
+        TYPE_NAMES.put(Byte.class, "byte");
+        TYPE_NAMES.put(String[].class, "string[]");
+        TYPE_NAMES.put(int[].class, "integer[]");
+        TYPE_NAMES.put(long[].class, "long[]");
+        TYPE_NAMES.put(double[].class, "double[]");
+        TYPE_NAMES.put(float[].class, "float[]");
+        TYPE_NAMES.put(boolean[].class, "boolean[]");
+        TYPE_NAMES.put(short[].class, "short[]");
+        TYPE_NAMES.put(byte[].class, "byte[]");
+    }
+
+    /**
+     * This is static class for helpers only
+     */
+    private DumpFormat() {}
+
+    /**
+     * @return true if the property is bookkeeping for an index and is rebuilt
+     *      instead of being dumped
+     */
+    public static boolean isIndexProperty(final String key) {
+        return key.equals(PropertyName.SYS_EDGES_INDEXED)
+                || key.equals(PropertyName.SYS_DEGREES_COUNTED)
+                || key.startsWith("sys_degree_");
+    }
+
+    public static JsonObject encode(final Vertex vertex) {
+        final JsonObject json = new JsonObject();
+        json.add(ID, encodeId(vertex.getId()));
+        json.addProperty(TYPE, VERTEX);
+        addProperties(json, vertex);
+        return json;
+    }
+
+    public static JsonObject encode(final Edge edge, final Object outId, final Object inId) {
+        final JsonObject json = new JsonObject();
+        json.add(ID, encodeId(edge.getId()));
+        json.addProperty(TYPE, EDGE);
+        json.addProperty(LABEL, edge.getLabel());
+        json.add(OUT, encodeId(outId));
+        json.add(IN, encodeId(inId));
+        addProperties(json, edge);
+        return json;
+    }
+
+    /**
+     * @return the id written to the dump, a long where the id is a number
+     */
+    public static Object decodeId(final JsonElement id) {
+        final JsonPrimitive primitive = id.getAsJsonPrimitive();
+        return primitive.isNumber() ? (Object) primitive.getAsLong() : primitive.getAsString();
+    }
+
+    /**
+     * @return the properties of an element, without the keys of the format itself
+     */
+    public static Map<String, Object> decodeProperties(final JsonObject json) {
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+            if (!entry.getKey().startsWith("_")) {
+                properties.put(entry.getKey(), decodeValue(entry.getValue().getAsJsonObject()));
+            }
+        }
+        return properties;
+    }
+
+    private static JsonElement encodeId(final Object id) {
+        return id instanceof Number ? new JsonPrimitive(((Number) id).longValue()) : new JsonPrimitive(id.toString());
+    }
+
+    private static void addProperties(final JsonObject json, final Element element) {
+        for (String key : element.getPropertyKeys()) {
+            if (isIndexProperty(key)) {
+                continue;
+            }
+            final Object value = element.getProperty(key);
+            final String type = value == null ? null : TYPE_NAMES.get(value.getClass());
+            if (type == null) {
+                throw new JsonParseException("Unable to dump " + key + " of " + element);
+            }
+            final JsonObject typed = new JsonObject();
+            typed.addProperty(VALUE_TYPE, type);
+            if (value.getClass().isArray()) {
+                final JsonArray array = new JsonArray();
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    array.add(encodeScalar(Array.get(value, i)));
+                }
+                typed.add(VALUE, array);
+            } else {
+                typed.add(VALUE, encodeScalar(value));
+            }
+            json.add(key, typed);
+        }
+    }
+
+    private static JsonPrimitive encodeScalar(final Object value) {
+        if (value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        }
+        if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        }
+        return new JsonPrimitive(value.toString());
+    }
+
+    private static Object decodeValue(final JsonObject typed) {
+        final String type = typed.get(VALUE_TYPE).getAsString();
+        final JsonElement value = typed.get(VALUE);
+        if (!type.endsWith(ARRAY_SUFFIX)) {
+            return decodeScalar(type, value);
+        }
+        final String elementType = type.substring(0, type.length() - ARRAY_SUFFIX.length());
+        final JsonArray values = value.getAsJsonArray();
+        final Object array = Array.newInstance(arrayComponent(elementType), values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Array.set(array, i, decodeScalar(elementType, values.get(i)));
+        }
+        return array;
+    }
+
+    private static Object decodeScalar(final String type, final JsonElement value) {
+        if ("string".equals(type)) {
+            return value.getAsString();
+        } else if ("integer".equals(type)) {
+            return value.getAsInt();
+        } else if ("long".equals(type)) {
+            return value.getAsLong();
+        } else if ("double".equals(type)) {
+            return value.getAsDouble();
+        } else if ("float".equals(type)) {
+            return value.getAsFloat();
+        } else if ("boolean".equals(type)) {
+            return value.getAsBoolean();
+        } else if ("short".equals(type)) {
+            return value.getAsShort();
+        } else if ("byte".equals(type)) {
+            return value.getAsByte();
+        }
+        throw new JsonParseException("Unknown property type " + type);
+    }
+
+    private static Class<?> arrayComponent(final String type) {
+        for (Map.Entry<Class<?>, String> entry : TYPE_NAMES.entrySet()) {
+            if (entry.getValue().equals(type + ARRAY_SUFFIX)) {
+                return entry.getKey().getComponentType();
+            }
+        }
+        throw new JsonParseException("Unknown array type " + type);
+    }
+}
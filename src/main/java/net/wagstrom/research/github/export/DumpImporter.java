@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.export;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import net.wagstrom.research.github.IdCols;
+import net.wagstrom.research.github.IndexNames;
+import net.wagstrom.research.github.PropertyName;
+import net.wagstrom.research.github.VertexType;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Index;
+import com.tinkerpop.blueprints.IndexableGraph;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.TransactionalGraph.Conclusion;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4jbatch.Neo4jBatchGraph;
+
+/**
+ * Rebuilds a graph from a dump written by {@link DumpExporter}.
+ *
+ * Lines are read in batches and parsed by a pool of threads while a single
+ * writer creates the elements in the order of the file. Vertices are
+ * created first and their old ids mapped to the new ones, after which
+ * every edge is created directly from the mapped ids without looking for
+ * an existing edge, because a dump has each edge exactly once.
+ *
+ * When the graph is a {@link Neo4jBatchGraph} the elements are written
+ * through the batch inserter with all of their properties at once, so the
+ * load is bound by the disk rather than by the database. The identity and
+ * type indices are filled in as the vertices are created. The edge index
+ * and the counted degrees are rebuilt by the driver as the graph is used.
+ */
+public class DumpImporter {
+    private static final Logger log = LoggerFactory.getLogger(DumpImporter.class); // NOPMD
+    public static final int DEFAULT_THREADS = 4;
+    private static final int BATCH_LINES = 1000;
+    private static final int COMMIT_SIZE = 10000;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int LOG_INTERVAL = 1000000;
+
+    /** for each vertex type the index and key it is found by */
+    private static final Map<String, String[]> IDENTITIES = new HashMap<String, String[]>();
+    static {
+        IDENTITIES.put(VertexType.COMMENT, new String[]{IndexNames.COMMENT, IdCols.COMMENT});
+        IDENTITIES.put(VertexType.COMMIT, new String[]{IndexNames.COMMIT, IdCols.COMMIT});
+        IDENTITIES.put(VertexType.DISCUSSION, new String[]{IndexNames.DISCUSSION, IdCols.DISCUSSION});
+        IDENTITIES.put(VertexType.DOWNLOAD, new String[]{IndexNames.DOWNLOAD, IdCols.DOWNLOAD});
+        IDENTITIES.put(VertexType.EMAIL, new String[]{IndexNames.EMAIL, IdCols.EMAIL});
+        IDENTITIES.put(VertexType.EVENT, new String[]{IndexNames.EVENT, IdCols.EVENT});
+        IDENTITIES.put(VertexType.FILE, new String[]{IndexNames.FILE, IdCols.FILE});
+        IDENTITIES.put(VertexType.GIST, new String[]{IndexNames.GIST, IdCols.GIST});
+        IDENTITIES.put(VertexType.GISTFILE, new String[]{IndexNames.GISTFILE, IdCols.GISTFILE});
+        IDENTITIES.put(VertexType.GIT_USER, new String[]{IndexNames.GITUSER, IdCols.GITUSER});
+        IDENTITIES.put(VertexType.GOLLUM, new String[]{IndexNames.GOLLUM, IdCols.GOLLUM});
+        IDENTITIES.put(VertexType.GRAVATAR, new String[]{IndexNames.GRAVATAR, IdCols.GRAVATAR});
+        IDENTITIES.put(VertexType.ISSUE, new String[]{IndexNames.ISSUE, IdCols.ISSUE});
+        IDENTITIES.put(VertexType.ISSUE_EVENT, new String[]{IndexNames.ISSUEEVENT, IdCols.EVENT});
+        IDENTITIES.put(VertexType.LABEL, new String[]{IndexNames.ISSUELABEL, IdCols.LABEL});
+        IDENTITIES.put(VertexType.MILESTONE, new String[]{IndexNames.MILESTONE, IdCols.MILESTONE});
+        IDENTITIES.put(VertexType.NAME, new String[]{IndexNames.NAME, IdCols.NAME});
+        IDENTITIES.put(VertexType.ORGANIZATION, new String[]{IndexNames.ORGANIZATION, IdCols.ORGANIZATION});
+        IDENTITIES.put(VertexType.PULLREQUEST, new String[]{IndexNames.PULLREQUEST, IdCols.PULLREQUEST});
+        IDENTITIES.put(VertexType.PULLREQUESTMARKER,
+                new String[]{IndexNames.PULLREQUESTMARKER, IdCols.PULLREQUESTMARKER});
+        IDENTITIES.put(VertexType.PULLREQUESTREVIEWCOMMENT,
+                new String[]{IndexNames.PULLREQUESTREVIEWCOMMENT, IdCols.PULLREQUESTREVIEWCOMMENT});
+        IDENTITIES.put(VertexType.REPOSITORY, new String[]{IndexNames.REPOSITORY, IdCols.REPOSITORY});
+        IDENTITIES.put(VertexType.TEAM, new String[]{IndexNames.TEAM, IdCols.TEAM});
+        IDENTITIES.put(VertexType.USER, new String[]{IndexNames.USER, IdCols.USER});
+    }
+
+    private final IndexableGraph graph;
+    private final BatchInserter inserter;
+    private final int threads;
+    private final IdMap ids = new IdMap();
+    private final Map<String, Index<Vertex>> indices = new HashMap<String, Index<Vertex>>();
+    private long uncommitted = 0;
+    private long missingVertices = 0;
+
+    /**
+     * One line of the dump, parsed
+     */
+    private static class Record {
+        private Object id;
+        private String label;
+        private Object out;
+        private Object in;
+        private Map<String, Object> properties;
+    }
+
+    /**
+     * Maps the ids of the dump to the ids of the new graph
+     *
+     * Dumps list their vertices in id order, so numeric ids are kept in a
+     * pair of sorted arrays and found with a binary search, which takes
+     * 16 bytes for each vertex. Anything else goes into a hash map.
+     */
+    static class IdMap {
+        private long[] keys = new long[1024];
+        private long[] values = new long[1024];
+        private int size = 0;
+        private final Map<Object, Object> others = new HashMap<Object, Object>();
+
+        void put(final Object key, final Object value) {
+            if (key instanceof Long && value instanceof Long && (size == 0 || (Long) key > keys[size - 1])) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                keys[size] = (Long) key;
+                values[size] = (Long) value;
+                size++;
+            } else {
+                others.put(key, value);
+            }
+        }
+
+        Object get(final Object key) {
+            if (key instanceof Long) {
+                final int pos = Arrays.binarySearch(keys, 0, size, (Long) key);
+                if (pos >= 0) {
+                    return values[pos];
+                }
+            }
+            return others.get(key);
+        }
+
+        int size() {
+            return size + others.size();
+        }
+    }
+
+    /**
+     * @param graph an empty graph to load the dump into
+     * @param threads the number of threads parsing the dump
+     */
+    public DumpImporter(final IndexableGraph graph, final int threads) {
+        this.graph = graph;
+        this.threads = threads < 1 ? 1 : threads;
+        inserter = graph instanceof Neo4jBatchGraph ? ((Neo4jBatchGraph) graph).getRawGraph() : null;
+        indices.put(IndexNames.TYPE, getOrCreateIndex(IndexNames.TYPE));
+        for (String[] identity : IDENTITIES.values()) {
+            indices.put(identity[0], getOrCreateIndex(identity[0]));
+        }
+    }
+
+    /**
+     * Loads the vertices and then the edges of a dump
+     */
+    public void load(final File directory) throws IOException {
+        final long start = System.currentTimeMillis();
+        final long vertices = read(new File(directory, DumpFormat.VERTICES), true);
+        log.info("Loaded {} vertices, now loading edges", vertices);
+        final long edges = read(new File(directory, DumpFormat.EDGES), false);
+        if (inserter != null) {
+            log.info("Flushing indices");
+            ((Neo4jBatchGraph) graph).flushIndices();
+        } else if (graph instanceof TransactionalGraph) {
+            ((TransactionalGraph) graph).stopTransaction(Conclusion.SUCCESS);
+        }
+        if (missingVertices > 0) {
+            log.warn("Skipped {} edges with vertices missing from the dump", missingVertices);
+        }
+        log.info("Loaded {} vertices and {} edges from {} in {} seconds",
+                new Object[]{vertices, edges, directory, (System.currentTimeMillis() - start) / 1000});
+    }
+
+    /**
+     * Parses a file on the pool and writes its records in order
+     *
+     * At most two batches per thread are parsed ahead of the writer, which
+     * keeps the memory needed independent of the size of the dump.
+     */
+    private long read(final File file, final boolean vertices) throws IOException {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final LinkedList<Future<List<Record>>> pending = new LinkedList<Future<List<Record>>>();
+        final BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), "UTF-8"), BUFFER_SIZE);
+        long count = 0;
+        try {
+            List<String> lines = new ArrayList<String>(BATCH_LINES);
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() == BATCH_LINES) {
+                    pending.add(pool.submit(parse(lines)));
+                    lines = new ArrayList<String>(BATCH_LINES);
+                    if (pending.size() >= threads * 2) {
+                        count = write(pending.removeFirst(), vertices, count);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                pending.add(pool.submit(parse(lines)));
+            }
+            while (!pending.isEmpty()) {
+                count = write(pending.removeFirst(), vertices, count);
+            }
+        } finally {
+            in.close();
+            pool.shutdownNow();
+        }
+        return count;
+    }
+
+    private static Callable<List<Record>> parse(final List<String> lines) {
+        return new Callable<List<Record>>() {
+            public List<Record> call() {
+                final JsonParser parser = new JsonParser();
+                final List<Record> records = new ArrayList<Record>(lines.size());
+                for (String line : lines) {
+                    if (line.length() == 0) {
+                        continue;
+                    }
+                    final JsonObject json = parser.parse(line).getAsJsonObject();
+                    final Record record = new Record();
+                    record.id = DumpFormat.decodeId(json.get(DumpFormat.ID));
+                    if (json.has(DumpFormat.LABEL)) {
+                        record.label = json.get(DumpFormat.LABEL).getAsString();
+                        record.out = DumpFormat.decodeId(json.get(DumpFormat.OUT));
+                        record.in = DumpFormat.decodeId(json.get(DumpFormat.IN));
+                    }
+                    record.properties = DumpFormat.decodeProperties(json);
+                    records.add(record);
+                }
+                return records;
+            }
+        };
+    }
+
+    private long write(final Future<List<Record>> batch, final boolean vertices, final long count)
+            throws IOException {
+        final List<Record> records;
+        try {
+            records = batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading dump", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to parse dump", e.getCause());
+        }
+        long ctr = count;
+        for (Record record : records) {
+            if (vertices) {
+                addVertex(record);
+            } else {
+                addEdge(record);
+            }
+            if (++ctr % LOG_INTERVAL == 0) {
+                log.info("Loaded {} {}", ctr, vertices ? "vertices" : "edges");
+            }
+            if (inserter == null && graph instanceof TransactionalGraph && ++uncommitted >= COMMIT_SIZE) {
+                ((TransactionalGraph) graph).stopTransaction(Conclusion.SUCCESS);
+                uncommitted = 0;
+            }
+        }
+        return ctr;
+    }
+
+    private void addVertex(final Record record) {
+        final Vertex vertex;
+        if (inserter != null) {
+            vertex = graph.getVertex(inserter.createNode(record.properties));
+        } else {
+            vertex = graph.addVertex(null);
+            for (Map.Entry<String, Object> property : record.properties.entrySet()) {
+                vertex.setProperty(property.getKey(), property.getValue());
+            }
+        }
+        ids.put(record.id, vertex.getId());
+        final Object type = record.properties.get(PropertyName.TYPE);
+        if (type == null) {
+            return;
+        }
+        indices.get(IndexNames.TYPE).put(IdCols.TYPE, type, vertex);
+        final String[] identity = IDENTITIES.get(type);
+        if (identity != null && record.properties.get(identity[1]) != null) {
+            indices.get(identity[0]).put(identity[1], record.properties.get(identity[1]), vertex);
+        }
+    }
+
+    private void addEdge(final Record record) {
+        final Object out = ids.get(record.out);
+        final Object in = ids.get(record.in);
+        if (out == null || in == null) {
+            missingVertices++;
+            return;
+        }
+        if (inserter != null) {
+            inserter.createRelationship((Long) out, (Long) in,
+                    DynamicRelationshipType.withName(record.label), record.properties);
+            return;
+        }
+        final Edge edge = graph.addEdge(null, graph.getVertex(out), graph.getVertex(in), record.label);
+        for (Map.Entry<String, Object> property : record.properties.entrySet()) {
+            edge.setProperty(property.getKey(), property.getValue());
+        }
+    }
+
+    private Index<Vertex> getOrCreateIndex(final String name) {
+        final Index<Vertex> index = graph.getIndex(name, Vertex.class);
+        return index == null ? graph.createIndex(name, Vertex.class) : index;
+    }
+
+    private static class Arguments {
+        @Option(name="-i", usage="directory of the dump to load")
+        private String input = null;
+
+        @Option(name="-d", usage="directory of the new neo4j database")
+        private String dburl = null;
+
+        @Option(name="-t", usage="number of threads parsing the dump")
+        private int threads = DEFAULT_THREADS;
+    }
+
+    public static void main(final String[] args) {
+        final Arguments arguments = new Arguments();
+        final CmdLineParser parser = new CmdLineParser(arguments);
+        try {
+            parser.parseArgument(args);
+            if (arguments.input == null || arguments.dburl == null) {
+                throw new CmdLineException(parser, "both -i and -d must be given");
+            }
+            if (new File(arguments.dburl, "neostore").exists()) {
+                throw new CmdLineException(parser, "a database already exists at " + arguments.dburl);
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage()); // NOPMD
+            System.err.println("\ndump_import.sh -i dump -d database [-t threads]"); // NOPMD
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        final Neo4jBatchGraph graph = new Neo4jBatchGraph(arguments.dburl);
+        try {
+            new DumpImporter(graph, arguments.threads).load(new File(arguments.input));
+        } catch (IOException e) {
+            log.error("Import failed", e);
+            System.exit(1);
+        } finally {
+            graph.shutdown();
+        }
+    }
+}
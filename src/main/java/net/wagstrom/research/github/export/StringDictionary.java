@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2011-2012 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wagstrom.research.github.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each distinct string a small integer code.
+ *
+ * A dictionary is shared by every table that has a column of its name, so
+ * a login has the same code for users, organizations and every edge table
+ * and joins can be done on the codes. Codes start at 0 in the order the
+ * strings were first seen.
+ */
+public class StringDictionary {
+    private final String name;
+    private final Map<String, Integer> codes = new HashMap<String, Integer>();
+    private final List<String> values = new ArrayList<String>();
+
+    public StringDictionary(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int code(final String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Writes the strings in code order, each terminated by a zero byte
+     */
+    public synchronized void write(final File file) throws IOException {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+        try {
+            for (String value : values) {
+                out.write(value.replace("\0", "").getBytes("UTF-8"));
+                out.write(0);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package edu.unl.cse.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class PathDictionaryTest extends TestCase {
+    @Test
+    public void testTokens() {
+        PathDictionary paths = new PathDictionary("rails/rails");
+        assertEquals("rails--lib/rails.rb", paths.tokenOf("lib/rails.rb"));
+        assertTrue(paths.isTokenOf("rails--lib/rails.rb", "lib/rails.rb"));
+        assertFalse(paths.isTokenOf("resque--lib/rails.rb", "lib/rails.rb"));
+        assertFalse(paths.isTokenOf("rails--lib/rails.rb", "rails.rb"));
+        assertFalse(paths.isTokenOf(null, "lib/rails.rb"));
+    }
+
+    @Test
+    public void testFilesUnder() {
+        PathDictionary paths = new PathDictionary("rails/rails");
+        paths.put("lib/rails.rb", 1L);
+        paths.put("lib/rails/engine.rb", 2L);
+        paths.put("lib-old/rails.rb", 3L);
+        paths.put("lib0.rb", 4L);
+        paths.put("README", 5L);
+        SortedMap<String, Object> lib = paths.filesUnder("lib");
+        assertEquals(2, lib.size());
+        assertEquals(1L, lib.get("lib/rails.rb"));
+        assertEquals(2L, lib.get("lib/rails/engine.rb"));
+        assertEquals(1, paths.filesUnder("lib/rails").size());
+        assertEquals(5, paths.filesUnder("").size());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = File.createTempFile("paths", ".paths");
+        try {
+            PathDictionary paths = new PathDictionary("rails/rails");
+            paths.put("lib/rails.rb", 1L);
+            paths.put("README", "v7");
+            paths.save(file);
+            PathDictionary read = PathDictionary.load(file, "rails/rails");
+            assertEquals(2, read.size());
+            assertEquals(1L, read.getId("lib/rails.rb"));
+            assertEquals("v7", read.getId("README"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMissingFile() {
+        PathDictionary paths = PathDictionary.load(new File("/nonexistent/rails.paths"), "rails/rails");
+        assertEquals(0, paths.size());
+    }
+}
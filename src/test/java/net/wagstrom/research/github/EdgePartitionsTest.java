@@ -0,0 +1,68 @@
+package net.wagstrom.research.github;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+import junit.framework.TestCase;
+
+public class EdgePartitionsTest extends TestCase {
+    @Test
+    public void testDegrees() {
+        TinkerGraph graph = new TinkerGraph();
+        EdgePartitions partitions = new EdgePartitions(graph, Arrays.asList(EdgeType.FOLLOWER),
+                Arrays.asList(EdgeType.USEREVENT));
+        EdgePartitions.Changes changes = new EdgePartitions.Changes();
+        Vertex a = graph.addVertex(null);
+        Vertex b = graph.addVertex(null);
+        Vertex c = graph.addVertex(null);
+        // an edge from before degrees were counted
+        graph.addEdge(null, a, b, EdgeType.FOLLOWER);
+        assertEquals(-1, EdgePartitions.getDegree(a, Direction.OUT, EdgeType.FOLLOWER));
+
+        partitions.added(changes, graph.addEdge(null, a, c, EdgeType.FOLLOWER));
+        partitions.apply(changes, graph);
+        assertTrue(changes.isEmpty());
+        assertEquals(2, EdgePartitions.getDegree(a, Direction.OUT, EdgeType.FOLLOWER));
+        assertEquals(1, EdgePartitions.getDegree(c, Direction.IN, EdgeType.FOLLOWER));
+        assertEquals(0, EdgePartitions.getDegree(c, Direction.OUT, EdgeType.FOLLOWER));
+        assertEquals(2, partitions.getEdges(a, Direction.OUT, EdgeType.FOLLOWER).size());
+
+        partitions.added(changes, graph.addEdge(null, a, b, EdgeType.REPOWATCHED));
+        partitions.added(changes, graph.addEdge(null, c, a, EdgeType.FOLLOWER));
+        partitions.apply(changes, graph);
+        // labels that are not partitioned are not counted
+        assertEquals(-1, EdgePartitions.getDegree(a, Direction.OUT, EdgeType.REPOWATCHED));
+        assertEquals(1, EdgePartitions.getDegree(a, Direction.IN, EdgeType.FOLLOWER));
+        assertEquals(2, EdgePartitions.getDegree(a, Direction.OUT, EdgeType.FOLLOWER));
+        assertEquals(1, partitions.getEdges(c, Direction.OUT, EdgeType.FOLLOWER).size());
+        assertEquals(0, partitions.getEdges(a, Direction.OUT, EdgeType.REPOWATCHED).size());
+    }
+
+    @Test
+    public void testBuckets() {
+        TinkerGraph graph = new TinkerGraph();
+        EdgePartitions partitions = new EdgePartitions(graph, Arrays.<String>asList(),
+                Arrays.asList(EdgeType.USEREVENT));
+        EdgePartitions.Changes changes = new EdgePartitions.Changes();
+        assertEquals("2012-06", EdgePartitions.bucket(1340000000L));
+        Vertex user = graph.addVertex(null);
+        Vertex june = graph.addVertex(null);
+        june.setProperty(PropertyName.CREATED_AT, 1340000000L);
+        Vertex july = graph.addVertex(null);
+        july.setProperty(PropertyName.CREATED_AT, 1342000000L);
+        partitions.added(changes, graph.addEdge(null, user, june, EdgeType.USEREVENT));
+        Edge edge = graph.addEdge(null, user, july, EdgeType.USEREVENT);
+        partitions.added(changes, edge);
+        partitions.apply(changes, graph);
+        assertEquals("2012-07", edge.getProperty(PropertyName.SYS_BUCKET));
+        assertEquals(2, partitions.getEdges(user, Direction.OUT, EdgeType.USEREVENT).size());
+        assertEquals(1, partitions.getEdges(user, Direction.OUT, EdgeType.USEREVENT, "2012-07").size());
+        assertEquals(0, partitions.getEdges(user, Direction.OUT, EdgeType.USEREVENT, "2012-05").size());
+    }
+}
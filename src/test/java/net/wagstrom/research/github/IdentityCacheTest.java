@@ -0,0 +1,54 @@
+package net.wagstrom.research.github;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class IdentityCacheTest extends TestCase {
+    @Test
+    public void testEviction() {
+        IdentityCache cache = new IdentityCache(2);
+        cache.put("user-idx", "pridkett", 1L);
+        cache.put("user-idx", "jurgns", 2L);
+        assertEquals(1L, cache.get("user-idx", "pridkett"));
+        cache.put("user-idx", "dhh", 3L);
+        // jurgns was the least recently used
+        assertNull(cache.get("user-idx", "jurgns"));
+        assertEquals(1L, cache.get("user-idx", "pridkett"));
+        assertEquals(3L, cache.get("user-idx", "dhh"));
+        assertEquals(2, cache.size("user-idx"));
+    }
+
+    @Test
+    public void testIndicesAreSeparate() {
+        IdentityCache cache = new IdentityCache(1);
+        cache.put("user-idx", "rails", 1L);
+        cache.put("repo-idx", "rails", 2L);
+        assertEquals(1L, cache.get("user-idx", "rails"));
+        assertEquals(2L, cache.get("repo-idx", "rails"));
+    }
+
+    @Test
+    public void testRollback() {
+        IdentityCache cache = new IdentityCache(10);
+        cache.put("user-idx", "pridkett", 1L);
+        cache.commit();
+        cache.put("user-idx", "jurgns", 2L);
+        cache.rollback();
+        assertEquals(1L, cache.get("user-idx", "pridkett"));
+        assertNull(cache.get("user-idx", "jurgns"));
+    }
+
+    @Test
+    public void testHitRate() {
+        IdentityCache cache = new IdentityCache(10);
+        assertNull(cache.get("commit-idx", "abc"));
+        cache.put("commit-idx", "abc", 7L);
+        cache.get("commit-idx", "abc");
+        cache.get("commit-idx", "abc");
+        cache.get("commit-idx", "abc");
+        assertEquals(3, cache.getHits("commit-idx"));
+        assertEquals(1, cache.getMisses("commit-idx"));
+        assertEquals(0.75, cache.getHitRate("commit-idx"), 0.0001);
+    }
+}
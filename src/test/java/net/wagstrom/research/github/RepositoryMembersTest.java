@@ -0,0 +1,58 @@
+package net.wagstrom.research.github;
+
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+import junit.framework.TestCase;
+
+public class RepositoryMembersTest extends TestCase {
+    @Test
+    public void testStoreLoad() {
+        Vertex repo = new TinkerGraph().addVertex(null);
+        RepositoryMembers members = new RepositoryMembers(repo.getId());
+        assertFalse(members.load(repo));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(members.add("user" + i, RepositoryMembers.WATCHER));
+        }
+        assertTrue(members.add("user7", RepositoryMembers.COLLABORATOR));
+        assertFalse(members.add("user7", RepositoryMembers.WATCHER));
+        members.store(repo);
+        assertFalse(members.isDirty());
+
+        RepositoryMembers loaded = new RepositoryMembers(repo.getId());
+        assertTrue(loaded.load(repo));
+        assertEquals(1000, loaded.size());
+        assertEquals(1, loaded.getVersion());
+        assertEquals(RepositoryMembers.WATCHER | RepositoryMembers.COLLABORATOR, loaded.getRoles("user7"));
+        assertEquals(0, loaded.getRoles("nobody"));
+        assertEquals("user0", loaded.getLogins().get(0));
+    }
+
+    @Test
+    public void testStoreChangedBuckets() {
+        Vertex repo = new TinkerGraph().addVertex(null);
+        RepositoryMembers members = new RepositoryMembers(repo.getId());
+        for (int i = 0; i < 1000; i++) {
+            members.add("user" + i, RepositoryMembers.WATCHER);
+        }
+        members.store(repo);
+        int buckets = (Integer) repo.getProperty(PropertyName.SYS_MEMBERS_BUCKETS);
+        assertTrue(buckets > 1);
+        Object[] before = new Object[buckets];
+        for (int i = 0; i < buckets; i++) {
+            before[i] = repo.getProperty(PropertyName.SYS_MEMBERS_LOGINS + "_" + i);
+        }
+
+        members.add("user1", RepositoryMembers.DISCUSSION);
+        members.store(repo);
+        int changed = 0;
+        for (int i = 0; i < buckets; i++) {
+            if (before[i] != repo.getProperty(PropertyName.SYS_MEMBERS_LOGINS + "_" + i)) {
+                changed++;
+            }
+        }
+        assertEquals(1, changed);
+    }
+}
@@ -0,0 +1,74 @@
+package net.wagstrom.research.github;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+import junit.framework.TestCase;
+
+public class SyncStateTest extends TestCase {
+    @Test
+    public void testSetGet() {
+        SyncState state = new SyncState(1L, EdgeType.ISSUE, PropertyName.SYS_COMMENTS_ADDED, PropertyName.SYS_EVENTS_ADDED);
+        for (int i = 200; i > 0; i--) {
+            state.add(i * 2);
+        }
+        state.set(7, PropertyName.SYS_EVENTS_ADDED, 1340000000L);
+        assertEquals(201, state.size());
+        assertEquals(1340000000L, state.get(7, PropertyName.SYS_EVENTS_ADDED));
+        assertEquals(0L, state.get(7, PropertyName.SYS_COMMENTS_ADDED));
+        assertEquals(0L, state.get(400, PropertyName.SYS_EVENTS_ADDED));
+        assertEquals(-1L, state.get(9, PropertyName.SYS_EVENTS_ADDED));
+
+        Map<Integer, Date> map = state.toMap(PropertyName.SYS_EVENTS_ADDED);
+        assertEquals(201, map.size());
+        assertTrue(map.containsKey(2));
+        assertNull(map.get(2));
+        assertEquals(new Date(1340000000000L), map.get(7));
+    }
+
+    @Test
+    public void testStoreLoad() {
+        Vertex repo = new TinkerGraph().addVertex(null);
+        SyncState state = new SyncState(repo.getId(), EdgeType.PULLREQUEST, PropertyName.SYS_DISCUSSIONS_ADDED);
+        assertFalse(state.load(repo));
+        state.set(12, PropertyName.SYS_DISCUSSIONS_ADDED, 1340000000L);
+        state.add(3);
+        assertTrue(state.isDirty());
+        state.store(repo);
+        assertFalse(state.isDirty());
+
+        SyncState loaded = new SyncState(repo.getId(), EdgeType.PULLREQUEST, PropertyName.SYS_DISCUSSIONS_ADDED);
+        assertTrue(loaded.load(repo));
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.contains(3));
+        assertEquals(1340000000L, loaded.get(12, PropertyName.SYS_DISCUSSIONS_ADDED));
+    }
+
+    @Test
+    public void testStoreChangedChunks() {
+        Vertex repo = new TinkerGraph().addVertex(null);
+        SyncState state = new SyncState(repo.getId(), EdgeType.ISSUE, PropertyName.SYS_COMMENTS_ADDED);
+        state.add(3);
+        state.add(700);
+        state.store(repo);
+        Object first = repo.getProperty(PropertyName.SYS_SYNC_NUMBERS + "_issue_0");
+        Object third = repo.getProperty(PropertyName.SYS_SYNC_NUMBERS + "_issue_2");
+        assertNotNull(first);
+
+        state.set(701, PropertyName.SYS_COMMENTS_ADDED, 1340000000L);
+        state.store(repo);
+        assertSame(first, repo.getProperty(PropertyName.SYS_SYNC_NUMBERS + "_issue_0"));
+        assertNotSame(third, repo.getProperty(PropertyName.SYS_SYNC_NUMBERS + "_issue_2"));
+
+        SyncState loaded = new SyncState(repo.getId(), EdgeType.ISSUE, PropertyName.SYS_COMMENTS_ADDED);
+        assertTrue(loaded.load(repo));
+        assertEquals(3, loaded.size());
+        assertEquals(1340000000L, loaded.get(701, PropertyName.SYS_COMMENTS_ADDED));
+        assertEquals(0L, loaded.get(700, PropertyName.SYS_COMMENTS_ADDED));
+    }
+}
@@ -0,0 +1,51 @@
+package net.wagstrom.research.github;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class TextStoreTest extends TestCase {
+    private File createDirectory() throws IOException {
+        File dir = File.createTempFile("textstore", "");
+        dir.delete();
+        return dir;
+    }
+
+    private void delete(final File f) {
+        if (f.isDirectory()) {
+            for (File child : f.listFiles()) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    @Test
+    public void testPutGet() throws IOException {
+        File dir = createDirectory();
+        TextStore store = new TextStore(dir);
+        String body = "Fixed in 1f3e2a0.\n\nThanks éè for the report!";
+        String hash = store.put(body);
+        assertEquals(40, hash.length());
+        assertEquals(TextStore.hash(body), hash);
+        assertTrue(store.contains(hash));
+        assertEquals(body, store.get(hash));
+        assertNull(store.get(TextStore.hash("missing")));
+        delete(dir);
+    }
+
+    @Test
+    public void testDuplicates() throws IOException {
+        File dir = createDirectory();
+        TextStore store = new TextStore(dir);
+        String first = store.put("+1");
+        String second = store.put("+1");
+        assertEquals(first, second);
+        assertEquals(1, store.getStoredCount());
+        assertEquals(1, store.getDuplicateCount());
+        delete(dir);
+    }
+}
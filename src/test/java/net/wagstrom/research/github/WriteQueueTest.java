@@ -0,0 +1,66 @@
+package net.wagstrom.research.github;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class WriteQueueTest extends TestCase {
+    private static final Runnable NOOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    private static List<String> drainEntities(final WriteQueue queue) {
+        final List<String> entities = new ArrayList<String>();
+        for (WriteQueue.Operation op : queue.drain(Integer.MAX_VALUE)) {
+            entities.add(op.getEntity());
+        }
+        return entities;
+    }
+
+    @Test
+    public void testCoalescedMovesToTail() {
+        WriteQueue queue = new WriteQueue();
+        Runnable newer = new Runnable() {
+            public void run() {
+            }
+        };
+        assertFalse(queue.add("user:pridkett", "user:pridkett", NOOP));
+        queue.add(null, "repository:rails/rails", NOOP);
+        queue.add(null, "user:jurgns", NOOP);
+        assertTrue(queue.add("user:pridkett", "user:pridkett", newer));
+        assertEquals(3, queue.size());
+        List<WriteQueue.Operation> ops = queue.drain(Integer.MAX_VALUE);
+        assertEquals("repository:rails/rails", ops.get(0).getEntity());
+        assertEquals("user:jurgns", ops.get(1).getEntity());
+        assertEquals("user:pridkett", ops.get(2).getEntity());
+        assertSame(newer, ops.get(2).getRunnable());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testUnkeyedAreNotCoalesced() {
+        WriteQueue queue = new WriteQueue();
+        assertFalse(queue.add(null, "user:pridkett", NOOP));
+        assertFalse(queue.add(null, "user:pridkett", NOOP));
+        assertEquals(2, queue.size());
+        assertFalse(queue.contains(null));
+    }
+
+    @Test
+    public void testRemoveEntity() {
+        WriteQueue queue = new WriteQueue();
+        queue.add(null, "user:pridkett", NOOP);
+        queue.add(null, "user:jurgns", NOOP);
+        queue.add(null, null, NOOP);
+        queue.add("user:pridkett:true", "user:pridkett", NOOP);
+        assertEquals(2, queue.removeEntity("user:pridkett"));
+        List<String> entities = drainEntities(queue);
+        assertEquals(2, entities.size());
+        assertEquals("user:jurgns", entities.get(0));
+        assertNull(entities.get(1));
+    }
+}
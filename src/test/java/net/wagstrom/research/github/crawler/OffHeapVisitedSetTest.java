@@ -0,0 +1,84 @@
+package net.wagstrom.research.github.crawler;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class OffHeapVisitedSetTest extends TestCase {
+    @Test
+    public void testAddContains() throws IOException {
+        File f = File.createTempFile("visited", ".dat");
+        f.delete();
+        OffHeapVisitedSet visited = new OffHeapVisitedSet(f, 1000);
+        assertEquals(1024, visited.getCapacity());
+        assertTrue(visited.add("u:pridkett"));
+        assertFalse(visited.add("u:pridkett"));
+        assertTrue(visited.contains("u:pridkett"));
+        assertFalse(visited.contains("u:jurgns"));
+        assertEquals(1, visited.size());
+        visited.close();
+        f.delete();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        File f = File.createTempFile("visited", ".dat");
+        f.delete();
+        OffHeapVisitedSet visited = new OffHeapVisitedSet(f, 64);
+        for (int i = 0; i < 40; i++) {
+            visited.add("r:user" + i + "/repo");
+        }
+        visited.close();
+
+        visited = new OffHeapVisitedSet(f, 4096);
+        assertEquals(64, visited.getCapacity());
+        assertEquals(40, visited.size());
+        assertTrue(visited.contains("r:user17/repo"));
+        assertFalse(visited.contains("r:user40/repo"));
+        visited.close();
+        f.delete();
+    }
+
+    @Test
+    public void testFull() throws IOException {
+        File f = File.createTempFile("visited", ".dat");
+        f.delete();
+        OffHeapVisitedSet visited = new OffHeapVisitedSet(f, 16);
+        for (int i = 0; i < 12; i++) {
+            visited.add("u:" + i);
+        }
+        assertTrue(visited.isFull());
+        try {
+            visited.add("u:overflow");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        visited.close();
+        f.delete();
+    }
+
+    @Test
+    public void testWide() throws IOException {
+        File f = File.createTempFile("visited", ".dat");
+        f.delete();
+        OffHeapVisitedSet visited = new OffHeapVisitedSet(f, 64, true);
+        assertTrue(visited.isWide());
+        for (int i = 0; i < 40; i++) {
+            assertTrue(visited.add("1:FOLLOWER:" + i));
+        }
+        assertFalse(visited.add("1:FOLLOWER:17"));
+        visited.close();
+
+        visited = new OffHeapVisitedSet(f, 4096);
+        assertTrue(visited.isWide());
+        assertEquals(40, visited.size());
+        assertTrue(visited.contains("1:FOLLOWER:39"));
+        assertFalse(visited.contains("1:FOLLOWER:40"));
+        visited.close();
+        f.delete();
+    }
+}
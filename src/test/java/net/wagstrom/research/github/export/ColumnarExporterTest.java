@@ -0,0 +1,97 @@
+package net.wagstrom.research.github.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import net.wagstrom.research.github.EdgeType;
+import net.wagstrom.research.github.IdCols;
+import net.wagstrom.research.github.IndexNames;
+import net.wagstrom.research.github.PropertyName;
+import net.wagstrom.research.github.VertexType;
+
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Index;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+import junit.framework.TestCase;
+
+public class ColumnarExporterTest extends TestCase {
+    private File directory;
+
+    @Override
+    public void setUp() throws IOException {
+        directory = File.createTempFile("columnar", "");
+        directory.delete();
+    }
+
+    @Test
+    public void testExport() throws IOException {
+        TinkerGraph graph = new TinkerGraph();
+        Index<Vertex> typeidx = graph.createIndex(IndexNames.TYPE, Vertex.class);
+        Vertex alice = graph.addVertex(null);
+        alice.setProperty(PropertyName.LOGIN, "alice");
+        alice.setProperty(PropertyName.FULLNAME, "Alice Liddell");
+        typeidx.put(IdCols.TYPE, VertexType.USER, alice);
+        Vertex bob = graph.addVertex(null);
+        bob.setProperty(PropertyName.LOGIN, "bob");
+        bob.setProperty(PropertyName.FOLLOWERS, 3);
+        typeidx.put(IdCols.TYPE, VertexType.USER, bob);
+        graph.addEdge(null, bob, alice, EdgeType.FOLLOWING);
+        Vertex repo = graph.addVertex(null);
+        repo.setProperty(IdCols.REPOSITORY, "alice/wonderland");
+        typeidx.put(IdCols.TYPE, VertexType.REPOSITORY, repo);
+
+        assertEquals(3, new ColumnarExporter(graph, directory, 2).export());
+
+        File users = new File(new File(directory, "vertices"), VertexType.USER);
+        // alice has no followers, so the column starts with NA
+        ByteBuffer followers = read(new File(users, PropertyName.FOLLOWERS + ".bin"));
+        assertEquals(ColumnWriter.NA_DOUBLE_BITS, followers.getLong());
+        assertEquals(3.0, followers.getDouble());
+        ByteBuffer logins = read(new File(users, PropertyName.LOGIN + ".bin"));
+        assertEquals(0, logins.getInt());
+        assertEquals(1, logins.getInt());
+        assertTrue(new File(users, ColumnarTable.SCHEMA).isFile());
+
+        File following = new File(new File(new File(directory, "edges"), EdgeType.FOLLOWING), VertexType.USER);
+        assertTrue(new File(following, ColumnarExporter.OUT + ".bin").isFile());
+        File dictionaries = new File(directory, "dictionaries");
+        assertEquals(10, new File(dictionaries, IdCols.USER + ".bin").length());
+        assertEquals(17, new File(dictionaries, IdCols.REPOSITORY + ".bin").length());
+        // personal names are not shared between users, so they stay strings
+        assertFalse(new File(dictionaries, PropertyName.FULLNAME + ".bin").exists());
+        // bob has no full name, so the column ends with an empty value
+        assertEquals("Alice Liddell\0\0", new String(read(new File(users, PropertyName.FULLNAME + ".bin")).array(), "UTF-8"));
+    }
+
+    @Override
+    public void tearDown() {
+        delete(directory);
+    }
+
+    private ByteBuffer read(final File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            assertEquals(bytes.length, in.read(bytes));
+        } finally {
+            in.close();
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void delete(final File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
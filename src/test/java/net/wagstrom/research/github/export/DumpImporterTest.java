@@ -0,0 +1,85 @@
+package net.wagstrom.research.github.export;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.wagstrom.research.github.EdgeType;
+import net.wagstrom.research.github.IdCols;
+import net.wagstrom.research.github.IndexNames;
+import net.wagstrom.research.github.PropertyName;
+import net.wagstrom.research.github.VertexType;
+
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+import junit.framework.TestCase;
+
+public class DumpImporterTest extends TestCase {
+    private File directory;
+
+    @Override
+    public void setUp() throws IOException {
+        directory = File.createTempFile("dump", "");
+        directory.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        TinkerGraph graph = new TinkerGraph();
+        Vertex alice = graph.addVertex(null);
+        alice.setProperty(PropertyName.TYPE, VertexType.USER);
+        alice.setProperty(PropertyName.LOGIN, "alice");
+        alice.setProperty(PropertyName.SYS_DEGREES_COUNTED, Boolean.TRUE);
+        Vertex repo = graph.addVertex(null);
+        repo.setProperty(PropertyName.TYPE, VertexType.REPOSITORY);
+        repo.setProperty(IdCols.REPOSITORY, "alice/repo");
+        repo.setProperty(PropertyName.SYS_LAST_UPDATED, 1339977600L);
+        repo.setProperty("sys_members_roles", new int[]{1, 2});
+        Edge edge = graph.addEdge(null, alice, repo, EdgeType.REPOWATCHED);
+        edge.setProperty(PropertyName.SYS_CREATED_AT, 7);
+
+        new DumpExporter(graph).export(directory);
+        TinkerGraph copy = new TinkerGraph();
+        new DumpImporter(copy, 2).load(directory);
+
+        Vertex user = copy.getIndex(IndexNames.USER, Vertex.class).get(IdCols.USER, "alice").iterator().next();
+        assertNull(user.getProperty(PropertyName.SYS_DEGREES_COUNTED));
+        Edge watched = user.getEdges(Direction.OUT, EdgeType.REPOWATCHED).iterator().next();
+        assertEquals(7, watched.getProperty(PropertyName.SYS_CREATED_AT));
+        Vertex copied = watched.getVertex(Direction.IN);
+        assertEquals(1339977600L, copied.getProperty(PropertyName.SYS_LAST_UPDATED));
+        assertEquals(2, ((int[]) copied.getProperty("sys_members_roles"))[1]);
+        assertEquals(copied, copy.getIndex(IndexNames.TYPE, Vertex.class)
+                .get(IdCols.TYPE, VertexType.REPOSITORY).iterator().next());
+    }
+
+    @Test
+    public void testIdMap() {
+        DumpImporter.IdMap ids = new DumpImporter.IdMap();
+        for (long i = 0; i < 5000; i++) {
+            ids.put(i * 3, i + 100);
+        }
+        ids.put(1L, 7L);
+        ids.put("x", "y");
+        assertEquals(5002, ids.size());
+        assertEquals(4099L, ids.get(3999L * 3));
+        assertEquals(7L, ids.get(1L));
+        assertEquals("y", ids.get("x"));
+        assertNull(ids.get(2L));
+    }
+
+    @Override
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}